@@ -0,0 +1,17 @@
+package android.os;
+
+/**
+ * <p>
+ * Host-side stand-in for the Android build information. {@link #ID} is <code>null</code>, so <code>LoggerFactory</code> behaves as on any other java
+ * application.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+public final class Build {
+
+    public static final String ID = null;
+
+    private Build() {
+    }
+}
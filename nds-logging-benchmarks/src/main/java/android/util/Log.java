@@ -0,0 +1,100 @@
+package android.util;
+
+/**
+ * <p>
+ * Host-side stand-in for the Android logging system, so that the benchmarks run on a plain JVM.
+ * </p>
+ * <p>
+ * The messages are not printed: only their length is accumulated, so that the JIT can't remove the code building them. The lowest loggable
+ * priority can be changed with {@link #setLoggable(int)}.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+public final class Log {
+
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+    public static final int ASSERT = 7;
+
+    private static volatile int loggable = INFO;
+
+    /** The total length of the messages written, read by nobody */
+    private static long written = 0;
+
+    private Log() {
+    }
+
+    /**
+     * Sets the lowest priority for which {@link #isLoggable(String, int)} returns <code>true</code>, for all the tags.
+     */
+    public static void setLoggable(int priority) {
+        loggable = priority;
+    }
+
+    public static boolean isLoggable(String tag, int level) {
+        return level >= loggable;
+    }
+
+    public static int v(String tag, String msg) {
+        return println(VERBOSE, tag, msg);
+    }
+
+    public static int v(String tag, String msg, Throwable tr) {
+        return println(VERBOSE, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static int d(String tag, String msg) {
+        return println(DEBUG, tag, msg);
+    }
+
+    public static int d(String tag, String msg, Throwable tr) {
+        return println(DEBUG, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static int i(String tag, String msg) {
+        return println(INFO, tag, msg);
+    }
+
+    public static int i(String tag, String msg, Throwable tr) {
+        return println(INFO, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static int w(String tag, String msg) {
+        return println(WARN, tag, msg);
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return println(WARN, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static int w(String tag, Throwable tr) {
+        return println(WARN, tag, getStackTraceString(tr));
+    }
+
+    public static int e(String tag, String msg) {
+        return println(ERROR, tag, msg);
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return println(ERROR, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static String getStackTraceString(Throwable tr) {
+        if (tr == null) {
+            return "";
+        }
+        java.io.StringWriter sw = new java.io.StringWriter();
+        tr.printStackTrace(new java.io.PrintWriter(sw));
+        return sw.toString();
+    }
+
+    public static int println(int priority, String tag, String msg) {
+        int length = msg == null ? 0 : msg.length();
+        written += length;
+        return length;
+    }
+}
@@ -0,0 +1,42 @@
+package org.nds.logging.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.AndroidLogFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Measures {@link AndroidLogFactory#getFactory()}: the lookup of the factory already discovered for the context class loader, and its discovery
+ * once the factories have been released.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AndroidLogFactoryBenchmark {
+
+    @Benchmark
+    public AndroidLogFactory getFactoryCached() {
+        return AndroidLogFactory.getFactory();
+    }
+
+    @Benchmark
+    public AndroidLogFactory getFactoryDiscovery() {
+        AndroidLogFactory.releaseAll();
+        return AndroidLogFactory.getFactory();
+    }
+}
@@ -0,0 +1,67 @@
+package org.nds.logging.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.impl.DurableFileSink;
+import org.apache.commons.logging.impl.SimpleAndroidLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Measures the throughput of the durable events of {@link DurableFileSink}, logged by several threads at once so that their commits are grouped.
+ * The commits per second and the events per commit achieved are printed at the end of each trial.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DurableFileSinkBenchmark {
+
+    @Param({ "0", "2" })
+    public long commitLatencyMillis;
+
+    private File file;
+
+    private DurableFileSink sink;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = File.createTempFile("durable", ".log");
+        sink = new DurableFileSink(file, SimpleAndroidLog.LOG_LEVEL_ERROR, commitLatencyMillis);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println();
+        System.out.println("Commits per second: " + Math.round(sink.getCommitsPerSecond()) + ", events per commit: "
+                + Math.round(sink.getEventsPerCommit() * 10) / 10.0);
+        sink.close();
+        file.delete();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void error() {
+        sink.write(SimpleAndroidLog.LOG_LEVEL_ERROR, "Benchmark", "Payment 42 rejected: insufficient funds");
+    }
+}
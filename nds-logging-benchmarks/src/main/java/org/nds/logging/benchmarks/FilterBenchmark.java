@@ -0,0 +1,89 @@
+package org.nds.logging.benchmarks;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.impl.SimpleAndroidLog;
+import org.nds.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Measures the <code>filter.N</code> rules of <code>SimpleAndroidLog</code> on enabled {@link Logger#debug(String, Object, Object)} events: an
+ * event dropped by a logger rule, an event dropped by a template rule, and an event matching no rule, which is then formatted.
+ * </p>
+ * <p>
+ * The events are discarded by a {@link NullSink}. Run with <code>-prof gc</code> to check that the dropped events allocate nothing.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FilterBenchmark {
+
+    private static final String PREFIX = "org.apache.commons.logging.androidlog.";
+
+    private static final String FILTERED_PACKAGE = "org.nds.logging.benchmarks.filtered";
+
+    private static final String HEARTBEAT = "Heartbeat from {} after {} ms";
+
+    private Logger filtered;
+
+    private Logger kept;
+
+    private final Object arg1 = "first";
+
+    private final Object arg2 = Integer.valueOf(42);
+
+    @Setup
+    public void setUp() {
+        Properties properties = new Properties();
+        properties.setProperty(PREFIX + "sink", NullSink.class.getName());
+        properties.setProperty(PREFIX + "filter.1", "accept marker=AUDIT");
+        properties.setProperty(PREFIX + "filter.2", "deny logger=" + FILTERED_PACKAGE + "; level<=debug");
+        properties.setProperty(PREFIX + "filter.3", "deny template=" + HEARTBEAT);
+        properties.setProperty(PREFIX + "filter.4", "deny mdc.tenant=test; level<=info");
+        SimpleAndroidLog.reloadConfiguration(properties);
+
+        String filteredName = FILTERED_PACKAGE + ".Filtered";
+        SimpleAndroidLog filteredLog = new SimpleAndroidLog(filteredName);
+        filteredLog.setLevel(SimpleAndroidLog.LOG_LEVEL_DEBUG);
+        filtered = new Logger(filteredName, filteredLog) {
+        };
+
+        String keptName = "org.nds.logging.benchmarks.Kept";
+        SimpleAndroidLog keptLog = new SimpleAndroidLog(keptName);
+        keptLog.setLevel(SimpleAndroidLog.LOG_LEVEL_DEBUG);
+        kept = new Logger(keptName, keptLog) {
+        };
+    }
+
+    @Benchmark
+    public void deniedByLogger() {
+        filtered.debug("Loaded {} with {}", arg1, arg2);
+    }
+
+    @Benchmark
+    public void deniedByTemplate() {
+        kept.debug(HEARTBEAT, arg1, arg2);
+    }
+
+    @Benchmark
+    public void noMatchingRule() {
+        kept.debug("Loaded {} with {}", arg1, arg2);
+    }
+}
@@ -0,0 +1,192 @@
+package org.nds.logging.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Marker;
+import org.apache.commons.logging.impl.SimpleAndroidLog;
+import org.nds.logging.Logger;
+import org.nds.logging.MessageSupplier;
+import org.nds.logging.MessageWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Measures {@link Logger#debug(String)} and its variants with up to three arguments, when the debug level is disabled and when it is enabled, and
+ * the detection of a {@link Throwable} passed as the first argument, the deferred messages of {@link MessageSupplier} and {@link MessageWriter},
+ * the structured events and the {@link Marker}s.
+ * </p>
+ * <p>
+ * The loggers write to a {@link SimpleAndroidLog} whose events are discarded by a {@link NullSink}, so the enabled benchmarks measure the
+ * formatting of the message and of the event. Run with <code>-prof gc</code> to measure their allocations.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoggerBenchmark {
+
+    private Logger disabled;
+
+    private Logger enabled;
+
+    private Object cause;
+
+    /** A marker disabled for the enabled logger */
+    private final Marker audit = Marker.get("AUDIT");
+
+    /** A marker enabled for the enabled logger */
+    private final Marker perf = Marker.get("PERF");
+
+    private final Object arg1 = "first";
+
+    private final Object arg2 = Integer.valueOf(42);
+
+    private final Object arg3 = Long.valueOf(123456789L);
+
+    @Setup
+    public void setUp() {
+        SimpleAndroidLog.setSink(new NullSink());
+
+        String disabledName = "org.nds.logging.benchmarks.Disabled";
+        SimpleAndroidLog disabledLog = new SimpleAndroidLog(disabledName);
+        disabledLog.setLevel(SimpleAndroidLog.LOG_LEVEL_INFO);
+        disabled = new Logger(disabledName, disabledLog) {
+        };
+
+        String enabledName = "org.nds.logging.benchmarks.Enabled";
+        SimpleAndroidLog enabledLog = new SimpleAndroidLog(enabledName);
+        enabledLog.setLevel(SimpleAndroidLog.LOG_LEVEL_DEBUG);
+        enabledLog.setMarkerEnabled(audit, false);
+        enabled = new Logger(enabledName, enabledLog) {
+        };
+
+        cause = new IllegalStateException("Benchmark failure");
+    }
+
+    // -------------------------------------------------------- Disabled
+
+    @Benchmark
+    public void disabledDebug0() {
+        disabled.debug("Nothing to format");
+    }
+
+    @Benchmark
+    public void disabledDebug1() {
+        disabled.debug("Loaded {}", arg1);
+    }
+
+    @Benchmark
+    public void disabledDebug2() {
+        disabled.debug("Loaded {} with {}", arg1, arg2);
+    }
+
+    @Benchmark
+    public void disabledDebug3() {
+        disabled.debug("Loaded {} with {} in {} ms", arg1, arg2, arg3);
+    }
+
+    // -------------------------------------------------------- Enabled
+
+    @Benchmark
+    public void enabledDebug0() {
+        enabled.debug("Nothing to format");
+    }
+
+    @Benchmark
+    public void enabledDebug1() {
+        enabled.debug("Loaded {}", arg1);
+    }
+
+    @Benchmark
+    public void enabledDebug2() {
+        enabled.debug("Loaded {} with {}", arg1, arg2);
+    }
+
+    @Benchmark
+    public void enabledDebug3() {
+        enabled.debug("Loaded {} with {} in {} ms", arg1, arg2, arg3);
+    }
+
+    @Benchmark
+    public void enabledDebug3Printf() {
+        enabled.debug("Loaded %s with %d in %d ms", arg1, arg2, arg3);
+    }
+
+    // -------------------------------------------------------- Throwable first
+
+    /**
+     * A Throwable passed as the first of three arguments, detected by the fixed-arity path.
+     */
+    @Benchmark
+    public void throwableFirstFixedArity() {
+        enabled.debug("Failed to load {} with {}", cause, arg1, arg2);
+    }
+
+    /**
+     * A Throwable passed as the first of four arguments, detected by the varargs path.
+     */
+    @Benchmark
+    public void throwableFirstVarargs() {
+        enabled.debug("Failed to load {} with {} in {} ms", cause, arg1, arg2, arg3);
+    }
+
+    @Benchmark
+    public void disabledThrowableFirstVarargs() {
+        disabled.debug("Failed to load {} with {} in {} ms", cause, arg1, arg2, arg3);
+    }
+
+    // -------------------------------------------------------- Deferred
+
+    @Benchmark
+    public void disabledDebugSupplier() {
+        disabled.debug(() -> "Loaded " + arg1 + " with " + arg2 + " in " + arg3 + " ms");
+    }
+
+    @Benchmark
+    public void enabledDebugSupplier() {
+        enabled.debug(() -> "Loaded " + arg1 + " with " + arg2 + " in " + arg3 + " ms");
+    }
+
+    @Benchmark
+    public void enabledDebugWriter() {
+        enabled.debug(buffer -> buffer.append("Loaded ").append(arg1).append(" with ").append(arg2).append(" in ").append(arg3).append(" ms"));
+    }
+
+    // -------------------------------------------------------- Structured
+
+    @Benchmark
+    public void disabledDebugStructured() {
+        disabled.atDebug("Loaded").kv("name", "first").kv("count", 42).kv("ms", 123456789L).log();
+    }
+
+    @Benchmark
+    public void enabledDebugStructured() {
+        enabled.atDebug("Loaded").kv("name", "first").kv("count", 42).kv("ms", 123456789L).log();
+    }
+
+    // -------------------------------------------------------- Markers
+
+    @Benchmark
+    public void disabledMarkerDebug2() {
+        enabled.debug(audit, "Loaded {} with {}", arg1, arg2);
+    }
+
+    @Benchmark
+    public void enabledMarkerDebug2() {
+        enabled.debug(perf, "Loaded {} with {}", arg1, arg2);
+    }
+}
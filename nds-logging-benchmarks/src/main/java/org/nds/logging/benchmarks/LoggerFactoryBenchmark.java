@@ -0,0 +1,78 @@
+package org.nds.logging.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.nds.logging.Logger;
+import org.nds.logging.LoggerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Measures the lookup of the existing loggers by {@link LoggerFactory#getLogger(String)}, by a single thread and by several threads at once.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoggerFactoryBenchmark {
+
+    private static final int LOGGERS = 256;
+
+    private String[] names;
+
+    @Setup
+    public void setUp() {
+        names = new String[LOGGERS];
+        for (int i = 0; i < LOGGERS; i++) {
+            names[i] = "org.nds.logging.benchmarks.Logger" + i;
+            LoggerFactory.getLogger(names[i]);
+        }
+    }
+
+    /**
+     * The index of the next logger looked up by the current thread.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        int index = 0;
+
+        String next(String[] names) {
+            index = (index + 1) & (LOGGERS - 1);
+            return names[index];
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Logger getLogger(Cursor cursor) {
+        return LoggerFactory.getLogger(cursor.next(names));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Logger getLoggerContended(Cursor cursor) {
+        return LoggerFactory.getLogger(cursor.next(names));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Logger getSameLoggerContended() {
+        return LoggerFactory.getLogger(names[0]);
+    }
+}
@@ -0,0 +1,35 @@
+package org.nds.logging.benchmarks;
+
+import org.apache.commons.logging.LogSink;
+
+/**
+ * <p>
+ * A sink discarding the events, to measure the cost of building them. Only their length is accumulated, so that the JIT can't remove the code
+ * building them.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+public class NullSink implements LogSink {
+
+    private long written = 0;
+
+    public void write(int level, String tag, CharSequence event) {
+        written += event.length();
+    }
+
+    public void flush() {
+        // Nothing to do
+    }
+
+    public void close() {
+        // Nothing to do
+    }
+
+    /**
+     * Returns the total length of the events written.
+     */
+    public long getWritten() {
+        return written;
+    }
+}
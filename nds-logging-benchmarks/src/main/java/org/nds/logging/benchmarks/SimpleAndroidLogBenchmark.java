@@ -0,0 +1,84 @@
+package org.nds.logging.benchmarks;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.impl.SimpleAndroidLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Measures the formatting of an event by <code>SimpleAndroidLog.log</code>, for each combination of the <code>showdatetime</code>,
+ * <code>showlevel</code> and <code>showShortLogname</code> properties. The events are discarded by a {@link NullSink}.
+ * </p>
+ * <p>
+ * The contended variants log from several threads at once, to measure the contention on the shared state, such as the timestamp format.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SimpleAndroidLogBenchmark {
+
+    private static final String PREFIX = "org.apache.commons.logging.androidlog.";
+
+    @Param({ "false", "true" })
+    public boolean showDateTime;
+
+    @Param({ "false", "true" })
+    public boolean showLevel;
+
+    @Param({ "false", "true" })
+    public boolean showShortLogname;
+
+    private SimpleAndroidLog log;
+
+    private final Throwable cause = new IllegalStateException("Benchmark failure");
+
+    @Setup
+    public void setUp() {
+        Properties properties = new Properties();
+        properties.setProperty(PREFIX + "showdatetime", String.valueOf(showDateTime));
+        properties.setProperty(PREFIX + "showlevel", String.valueOf(showLevel));
+        properties.setProperty(PREFIX + "showShortLogname", String.valueOf(showShortLogname));
+        properties.setProperty(PREFIX + "sink", NullSink.class.getName());
+        SimpleAndroidLog.reloadConfiguration(properties);
+
+        log = new SimpleAndroidLog("org.nds.logging.benchmarks.SimpleAndroidLogBenchmark");
+        log.setLevel(SimpleAndroidLog.LOG_LEVEL_INFO);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void info() {
+        log.info("Loaded 42 items in 12 ms");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void infoContended() {
+        log.info("Loaded 42 items in 12 ms");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void infoWithThrowable() {
+        log.info("Unable to load the items", cause);
+    }
+}
@@ -102,6 +102,11 @@ public abstract class AndroidLogFactory {
      */
     protected static Map<ClassLoader, AndroidLogFactory> factories = null;
 
+    /**
+     * The configuration generated at build time, or <code>null</code> if there is none and the implementations must be discovered.
+     */
+    private static PrecomputedLogConfiguration precomputedConfiguration;
+
     // ----------------------------------------------------------- Constructors
 
     /**
@@ -119,6 +124,7 @@ public abstract class AndroidLogFactory {
         initDiagnostics();
         logClassLoaderEnvironment(AndroidLogFactory.class);
         factories = new HashMap<ClassLoader, AndroidLogFactory>();
+        precomputedConfiguration = loadPrecomputedConfiguration();
         if (isDiagnosticsEnabled()) {
             logDiagnostic("BOOTSTRAP COMPLETED");
         }
@@ -220,6 +226,11 @@ public abstract class AndroidLogFactory {
      * </ul>
      * 
      * <p>
+     * This lookup is skipped when a {@link PrecomputedLogConfiguration} has been generated at build time: its factory and attributes are used
+     * instead.
+     * </p>
+     * 
+     * <p>
      * <em>NOTE</em> - If the properties file method of identifying the <code>AndroidLogFactory</code> implementation class is utilized, all of the
      * properties defined in this file will be set as configuration attributes on the corresponding <code>AndroidLogFactory</code> instance.
      * </p>
@@ -239,6 +250,17 @@ public abstract class AndroidLogFactory {
             return factory;
         }
 
+        PrecomputedLogConfiguration precomputed = precomputedConfiguration;
+        if (precomputed != null) {
+            if (isDiagnosticsEnabled()) {
+                logDiagnostic("[LOOKUP] Using the precomputed configuration '" + PrecomputedLogConfiguration.CLASS_NAME + "'");
+            }
+            factory = precomputed.newFactory();
+            factories.put(thisClassLoader, factory);
+            setAttributes(factory, precomputed.getFactoryAttributes());
+            return factory;
+        }
+
         if (isDiagnosticsEnabled()) {
             logDiagnostic("[LOOKUP] AndroidLogFactory implementation requested for the first time for context classloader "
                     + objectId(thisClassLoader));
@@ -338,17 +360,44 @@ public abstract class AndroidLogFactory {
             factories.put(thisClassLoader, factory);
 
             if (props != null) {
-                for (Map.Entry<Object, Object> entry : props.entrySet()) {
-                    String name = (String) entry.getKey();
-                    String value = (String) entry.getValue();
-                    factory.setAttribute(name, value);
-                }
+                setAttributes(factory, props);
             }
         }
 
         return factory;
     }
 
+    private static void setAttributes(AndroidLogFactory factory, Properties props) {
+        for (Map.Entry<Object, Object> entry : props.entrySet()) {
+            String name = (String) entry.getKey();
+            String value = (String) entry.getValue();
+            factory.setAttribute(name, value);
+        }
+    }
+
+    /**
+     * Returns the configuration generated at build time, or <code>null</code> if there is none.
+     */
+    public static PrecomputedLogConfiguration getPrecomputedConfiguration() {
+        return precomputedConfiguration;
+    }
+
+    /**
+     * Loads the class {@link PrecomputedLogConfiguration#CLASS_NAME} with the class loader of this class. This is the only lookup done when the
+     * configuration has been generated.
+     */
+    private static PrecomputedLogConfiguration loadPrecomputedConfiguration() {
+        try {
+            Class<?> clazz = Class.forName(PrecomputedLogConfiguration.CLASS_NAME, true, thisClassLoader);
+            return (PrecomputedLogConfiguration) clazz.getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (Throwable t) {
+            System.err.println("AndroidLogFactory: unable to load the precomputed configuration '" + PrecomputedLogConfiguration.CLASS_NAME + "' - " + t);
+            return null;
+        }
+    }
+
     /**
      * Convenience method to return a named logger, without the application having to care about factories.
      * 
@@ -0,0 +1,42 @@
+package org.apache.commons.logging;
+
+/**
+ * <p>
+ * The output destination of the events logged by <code>SimpleAndroidLog</code>.
+ * </p>
+ * <p>
+ * A sink receives each event once it has been assembled (date, level, logger name, message and stack trace), as a <code>CharSequence</code> backed
+ * by a buffer that is reused for the next events of the current thread: the sink must copy or encode it before returning, and must not keep a
+ * reference to it. A sink is called concurrently by all the logging threads.
+ * </p>
+ * <p>
+ * In order to be selected from <code>androidlog.properties</code>, classes that implement this interface must have a public constructor without
+ * parameter.
+ * </p>
+ * 
+ * @author Nicolas Dos Santos
+ */
+public interface LogSink {
+
+    /**
+     * Writes an event.
+     * 
+     * @param level
+     *            One of the <code>SimpleAndroidLog.LOG_LEVEL_XXX</code> constants defining the log level
+     * @param tag
+     *            the tag of the logger
+     * @param event
+     *            the text of the event, valid only until this method returns
+     */
+    void write(int level, String tag, CharSequence event);
+
+    /**
+     * Writes the buffered events, if any.
+     */
+    void flush();
+
+    /**
+     * Writes the buffered events, if any, and releases the resources of this sink.
+     */
+    void close();
+}
@@ -0,0 +1,109 @@
+package org.apache.commons.logging;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * A named tag of the events, such as <code>SECURITY</code>, <code>AUDIT</code> or <code>PERF</code>, used to filter them independently of their
+ * level.
+ * </p>
+ * <p>
+ * The markers are interned: there is one instance per name, and each one is assigned one of the {@value #MAX_MARKERS} bits of a
+ * <code>long</code>. A set of markers is therefore a bitmask, and checking whether a marker is enabled for a logger is a single
+ * <code>AND</code>.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+public final class Marker {
+
+    /** The maximum number of distinct markers */
+    public static final int MAX_MARKERS = 64;
+
+    private static final ConcurrentHashMap<String, Marker> markers = new ConcurrentHashMap<String, Marker>();
+
+    /** The number of markers created, guarded by the class */
+    private static int count = 0;
+
+    private final String name;
+
+    private final int id;
+
+    private final String label;
+
+    private Marker(String name, int id) {
+        this.name = name;
+        this.id = id;
+        this.label = "{" + name + "} ";
+    }
+
+    /**
+     * Returns the marker of the given name, creating it if needed.
+     *
+     * @param name
+     *            the name of the marker
+     * @throws IllegalStateException
+     *             if {@value #MAX_MARKERS} markers have already been created
+     */
+    public static Marker get(String name) {
+        Marker marker = markers.get(name);
+        if (marker == null) {
+            synchronized (Marker.class) {
+                marker = markers.get(name);
+                if (marker == null) {
+                    if (count == MAX_MARKERS) {
+                        throw new IllegalStateException("Unable to create the marker " + name + ": there are already " + MAX_MARKERS + " markers");
+                    }
+                    marker = new Marker(name, count++);
+                    markers.put(name, marker);
+                }
+            }
+        }
+        return marker;
+    }
+
+    /**
+     * Returns the bitmask of the comma-separated marker names, creating the markers if needed.
+     */
+    public static long parseMask(String names) {
+        long mask = 0;
+        String[] tokens = names.split(",");
+        for (int i = 0; i < tokens.length; i++) {
+            String name = tokens[i].trim();
+            if (name.length() > 0) {
+                mask |= get(name).getMask();
+            }
+        }
+        return mask;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the id of this marker, from 0 to {@value #MAX_MARKERS} - 1.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the bit of this marker.
+     */
+    public long getMask() {
+        return 1L << id;
+    }
+
+    /**
+     * Returns the label written before the messages of this marker: <code>{NAME} </code>.
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,47 @@
+package org.apache.commons.logging;
+
+import java.util.Properties;
+
+/**
+ * <p>
+ * A logging configuration resolved at build time by <code>LogConfigurationGenerator</code>: the <code>AndroidLogFactory</code> implementation,
+ * the <code>AndroidLog</code> implementation, the attributes of the factory read from <code>android-commons-logging.properties</code> and the
+ * properties read from <code>androidlog.properties</code>, levels included.
+ * </p>
+ * <p>
+ * When a class named {@link #CLASS_NAME} implementing this interface is found by the class loader of <code>AndroidLogFactory</code>, it replaces
+ * the discovery: the configuration files are not searched in the class path, and the factory and the loggers are created without reflection.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+public interface PrecomputedLogConfiguration {
+
+    /** The name of the generated class */
+    String CLASS_NAME = "org.apache.commons.logging.GeneratedLogConfiguration";
+
+    /**
+     * Creates the <code>AndroidLogFactory</code>.
+     */
+    AndroidLogFactory newFactory();
+
+    /**
+     * Returns the attributes of the factory, read from <code>android-commons-logging.properties</code>.
+     */
+    Properties getFactoryAttributes();
+
+    /**
+     * Creates an <code>AndroidLog</code>.
+     *
+     * @param name
+     *            the name of the logger
+     * @param factory
+     *            the factory creating the logger
+     */
+    AndroidLog newLog(String name, AndroidLogFactory factory);
+
+    /**
+     * Returns the properties read from <code>androidlog.properties</code>.
+     */
+    Properties getLogProperties();
+}
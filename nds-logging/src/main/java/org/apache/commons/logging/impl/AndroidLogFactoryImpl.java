@@ -12,6 +12,7 @@ import java.util.Map;
 import org.apache.commons.logging.AndroidLog;
 import org.apache.commons.logging.AndroidLogFactory;
 import org.apache.commons.logging.LogConfigurationException;
+import org.apache.commons.logging.PrecomputedLogConfiguration;
 
 /**
  * <p>
@@ -309,7 +310,8 @@ public class AndroidLogFactoryImpl extends AndroidLogFactory {
     }
 
     /**
-     * Create and return a new {@link org.apache.commons.logging.AndroidLog} instance for the specified name.
+     * Create and return a new {@link org.apache.commons.logging.AndroidLog} instance for the specified name. The instance is created by the
+     * {@link PrecomputedLogConfiguration}, if any, without discovery.
      * 
      * @param name
      *            Name of the new logger
@@ -319,6 +321,11 @@ public class AndroidLogFactoryImpl extends AndroidLogFactory {
      */
     protected AndroidLog newInstance(String name) throws LogConfigurationException {
 
+        PrecomputedLogConfiguration precomputed = AndroidLogFactory.getPrecomputedConfiguration();
+        if (precomputed != null) {
+            return precomputed.newLog(name, this);
+        }
+
         AndroidLog instance = null;
         try {
             if (logConstructor == null) {
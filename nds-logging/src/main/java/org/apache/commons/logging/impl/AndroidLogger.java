@@ -16,6 +16,7 @@
 package org.apache.commons.logging.impl;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.util.Log;
 
@@ -58,6 +59,11 @@ import android.util.Log;
  * <td>ERROR</td>
  * </tr>
  * </table>
+ * <p>
+ * The result of <code>android.util.Log.isLoggable</code> is cached by each logger, so that checking a level is a single field compare instead of a
+ * system property lookup. The cached levels are resolved again after a call to {@link #refreshLevels()}, for example once the levels have been changed
+ * with <code>setprop log.tag.&lt;TAG&gt; &lt;LEVEL&gt;</code>.
+ * </p>
  * 
  * @author Nicolas Dos Santos
  */
@@ -65,8 +71,22 @@ public class AndroidLogger implements org.apache.commons.logging.Log, Serializab
 
     private static final long serialVersionUID = -2516488021447883638L;
 
+    /** The number of bits of {@link #levelState} holding the threshold */
+    private static final int THRESHOLD_BITS = 8;
+
+    private static final int THRESHOLD_MASK = (1 << THRESHOLD_BITS) - 1;
+
+    /** The generation of the levels configuration, on 24 bits, never 0 so that a new logger always resolves its threshold */
+    private static final AtomicInteger generation = new AtomicInteger(1);
+
     protected String name;
 
+    /**
+     * The generation of the configuration (high 24 bits) for which the threshold (low 8 bits) has been resolved. The threshold is the lowest
+     * <code>android.util.Log</code> priority enabled for this logger.
+     */
+    private transient int levelState;
+
     public AndroidLogger() {
     }
 
@@ -75,11 +95,45 @@ public class AndroidLogger implements org.apache.commons.logging.Log, Serializab
     }
 
     /**
-     * Delegates to the <code>isLoggable<code> method of the  
-     * <code>android.util.Log</code>.
+     * Discards the levels cached by all the {@link AndroidLogger} instances, so that they are resolved again from <code>android.util.Log</code> on
+     * their next level check. To be called after the levels have been changed with <code>setprop log.tag.&lt;TAG&gt; &lt;LEVEL&gt;</code>.
+     */
+    public static void refreshLevels() {
+        for (;;) {
+            int current = generation.get();
+            int next = (current + 1) & (-1 >>> THRESHOLD_BITS);
+            if (next == 0) {
+                next = 1;
+            }
+            if (generation.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the lowest <code>android.util.Log</code> priority enabled for this logger, resolving it again if the levels have been refreshed.
+     */
+    private int threshold() {
+        int state = levelState;
+        int current = generation.get();
+        if (state >>> THRESHOLD_BITS == current) {
+            return state & THRESHOLD_MASK;
+        }
+        // isLoggable() is true for a priority and all the higher ones: find the lowest enabled priority
+        int threshold = Log.VERBOSE;
+        while (threshold <= Log.ERROR && !Log.isLoggable(name, threshold)) {
+            threshold++;
+        }
+        levelState = (current << THRESHOLD_BITS) | threshold;
+        return threshold;
+    }
+
+    /**
+     * Checks the level against the <code>isLoggable<code> method of <code>android.util.Log</code>, cached until {@link #refreshLevels()}.
      */
     public boolean isTraceEnabled() {
-        return Log.isLoggable(name, Log.VERBOSE);
+        return Log.VERBOSE >= threshold();
     }
 
     /**
@@ -105,11 +159,10 @@ public class AndroidLogger implements org.apache.commons.logging.Log, Serializab
     }
 
     /**
-     * Delegates to the <code>isLoggable<code> method of   
-     * <code>android.util.Log</code>.
+     * Checks the level against the <code>isLoggable<code> method of <code>android.util.Log</code>, cached until {@link #refreshLevels()}.
      */
     public boolean isDebugEnabled() {
-        return Log.isLoggable(name, Log.DEBUG);
+        return Log.DEBUG >= threshold();
     }
 
     /**
@@ -135,11 +188,10 @@ public class AndroidLogger implements org.apache.commons.logging.Log, Serializab
     }
 
     /**
-     * Delegates to the <code>isLoggable<code> method of the  
-     * <code>android.util.Log</code>.
+     * Checks the level against the <code>isLoggable<code> method of <code>android.util.Log</code>, cached until {@link #refreshLevels()}.
      */
     public boolean isInfoEnabled() {
-        return Log.isLoggable(name, Log.INFO);
+        return Log.INFO >= threshold();
     }
 
     /**
@@ -165,11 +217,10 @@ public class AndroidLogger implements org.apache.commons.logging.Log, Serializab
     }
 
     /**
-     * Delegates to the <code>isLoggable<code> method of the  
-     * <code>android.util.Log</code>.
+     * Checks the level against the <code>isLoggable<code> method of <code>android.util.Log</code>, cached until {@link #refreshLevels()}.
      */
     public boolean isWarnEnabled() {
-        return Log.isLoggable(name, Log.WARN);
+        return Log.WARN >= threshold();
     }
 
     /**
@@ -195,11 +246,10 @@ public class AndroidLogger implements org.apache.commons.logging.Log, Serializab
     }
 
     /**
-     * Delegates to the <code>isLoggable<code> method of   
-     * <code>android.util.Log</code>.
+     * Checks the level against the <code>isLoggable<code> method of <code>android.util.Log</code>, cached until {@link #refreshLevels()}.
      */
     public boolean isErrorEnabled() {
-        return Log.isLoggable(name, Log.ERROR);
+        return Log.ERROR >= threshold();
     }
 
     /**
@@ -225,11 +275,10 @@ public class AndroidLogger implements org.apache.commons.logging.Log, Serializab
     }
 
     /**
-     * Delegates to the <code>isLoggable<code> method of   
-     * <code>android.util.Log</code>.
+     * Checks the level against the <code>isLoggable<code> method of <code>android.util.Log</code>, cached until {@link #refreshLevels()}.
      */
     public boolean isFatalEnabled() {
-        return Log.isLoggable(name, Log.ERROR);
+        return Log.ERROR >= threshold();
     }
 
     /**
@@ -0,0 +1,149 @@
+package org.apache.commons.logging.impl;
+
+import org.apache.commons.logging.AndroidLog;
+import org.apache.commons.logging.Log;
+
+/**
+ * <p>
+ * Implementation of Log which hands the enabled messages over to an {@link AsyncLogDispatcher}, so that they are written to the underlying
+ * {@link Log} on a background thread instead of the caller's thread.
+ * </p>
+ * <p>
+ * The level checks are delegated directly to the underlying log. The message is written as is by the background thread: it should not be modified
+ * once logged.
+ * </p>
+ * <p>
+ * The messages dropped because the buffer of the dispatcher is full are reported to {@link #dropped(int)}, which can be overridden to count them.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+public class AsyncLog implements AndroidLog {
+
+    private final Log log;
+
+    private final AsyncLogDispatcher dispatcher;
+
+    /**
+     * @param log
+     *            the log writing the messages
+     * @param dispatcher
+     *            the dispatcher used to hand the messages over to the background thread
+     */
+    public AsyncLog(Log log, AsyncLogDispatcher dispatcher) {
+        this.log = log;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Returns the log writing the messages.
+     */
+    public Log getLog() {
+        return log;
+    }
+
+    public boolean isTraceEnabled() {
+        return log.isTraceEnabled();
+    }
+
+    public boolean isDebugEnabled() {
+        return log.isDebugEnabled();
+    }
+
+    public boolean isInfoEnabled() {
+        return log.isInfoEnabled();
+    }
+
+    public boolean isWarnEnabled() {
+        return log.isWarnEnabled();
+    }
+
+    public boolean isErrorEnabled() {
+        return log.isErrorEnabled();
+    }
+
+    public boolean isFatalEnabled() {
+        return log.isFatalEnabled();
+    }
+
+    public void trace(Object message) {
+        trace(message, null);
+    }
+
+    public void trace(Object message, Throwable t) {
+        if (log.isTraceEnabled()) {
+            if (!dispatcher.publish(log, SimpleAndroidLog.LOG_LEVEL_TRACE, message, t)) {
+                dropped(SimpleAndroidLog.LOG_LEVEL_TRACE);
+            }
+        }
+    }
+
+    public void debug(Object message) {
+        debug(message, null);
+    }
+
+    public void debug(Object message, Throwable t) {
+        if (log.isDebugEnabled()) {
+            if (!dispatcher.publish(log, SimpleAndroidLog.LOG_LEVEL_DEBUG, message, t)) {
+                dropped(SimpleAndroidLog.LOG_LEVEL_DEBUG);
+            }
+        }
+    }
+
+    public void info(Object message) {
+        info(message, null);
+    }
+
+    public void info(Object message, Throwable t) {
+        if (log.isInfoEnabled()) {
+            if (!dispatcher.publish(log, SimpleAndroidLog.LOG_LEVEL_INFO, message, t)) {
+                dropped(SimpleAndroidLog.LOG_LEVEL_INFO);
+            }
+        }
+    }
+
+    public void warn(Object message) {
+        warn(message, null);
+    }
+
+    public void warn(Object message, Throwable t) {
+        if (log.isWarnEnabled()) {
+            if (!dispatcher.publish(log, SimpleAndroidLog.LOG_LEVEL_WARN, message, t)) {
+                dropped(SimpleAndroidLog.LOG_LEVEL_WARN);
+            }
+        }
+    }
+
+    public void error(Object message) {
+        error(message, null);
+    }
+
+    public void error(Object message, Throwable t) {
+        if (log.isErrorEnabled()) {
+            if (!dispatcher.publish(log, SimpleAndroidLog.LOG_LEVEL_ERROR, message, t)) {
+                dropped(SimpleAndroidLog.LOG_LEVEL_ERROR);
+            }
+        }
+    }
+
+    public void fatal(Object message) {
+        fatal(message, null);
+    }
+
+    public void fatal(Object message, Throwable t) {
+        if (log.isFatalEnabled()) {
+            if (!dispatcher.publish(log, SimpleAndroidLog.LOG_LEVEL_FATAL, message, t)) {
+                dropped(SimpleAndroidLog.LOG_LEVEL_FATAL);
+            }
+        }
+    }
+
+    /**
+     * Called when a message is dropped because the buffer of the dispatcher is full. Does nothing by default.
+     *
+     * @param level
+     *            One of the <code>SimpleAndroidLog.LOG_LEVEL_XXX</code> constants defining the log level
+     */
+    protected void dropped(int level) {
+    }
+}
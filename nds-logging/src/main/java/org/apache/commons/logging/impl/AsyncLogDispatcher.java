@@ -0,0 +1,374 @@
+package org.apache.commons.logging.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * <p>
+ * Dispatches log events to their {@link Log} on a single background thread.
+ * </p>
+ * <p>
+ * The events are published into a bounded ring buffer of pre-allocated slots: a producer claims the next sequence with a CAS, fills the slot and
+ * publishes it by writing its sequence. The consumer thread drains the slots in sequence order, so the events of a given thread are always written in
+ * the order they were logged.
+ * </p>
+ * <p>
+ * Each event captures the {@link DiagnosticContext} of its thread, by reference, and the consumer thread attaches it while the event is written.
+ * </p>
+ * <p>
+ * The consumer thread stops once the dispatcher is stopped and every published event has been written: it then closes the ring, so that the
+ * events published afterwards are written directly by their thread, after the queued ones. Before the dispatcher is started, the events are
+ * written directly as well.
+ * </p>
+ * <p>
+ * When the buffer is full, the producers either wait for a free slot (the default), or drop the event if the dispatcher has been created with
+ * <code>discardWhenFull</code>. The number of published, processed and dropped events, the current queue depth and the throughput of the consumer
+ * are available to monitor the dispatcher.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+public class AsyncLogDispatcher implements Runnable {
+
+    /** The default number of slots in the ring buffer */
+    public static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    /** The number of times the consumer checks for a new event before parking */
+    private static final int SPIN_TRIES = 100;
+
+    /** The maximum time the consumer stays parked when the buffer is empty */
+    private static final long PARK_NANOS = 1000000L;
+
+    private final Event[] ring;
+
+    private final int mask;
+
+    private final boolean discardWhenFull;
+
+    /** Set in {@link #cursor} while the ring is closed: before the consumer thread is started and once it has written the last event */
+    private static final long CLOSED = 1L << 62;
+
+    /** The next sequence to claim, ie the number of events published so far, flagged with {@link #CLOSED} while the ring is closed */
+    private final AtomicLong cursor = new AtomicLong(CLOSED);
+
+    /** The next sequence to consume, ie the number of events processed so far */
+    private volatile long consumed = 0;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** Set by the consumer before parking, so that the producers know they have to wake it up */
+    private volatile boolean waiting = false;
+
+    private volatile boolean running = false;
+
+    private volatile Thread consumer;
+
+    private volatile long startTime;
+
+    /**
+     * Creates a dispatcher whose producers wait for a free slot when the buffer is full.
+     *
+     * @param bufferSize
+     *            the number of slots, rounded up to the next power of two
+     */
+    public AsyncLogDispatcher(int bufferSize) {
+        this(bufferSize, false);
+    }
+
+    /**
+     * @param bufferSize
+     *            the number of slots, rounded up to the next power of two
+     * @param discardWhenFull
+     *            <code>true</code> to drop the events published while the buffer is full, <code>false</code> to wait for a free slot
+     */
+    public AsyncLogDispatcher(int bufferSize, boolean discardWhenFull) {
+        int size = 1;
+        while (size < bufferSize) {
+            size <<= 1;
+        }
+        this.ring = new Event[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Event();
+        }
+        this.mask = size - 1;
+        this.discardWhenFull = discardWhenFull;
+    }
+
+    /**
+     * Starts the consumer thread, and registers a shutdown hook writing the pending events when the JVM exits.
+     */
+    public synchronized void start() {
+        if (consumer != null) {
+            return;
+        }
+        running = true;
+        startTime = System.nanoTime();
+        cursor.set(consumed);
+        Thread thread = new Thread(this, "AsyncLogDispatcher");
+        thread.setDaemon(true);
+        consumer = thread;
+        thread.start();
+
+        try {
+            Runtime.getRuntime().addShutdownHook(new Thread("AsyncLogDispatcher-shutdown") {
+                @Override
+                public void run() {
+                    AsyncLogDispatcher.this.stop(1000);
+                }
+            });
+        } catch (SecurityException e) {
+            ; // Ignore: the pending events may be lost on exit
+        }
+    }
+
+    /**
+     * Stops the consumer thread once the published events have been written, or after the given timeout. The events published until the consumer
+     * thread has stopped are still written by it.
+     *
+     * @param timeoutMillis
+     *            the maximum time to wait for the pending events to be written
+     */
+    public void stop(long timeoutMillis) {
+        Thread thread = consumer;
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(timeoutMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Publishes an event, to be written by the consumer thread.
+     *
+     * @param log
+     *            the log writing the event
+     * @param level
+     *            One of the <code>SimpleAndroidLog.LOG_LEVEL_XXX</code> constants defining the log level
+     * @param message
+     *            the message
+     * @param t
+     *            the exception to log, may be <code>null</code>
+     * @return <code>false</code> if the event has been dropped because the buffer was full
+     */
+    public boolean publish(Log log, int level, Object message, Throwable t) {
+        if (Thread.currentThread() == consumer) {
+            // Logged while writing an event: write it now
+            dispatch(log, level, message, t);
+            return true;
+        }
+
+        long sequence;
+        int spins = 0;
+        for (;;) {
+            sequence = cursor.get();
+            if ((sequence & CLOSED) != 0) {
+                // Either not started, or stopped once the queued events have been written: write it now
+                dispatch(log, level, message, t);
+                return true;
+            }
+            if (sequence - consumed >= ring.length) {
+                if (discardWhenFull) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                // Wait for the consumer to free a slot
+                wakeUpConsumer();
+                if (++spins < SPIN_TRIES) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(1000L);
+                }
+            } else if (cursor.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+
+        Event event = ring[(int) sequence & mask];
+        event.log = log;
+        event.level = level;
+        event.message = message;
+        event.throwable = t;
+        event.context = DiagnosticContext.current();
+        // Volatile write: publishes the slot to the consumer
+        event.sequence = sequence;
+
+        wakeUpConsumer();
+        return true;
+    }
+
+    private void wakeUpConsumer() {
+        if (waiting) {
+            Thread thread = consumer;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    /**
+     * Consumer loop: writes the events in sequence order until the dispatcher is stopped and the buffer is empty, then closes the ring. The ring is
+     * closed only if no producer has claimed a slot in the meantime.
+     */
+    public void run() {
+        int idle = 0;
+        DiagnosticContext attached = null;
+        for (;;) {
+            long next = consumed;
+            Event event = ring[(int) next & mask];
+            if (event.sequence == next) {
+                if (event.context != attached) {
+                    attached = event.context;
+                    DiagnosticContext.attach(attached);
+                }
+                try {
+                    dispatch(event.log, event.level, event.message, event.throwable);
+                } catch (Throwable t) {
+                    System.err.println("AsyncLogDispatcher: unable to write a log event - " + t);
+                }
+                event.clear();
+                consumed = next + 1;
+                idle = 0;
+            } else if (!running && cursor.compareAndSet(next, next | CLOSED)) {
+                break;
+            } else if (++idle < SPIN_TRIES) {
+                Thread.yield();
+            } else {
+                waiting = true;
+                if (event.sequence != next) {
+                    LockSupport.parkNanos(PARK_NANOS);
+                }
+                waiting = false;
+            }
+        }
+        DiagnosticContext.clear();
+        consumer = null;
+    }
+
+    /**
+     * Writes an event on the given log.
+     */
+    static void dispatch(Log log, int level, Object message, Throwable t) {
+        switch (level) {
+            case SimpleAndroidLog.LOG_LEVEL_TRACE:
+                if (t == null) {
+                    log.trace(message);
+                } else {
+                    log.trace(message, t);
+                }
+                break;
+            case SimpleAndroidLog.LOG_LEVEL_DEBUG:
+                if (t == null) {
+                    log.debug(message);
+                } else {
+                    log.debug(message, t);
+                }
+                break;
+            case SimpleAndroidLog.LOG_LEVEL_INFO:
+                if (t == null) {
+                    log.info(message);
+                } else {
+                    log.info(message, t);
+                }
+                break;
+            case SimpleAndroidLog.LOG_LEVEL_WARN:
+                if (t == null) {
+                    log.warn(message);
+                } else {
+                    log.warn(message, t);
+                }
+                break;
+            case SimpleAndroidLog.LOG_LEVEL_ERROR:
+                if (t == null) {
+                    log.error(message);
+                } else {
+                    log.error(message, t);
+                }
+                break;
+            case SimpleAndroidLog.LOG_LEVEL_FATAL:
+                if (t == null) {
+                    log.fatal(message);
+                } else {
+                    log.fatal(message, t);
+                }
+                break;
+        }
+    }
+
+    // -------------------------------------------------------- Statistics
+
+    /**
+     * Returns the number of slots of the ring buffer.
+     */
+    public int getBufferSize() {
+        return ring.length;
+    }
+
+    /**
+     * Returns the number of events published and not yet written.
+     */
+    public long getQueueDepth() {
+        return (cursor.get() & ~CLOSED) - consumed;
+    }
+
+    /**
+     * Returns the number of events published since the creation of this dispatcher.
+     */
+    public long getPublishedCount() {
+        return cursor.get() & ~CLOSED;
+    }
+
+    /**
+     * Returns the number of events written since the creation of this dispatcher.
+     */
+    public long getProcessedCount() {
+        return consumed;
+    }
+
+    /**
+     * Returns the number of events dropped because the buffer was full.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the average number of events written per second since the consumer thread has been started.
+     */
+    public double getThroughput() {
+        long elapsed = System.nanoTime() - startTime;
+        if (startTime == 0 || elapsed <= 0) {
+            return 0;
+        }
+        return consumed * 1000000000.0 / elapsed;
+    }
+
+    // -------------------------------------------------------- Event
+
+    /**
+     * A pre-allocated slot of the ring buffer.
+     */
+    private static final class Event {
+
+        /** The sequence of the event held by this slot, written last to publish it */
+        volatile long sequence = -1;
+
+        Log log;
+        int level;
+        Object message;
+        Throwable throwable;
+        DiagnosticContext context;
+
+        void clear() {
+            log = null;
+            message = null;
+            throwable = null;
+            context = null;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.apache.commons.logging.impl;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * <p>
+ * Formats timestamps with a <code>java.text.SimpleDateFormat</code> pattern, without lock.
+ * </p>
+ * <p>
+ * The text of the current second is formatted once and shared by all the threads: only the milliseconds are written for each timestamp. The
+ * milliseconds field of the pattern is located by formatting a marker in its place, so the cached text is exactly the text
+ * <code>SimpleDateFormat</code> would write. A new second is formatted with a per-thread <code>SimpleDateFormat</code>, as are the patterns having
+ * more than one milliseconds field.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+final class CachedDateFormat {
+
+    /** Formatted in place of the milliseconds field, to locate it in the formatted text: not a pattern letter */
+    private static final char MARKER = '\uFFFF';
+
+    private final String pattern;
+
+    /** The number of digits of the milliseconds field, 0 if the pattern has no such field, -1 if the seconds can't be cached */
+    private final int millisDigits;
+
+    /** The pattern in which the milliseconds field is replaced by the marker */
+    private final String cachePattern;
+
+    private final ThreadLocal<DateFormat> formats = new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            return new SimpleDateFormat(millisDigits < 0 ? pattern : cachePattern);
+        }
+    };
+
+    /** The text of the last formatted second */
+    private volatile Second cached;
+
+    /**
+     * @param pattern
+     *            the pattern, as expected by <code>SimpleDateFormat</code>
+     * @throws IllegalArgumentException
+     *             if the pattern is invalid
+     */
+    CachedDateFormat(String pattern) {
+        // Validates the pattern
+        new SimpleDateFormat(pattern);
+        this.pattern = pattern;
+
+        int runStart = -1;
+        int runLength = 0;
+        boolean quoted = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && c == 'S') {
+                if (i > 0 && pattern.charAt(i - 1) == 'S') {
+                    runLength++;
+                } else if (runStart < 0) {
+                    runStart = i;
+                    runLength = 1;
+                } else {
+                    // More than one milliseconds field
+                    runStart = -2;
+                    break;
+                }
+            }
+        }
+
+        if (runStart == -2) {
+            millisDigits = -1;
+            cachePattern = pattern;
+        } else if (runStart < 0) {
+            millisDigits = 0;
+            cachePattern = pattern;
+        } else {
+            millisDigits = runLength;
+            // Not quoted: a quote next to a quoted text would be read as a literal quote
+            cachePattern = pattern.substring(0, runStart) + MARKER + pattern.substring(runStart + runLength);
+        }
+    }
+
+    /**
+     * Returns the pattern of this format.
+     */
+    String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Appends the formatted timestamp to the given buffer.
+     *
+     * @param buf
+     *            the buffer
+     * @param millis
+     *            the timestamp, in milliseconds since the epoch
+     */
+    void format(StringBuilder buf, long millis) {
+        if (millisDigits < 0) {
+            buf.append(formats.get().format(new Date(millis)));
+            return;
+        }
+
+        long second = millis / 1000;
+        int ms = (int) (millis % 1000);
+        if (ms < 0) {
+            second--;
+            ms += 1000;
+        }
+
+        Second current = cached;
+        if (current == null || current.second != second) {
+            String text = formats.get().format(new Date(second * 1000));
+            current = new Second(second, text, text.indexOf(MARKER));
+            cached = current;
+        }
+
+        if (current.markerIndex < 0) {
+            buf.append(current.text);
+            return;
+        }
+        buf.append(current.text, 0, current.markerIndex);
+        for (int digits = millisDigits; digits > 3; digits--) {
+            buf.append('0');
+        }
+        if (ms < 100 && millisDigits >= 3) {
+            buf.append('0');
+        }
+        if (ms < 10 && millisDigits >= 2) {
+            buf.append('0');
+        }
+        buf.append(ms);
+        buf.append(current.text, current.markerIndex + 1, current.text.length());
+    }
+
+    /**
+     * The text of a second, in which the marker stands for the milliseconds.
+     */
+    private static final class Second {
+
+        final long second;
+
+        final String text;
+
+        final int markerIndex;
+
+        Second(long second, String text, int markerIndex) {
+            this.second = second;
+            this.text = text;
+            this.markerIndex = markerIndex;
+        }
+    }
+}
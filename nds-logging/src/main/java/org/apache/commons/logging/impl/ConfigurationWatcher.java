@@ -0,0 +1,151 @@
+package org.apache.commons.logging.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Properties;
+
+/**
+ * <p>
+ * Watches a configuration file on a background thread, and notifies a listener with its new content each time it is modified.
+ * </p>
+ * <p>
+ * The file is polled: its modification time and length are checked at a fixed interval, and the file is parsed on the watcher thread only when one
+ * of them has changed, so that the loggers never wait for the configuration to be read. Only the configuration files found on the file system can be
+ * watched, not the ones packaged in an archive.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+public class ConfigurationWatcher implements Runnable {
+
+    /**
+     * Notified by the watcher thread when the configuration file has been modified.
+     */
+    public interface Listener {
+
+        /**
+         * @param properties
+         *            the new content of the configuration file
+         */
+        void configurationChanged(Properties properties);
+    }
+
+    private final File file;
+
+    private final long intervalMillis;
+
+    private final Listener listener;
+
+    private long lastModified;
+
+    private long length;
+
+    private volatile Thread watcher;
+
+    /**
+     * @param file
+     *            the configuration file
+     * @param intervalMillis
+     *            the time between two checks of the file
+     * @param listener
+     *            notified with the new content of the file
+     */
+    public ConfigurationWatcher(File file, long intervalMillis, Listener listener) {
+        this.file = file;
+        this.intervalMillis = intervalMillis;
+        this.listener = listener;
+        this.lastModified = file.lastModified();
+        this.length = file.length();
+    }
+
+    /**
+     * Returns the file on the file system to which the given URL points, or <code>null</code> if it is not a <code>file:</code> URL and then can't be
+     * watched.
+     */
+    public static File toFile(URL url) {
+        if (url == null || !"file".equalsIgnoreCase(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException e) {
+            return new File(url.getPath());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts the watcher thread.
+     */
+    public synchronized void start() {
+        if (watcher != null) {
+            return;
+        }
+        Thread thread = new Thread(this, "ConfigurationWatcher");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        watcher = thread;
+        thread.start();
+    }
+
+    /**
+     * Stops the watcher thread.
+     */
+    public synchronized void stop() {
+        Thread thread = watcher;
+        watcher = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    public void run() {
+        while (watcher == Thread.currentThread()) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                break;
+            }
+            try {
+                checkFile();
+            } catch (Throwable t) {
+                System.err.println("ConfigurationWatcher: unable to reload " + file + " - " + t);
+            }
+        }
+    }
+
+    /**
+     * Notifies the listener if the file has been modified since the last check.
+     */
+    void checkFile() throws IOException {
+        long newLastModified = file.lastModified();
+        long newLength = file.length();
+        if (newLastModified == lastModified && newLength == length) {
+            return;
+        }
+        if (newLastModified == 0) {
+            // The file has been deleted, or is being replaced: keep the current configuration
+            return;
+        }
+        lastModified = newLastModified;
+        length = newLength;
+
+        Properties properties = new Properties();
+        InputStream stream = new FileInputStream(file);
+        try {
+            properties.load(stream);
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                ; // Ignore
+            }
+        }
+        listener.configurationChanged(properties);
+    }
+}
@@ -0,0 +1,89 @@
+package org.apache.commons.logging.impl;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.commons.logging.LogSink;
+
+/**
+ * <p>
+ * Writes the events to the standard error stream, one event per line, to see the logs of an application running on a host JVM.
+ * </p>
+ * <p>
+ * The events are copied into a reusable <code>char[]</code> and encoded from it, instead of being converted to a <code>String</code>.
+ * </p>
+ * 
+ * @author Nicolas Dos Santos
+ */
+public class ConsoleSink implements LogSink {
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    /** A buffer growing beyond this capacity is released after use */
+    private static final int MAX_BUFFER_CAPACITY = 8192;
+
+    /** Encodes the events to the stream, guarded by this sink */
+    private final Writer writer;
+
+    /** The buffer into which the events are copied, guarded by this sink */
+    private char[] chars = new char[256];
+
+    /**
+     * Creates a sink writing to <code>System.err</code>.
+     */
+    public ConsoleSink() {
+        this(System.err);
+    }
+
+    /**
+     * @param out
+     *            the stream to write to
+     */
+    public ConsoleSink(OutputStream out) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out));
+    }
+
+    public synchronized void write(int level, String tag, CharSequence event) {
+        int length = event.length();
+        if (length > chars.length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        if (event instanceof StringBuilder) {
+            ((StringBuilder) event).getChars(0, length, chars, 0);
+        } else if (event instanceof String) {
+            ((String) event).getChars(0, length, chars, 0);
+        } else {
+            for (int i = 0; i < length; i++) {
+                chars[i] = event.charAt(i);
+            }
+        }
+
+        try {
+            writer.write(chars, 0, length);
+            writer.write(LINE_SEPARATOR);
+            writer.flush();
+        } catch (IOException e) {
+            ; // Ignore: nowhere to report it
+        }
+
+        if (chars.length > MAX_BUFFER_CAPACITY) {
+            chars = new char[256];
+        }
+    }
+
+    public synchronized void flush() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            ; // Ignore
+        }
+    }
+
+    public void close() {
+        // The standard stream is not closed
+        flush();
+    }
+}
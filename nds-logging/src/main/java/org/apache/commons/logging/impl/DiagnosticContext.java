@@ -0,0 +1,165 @@
+package org.apache.commons.logging.impl;
+
+/**
+ * <p>
+ * The mapped diagnostic context of the current thread: keys and values, such as a request id or a user id, rendered with the events logged by the
+ * thread.
+ * </p>
+ * <p>
+ * A context is immutable: {@link #put(String, String)} and {@link #remove(String)} replace the context of the thread by a modified copy. An event
+ * therefore captures the context of its thread by keeping a reference to it, with {@link #current()}, and reads it later on any thread without
+ * copying it. The contexts are small, so they are kept as arrays scanned linearly.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+public final class DiagnosticContext {
+
+    /** The context without any key */
+    public static final DiagnosticContext EMPTY = new DiagnosticContext(new String[0], new String[0]);
+
+    /** The context of each thread, <code>null</code> for the empty context */
+    private static final ThreadLocal<DiagnosticContext> contexts = new ThreadLocal<DiagnosticContext>();
+
+    private final String[] keys;
+
+    private final String[] values;
+
+    private DiagnosticContext(String[] keys, String[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * Returns the context of the current thread.
+     */
+    public static DiagnosticContext current() {
+        DiagnosticContext context = contexts.get();
+        return context == null ? EMPTY : context;
+    }
+
+    /**
+     * Replaces the context of the current thread, such as by a context captured on another thread.
+     *
+     * @param context
+     *            the new context, <code>null</code> for the empty context
+     */
+    public static void attach(DiagnosticContext context) {
+        if (context == null || context.keys.length == 0) {
+            contexts.remove();
+        } else {
+            contexts.set(context);
+        }
+    }
+
+    /**
+     * Sets the value of a key in the context of the current thread.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value, <code>null</code> to remove the key
+     */
+    public static void put(String key, String value) {
+        if (key == null) {
+            throw new IllegalArgumentException("The key can't be null");
+        }
+        if (value == null) {
+            remove(key);
+            return;
+        }
+        DiagnosticContext context = current();
+        int index = context.indexOf(key);
+        if (index >= 0 && value.equals(context.values[index])) {
+            return;
+        }
+        int size = context.keys.length;
+        String[] newKeys = new String[index >= 0 ? size : size + 1];
+        String[] newValues = new String[newKeys.length];
+        System.arraycopy(context.keys, 0, newKeys, 0, size);
+        System.arraycopy(context.values, 0, newValues, 0, size);
+        if (index < 0) {
+            index = size;
+            newKeys[index] = key;
+        }
+        newValues[index] = value;
+        contexts.set(new DiagnosticContext(newKeys, newValues));
+    }
+
+    /**
+     * Removes a key from the context of the current thread.
+     */
+    public static void remove(String key) {
+        DiagnosticContext context = current();
+        int index = context.indexOf(key);
+        if (index < 0) {
+            return;
+        }
+        int size = context.keys.length - 1;
+        String[] newKeys = new String[size];
+        String[] newValues = new String[size];
+        System.arraycopy(context.keys, 0, newKeys, 0, index);
+        System.arraycopy(context.values, 0, newValues, 0, index);
+        System.arraycopy(context.keys, index + 1, newKeys, index, size - index);
+        System.arraycopy(context.values, index + 1, newValues, index, size - index);
+        attach(new DiagnosticContext(newKeys, newValues));
+    }
+
+    /**
+     * Removes all the keys from the context of the current thread.
+     */
+    public static void clear() {
+        contexts.remove();
+    }
+
+    private int indexOf(String key) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the value of a key, or <code>null</code> if the key is not in this context.
+     */
+    public String get(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : values[index];
+    }
+
+    /**
+     * Returns the number of keys of this context.
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the key at the given index, in the order the keys have been added.
+     */
+    public String getKey(int index) {
+        return keys[index];
+    }
+
+    /**
+     * Returns the value at the given index.
+     */
+    public String getValue(int index) {
+        return values[index];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder(16 * keys.length + 2);
+        buf.append('{');
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                buf.append(", ");
+            }
+            buf.append(keys[i]).append('=').append(values[i]);
+        }
+        return buf.append('}').toString();
+    }
+}
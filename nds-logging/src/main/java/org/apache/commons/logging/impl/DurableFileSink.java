@@ -0,0 +1,406 @@
+package org.apache.commons.logging.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.LogSink;
+
+/**
+ * <p>
+ * Appends the events, encoded in UTF-8 and one per line, to a file with a durability guarantee for the most severe ones.
+ * </p>
+ * <p>
+ * The events are accumulated in memory and written to the file by a committer thread. The events having at least the durable level (ERROR by
+ * default) make their caller wait until they are on the disk: the committer writes all the accumulated events and forces them to the disk with a
+ * single <code>FileChannel.force</code>, so the durable events logged concurrently share the same commit. A durable event waits at most the commit
+ * latency for other events before its commit starts. The other events don't wait: they are written with the next commit, at the latest after
+ * {@link #FLUSH_INTERVAL_MILLIS}, without being forced to the disk.
+ * </p>
+ * <p>
+ * When a commit fails, its events are lost: the failure is reported on the standard error stream and counted, see {@link #getFailedCommitCount()}
+ * and {@link #getLostEventCount()}, but the callers of its durable events return as usual, since logging never throws. The next commits are
+ * attempted as usual.
+ * </p>
+ * <p>
+ * The events are only durable when they are written by the thread logging them: with the asynchronous mode of <code>LoggerFactory</code>, the
+ * thread waiting for the commit is the background thread, and the caller returns as soon as the event is queued.
+ * </p>
+ * <p>
+ * The number of commits per second and the average number of events per commit are available to tune the commit latency.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+public class DurableFileSink implements LogSink {
+
+    /** The default maximum time a durable event waits for other events before its commit starts, in milliseconds */
+    public static final long DEFAULT_COMMIT_LATENCY_MILLIS = 2;
+
+    /** The maximum time the events that are not durable wait to be written to the file */
+    public static final long FLUSH_INTERVAL_MILLIS = 100;
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private final FileChannel channel;
+
+    private final int durableLevel;
+
+    private final long commitLatencyNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signaled to the committer when a durable event is waiting */
+    private final Condition commitRequested = lock.newCondition();
+
+    /** Signaled to the callers when a commit is done */
+    private final Condition committedCondition = lock.newCondition();
+
+    private final CharsetEncoder encoder;
+
+    /** The events waiting to be written, guarded by the lock */
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    /** The buffer being written by the committer, swapped with {@link #pending} */
+    private ByteBuffer writing = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    /** The sequence of the last appended event, guarded by the lock */
+    private long appended = 0;
+
+    /** The sequence of the last event of the last commit, whether it succeeded or failed, guarded by the lock */
+    private long committed = 0;
+
+    /** The sequence of the last durable event, guarded by the lock */
+    private long durableRequested = 0;
+
+    /** When the oldest durable event not yet committed has been appended, guarded by the lock */
+    private long durableSince = 0;
+
+    private boolean closed = false;
+
+    private final Thread committer;
+
+    // Statistics, guarded by the lock
+    private long commitCount = 0;
+    private long committedEvents = 0;
+    private long failedCommits = 0;
+    private long lostEvents = 0;
+    private final long startTime = System.nanoTime();
+
+    /**
+     * Creates a sink appending to <code>androidlog.log</code> in the current directory.
+     */
+    public DurableFileSink() throws IOException {
+        this(new File("androidlog.log"), SimpleAndroidLog.LOG_LEVEL_ERROR, DEFAULT_COMMIT_LATENCY_MILLIS);
+    }
+
+    /**
+     * @param file
+     *            the log file, created if needed
+     * @param durableLevel
+     *            the lowest level of the events whose callers wait for them to be on the disk, one of the <code>SimpleAndroidLog.LOG_LEVEL_XXX</code>
+     *            constants
+     * @param commitLatencyMillis
+     *            the maximum time a durable event waits for other events before its commit starts, 0 to start it as soon as the previous commit is
+     *            done
+     * @throws IOException
+     *             if the file can't be opened
+     */
+    public DurableFileSink(File file, int durableLevel, long commitLatencyMillis) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the directory " + directory);
+        }
+        this.channel = new FileOutputStream(file, true).getChannel();
+        this.durableLevel = durableLevel;
+        this.commitLatencyNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, commitLatencyMillis));
+        this.encoder = Charset.forName("UTF-8").newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(
+                CodingErrorAction.REPLACE);
+
+        committer = new Thread("DurableFileSink-committer") {
+            @Override
+            public void run() {
+                commitLoop();
+            }
+        };
+        committer.setDaemon(true);
+        committer.start();
+
+        try {
+            Runtime.getRuntime().addShutdownHook(new Thread("DurableFileSink-shutdown") {
+                @Override
+                public void run() {
+                    close();
+                }
+            });
+        } catch (SecurityException e) {
+            ; // Ignore: the last events may be lost on exit
+        }
+    }
+
+    // -------------------------------------------------------- LogSink
+
+    /**
+     * Appends an event. If its level is at least the durable level, waits until it has been forced to the disk, or until the commit has failed.
+     */
+    public void write(int level, String tag, CharSequence event) {
+        boolean durable = level >= durableLevel;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            encode(event);
+            encode(LINE_SEPARATOR);
+            long sequence = ++appended;
+            if (!durable) {
+                return;
+            }
+
+            if (durableRequested <= committed) {
+                durableSince = System.nanoTime();
+            }
+            durableRequested = sequence;
+            commitRequested.signal();
+            while (committed < sequence) {
+                committedCondition.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void encode(CharSequence text) {
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        for (;;) {
+            CoderResult result = encoder.encode(chars, pending, true);
+            if (result.isOverflow()) {
+                ByteBuffer larger = ByteBuffer.allocate(pending.capacity() * 2);
+                pending.flip();
+                larger.put(pending);
+                pending = larger;
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Writes the pending events to the file and forces them to the disk.
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            if (closed || committed == appended) {
+                return;
+            }
+            long sequence = appended;
+            if (durableRequested <= committed) {
+                durableSince = System.nanoTime() - commitLatencyNanos;
+            }
+            durableRequested = sequence;
+            commitRequested.signal();
+            while (committed < sequence && !closed) {
+                committedCondition.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Commits the pending events, stops the committer thread and closes the file.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            commitRequested.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            committer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // -------------------------------------------------------- Committer
+
+    private void commitLoop() {
+        for (;;) {
+            long sequence;
+            boolean force;
+            boolean stop;
+            ByteBuffer buffer;
+            lock.lock();
+            try {
+                // Wait for a durable event, for its latency to elapse, or for the flush interval
+                long flushDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MILLIS);
+                for (;;) {
+                    if (closed) {
+                        break;
+                    }
+                    long now = System.nanoTime();
+                    long wait;
+                    if (durableRequested > committed) {
+                        wait = durableSince + commitLatencyNanos - now;
+                    } else {
+                        wait = appended > committed ? flushDeadline - now : TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MILLIS);
+                        if (appended == committed) {
+                            flushDeadline = now + wait;
+                        }
+                    }
+                    if (wait <= 0) {
+                        break;
+                    }
+                    try {
+                        commitRequested.awaitNanos(wait);
+                    } catch (InterruptedException e) {
+                        ; // Ignore: stopped by close()
+                    }
+                }
+
+                stop = closed;
+                sequence = appended;
+                force = durableRequested > committed || stop;
+                buffer = pending;
+                pending = writing;
+                pending.clear();
+                writing = buffer;
+            } finally {
+                lock.unlock();
+            }
+
+            buffer.flip();
+            IOException failure = null;
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (force) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+
+            lock.lock();
+            try {
+                if (sequence > committed) {
+                    if (failure != null) {
+                        // The events are lost
+                        System.err.println("DurableFileSink: unable to commit " + (sequence - committed) + " log events - " + failure);
+                        failedCommits++;
+                        lostEvents += sequence - committed;
+                    } else if (force) {
+                        commitCount++;
+                        committedEvents += sequence - committed;
+                    }
+                    committed = sequence;
+                } else if (failure != null) {
+                    System.err.println("DurableFileSink: unable to force the log events to the disk - " + failure);
+                }
+                committedCondition.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            if (stop) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    ; // Ignore
+                }
+                return;
+            }
+        }
+    }
+
+    // -------------------------------------------------------- Statistics
+
+    /**
+     * Returns the number of successful commits forcing the events to the disk since the creation of this sink.
+     */
+    public long getCommitCount() {
+        lock.lock();
+        try {
+            return commitCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of events forced to the disk by a commit since the creation of this sink.
+     */
+    public long getCommittedEvents() {
+        lock.lock();
+        try {
+            return committedEvents;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of commits that failed to write their events to the disk since the creation of this sink.
+     */
+    public long getFailedCommitCount() {
+        lock.lock();
+        try {
+            return failedCommits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of events lost by the failed commits since the creation of this sink.
+     */
+    public long getLostEventCount() {
+        lock.lock();
+        try {
+            return lostEvents;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the average number of commits per second since the creation of this sink.
+     */
+    public double getCommitsPerSecond() {
+        long elapsed = System.nanoTime() - startTime;
+        return elapsed <= 0 ? 0 : getCommitCount() * 1000000000.0 / elapsed;
+    }
+
+    /**
+     * Returns the average number of events forced to the disk per commit.
+     */
+    public double getEventsPerCommit() {
+        lock.lock();
+        try {
+            return commitCount == 0 ? 0 : (double) committedEvents / commitCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
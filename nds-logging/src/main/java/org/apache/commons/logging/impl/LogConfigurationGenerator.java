@@ -0,0 +1,240 @@
+package org.apache.commons.logging.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.AndroidLog;
+import org.apache.commons.logging.AndroidLogFactory;
+import org.apache.commons.logging.PrecomputedLogConfiguration;
+
+/**
+ * <p>
+ * Resolves the logging configuration at build time, as {@link AndroidLogFactory} and {@link AndroidLogFactoryImpl} would at run time, and writes
+ * it as the source of the {@link PrecomputedLogConfiguration} class {@link PrecomputedLogConfiguration#CLASS_NAME}:
+ * </p>
+ * <ul>
+ * <li>the <code>AndroidLogFactory</code> implementation, from the system property or the entry <code>org.apache.commons.logging.LogFactory</code>
+ * of <code>android-commons-logging.properties</code>, defaulting to <code>AndroidLogFactoryImpl</code>;</li>
+ * <li>the <code>AndroidLog</code> implementation, from the entry <code>org.apache.commons.logging.AndroidLog</code> of the same file or the system
+ * property, defaulting to <code>SimpleAndroidLog</code>;</li>
+ * <li>the entries of <code>android-commons-logging.properties</code> and <code>androidlog.properties</code>, the levels included.</li>
+ * </ul>
+ * <p>
+ * Usage: <code>java org.apache.commons.logging.impl.LogConfigurationGenerator &lt;output source directory&gt; [&lt;resource directory&gt;...]</code>.
+ * The configuration files are searched in the resource directories, then in the class path of the generator; as at run time, the file with the
+ * greatest <code>priority</code> is used, the first one found on a tie. The implementations must be in the class path of the generator.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+public final class LogConfigurationGenerator {
+
+    private static final String LOG_PROPERTIES = "androidlog.properties";
+
+    private static final String LOG_DEFAULT = "org.apache.commons.logging.impl.SimpleAndroidLog";
+
+    private final ClassLoader classLoader = LogConfigurationGenerator.class.getClassLoader();
+
+    private final List<File> resourceDirectories = new ArrayList<File>();
+
+    private LogConfigurationGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: LogConfigurationGenerator <output source directory> [<resource directory>...]");
+            System.exit(1);
+        }
+        LogConfigurationGenerator generator = new LogConfigurationGenerator();
+        for (int i = 1; i < args.length; i++) {
+            generator.resourceDirectories.add(new File(args[i]));
+        }
+        generator.generate(new File(args[0]));
+    }
+
+    private void generate(File outputDirectory) throws IOException {
+        Properties factoryAttributes = getConfigurationFile(AndroidLogFactory.FACTORY_PROPERTIES);
+        Properties logProperties = getConfigurationFile(LOG_PROPERTIES);
+
+        String factoryClassName = System.getProperty(AndroidLogFactory.FACTORY_PROPERTY);
+        if (factoryClassName == null) {
+            factoryClassName = factoryAttributes.getProperty(AndroidLogFactory.FACTORY_PROPERTY, AndroidLogFactory.FACTORY_DEFAULT);
+        }
+        String logClassName = factoryAttributes.getProperty(AndroidLogFactoryImpl.LOG_PROPERTY);
+        if (logClassName == null) {
+            logClassName = System.getProperty(AndroidLogFactoryImpl.LOG_PROPERTY, LOG_DEFAULT);
+        }
+
+        Class<?> factoryClass = getImplementation(factoryClassName.trim(), AndroidLogFactory.class);
+        checkConstructor(factoryClass);
+        Class<?> logClass = getImplementation(logClassName.trim(), AndroidLog.class);
+        checkConstructor(logClass, String.class);
+        boolean setLogFactory = false;
+        try {
+            Method method = logClass.getMethod("setLogFactory", AndroidLogFactory.class);
+            setLogFactory = !Modifier.isStatic(method.getModifiers());
+        } catch (NoSuchMethodException e) {
+            ; // Ignore
+        }
+
+        String className = PrecomputedLogConfiguration.CLASS_NAME;
+        int lastDot = className.lastIndexOf('.');
+        File file = new File(outputDirectory, className.replace('.', File.separatorChar) + ".java");
+        file.getParentFile().mkdirs();
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write("package " + className.substring(0, lastDot) + ";\n\n");
+            out.write("import java.util.Properties;\n\n");
+            out.write("/**\n * Generated by " + LogConfigurationGenerator.class.getName() + ", do not edit.\n */\n");
+            out.write("public final class " + className.substring(lastDot + 1) + " implements " + PrecomputedLogConfiguration.class.getName()
+                    + " {\n\n");
+
+            out.write("    public " + AndroidLogFactory.class.getName() + " newFactory() {\n");
+            out.write("        return new " + factoryClass.getCanonicalName() + "();\n");
+            out.write("    }\n\n");
+
+            out.write("    public Properties getFactoryAttributes() {\n");
+            writeProperties(out, factoryAttributes);
+            out.write("    }\n\n");
+
+            out.write("    public " + AndroidLog.class.getName() + " newLog(String name, " + AndroidLogFactory.class.getName() + " factory) {\n");
+            out.write("        " + logClass.getCanonicalName() + " log = new " + logClass.getCanonicalName() + "(name);\n");
+            if (setLogFactory) {
+                out.write("        log.setLogFactory(factory);\n");
+            }
+            out.write("        return log;\n");
+            out.write("    }\n\n");
+
+            out.write("    public Properties getLogProperties() {\n");
+            writeProperties(out, logProperties);
+            out.write("    }\n");
+            out.write("}\n");
+        } finally {
+            out.close();
+        }
+
+        System.out.println("LogConfigurationGenerator: " + file + " - factory " + factoryClass.getName() + ", log " + logClass.getName() + ", "
+                + logProperties.size() + " properties");
+    }
+
+    private Class<?> getImplementation(String className, Class<?> type) {
+        Class<?> clazz;
+        try {
+            clazz = Class.forName(className, false, classLoader);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("The class " + className + " is not in the class path of the generator");
+        }
+        if (!type.isAssignableFrom(clazz)) {
+            throw new IllegalArgumentException("The class " + className + " does not implement " + type.getName());
+        }
+        if (!Modifier.isPublic(clazz.getModifiers()) || Modifier.isAbstract(clazz.getModifiers())) {
+            throw new IllegalArgumentException("The class " + className + " is not public or is abstract");
+        }
+        return clazz;
+    }
+
+    private static void checkConstructor(Class<?> clazz, Class<?>... parameterTypes) {
+        try {
+            Constructor<?> constructor = clazz.getConstructor(parameterTypes);
+            if (Modifier.isPublic(constructor.getModifiers())) {
+                return;
+            }
+        } catch (NoSuchMethodException e) {
+            ; // Ignore
+        }
+        throw new IllegalArgumentException("The class " + clazz.getName() + " has no public constructor with " + parameterTypes.length
+                + " parameter(s)");
+    }
+
+    private static void writeProperties(Writer out, Properties properties) throws IOException {
+        out.write("        Properties properties = new Properties();\n");
+        for (Map.Entry<Object, Object> entry : new TreeMap<Object, Object>(properties).entrySet()) {
+            out.write("        properties.setProperty(\"" + escape((String) entry.getKey()) + "\", \"" + escape((String) entry.getValue()) + "\");\n");
+        }
+        out.write("        return properties;\n");
+    }
+
+    /**
+     * Returns the given text as the content of a Java string literal.
+     */
+    private static String escape(String text) {
+        StringBuilder buffer = new StringBuilder(text.length() + 16);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer.append('\\').append(c);
+            } else if (c == '\n') {
+                buffer.append("\\n");
+            } else if (c == '\r') {
+                buffer.append("\\r");
+            } else if (c == '\t') {
+                buffer.append("\\t");
+            } else if (c < 0x20 || c > 0x7E) {
+                String hex = Integer.toHexString(c);
+                buffer.append("\\u");
+                for (int j = hex.length(); j < 4; j++) {
+                    buffer.append('0');
+                }
+                buffer.append(hex);
+            } else {
+                buffer.append(c);
+            }
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Returns the content of the configuration file with the greatest priority, or empty properties if there is none.
+     */
+    private Properties getConfigurationFile(String fileName) throws IOException {
+        List<URL> urls = new ArrayList<URL>();
+        for (File directory : resourceDirectories) {
+            File file = new File(directory, fileName);
+            if (file.isFile()) {
+                urls.add(file.toURI().toURL());
+            }
+        }
+        Enumeration<URL> resources = classLoader.getResources(fileName);
+        while (resources.hasMoreElements()) {
+            urls.add(resources.nextElement());
+        }
+
+        Properties props = new Properties();
+        double priority = 0.0;
+        URL propsUrl = null;
+        for (URL url : urls) {
+            Properties newProps = new Properties();
+            InputStream stream = url.openStream();
+            try {
+                newProps.load(stream);
+            } finally {
+                stream.close();
+            }
+            String priorityStr = newProps.getProperty(AndroidLogFactory.PRIORITY_KEY);
+            double newPriority = priorityStr == null ? 0.0 : Double.parseDouble(priorityStr);
+            if (propsUrl == null || newPriority > priority) {
+                propsUrl = url;
+                props = newProps;
+                priority = newPriority;
+            }
+        }
+        if (propsUrl != null) {
+            System.out.println("LogConfigurationGenerator: " + fileName + " read from " + propsUrl);
+        }
+        return props;
+    }
+}
@@ -0,0 +1,370 @@
+package org.apache.commons.logging.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Marker;
+
+/**
+ * <p>
+ * Immutable table of the filter rules, deciding whether an enabled event is logged from its level, its logger, its markers, the diagnostic context
+ * of the thread and its message template.
+ * </p>
+ * <p>
+ * A rule is an action, <code>accept</code> or <code>deny</code>, followed by conditions separated by semicolons, all of which must match:
+ * </p>
+ * <ul>
+ * <li><code>level=info</code>, <code>level&lt;=debug</code> or <code>level&gt;=warn</code> - the level of the event</li>
+ * <li><code>logger=com.example.net</code> - the logger or one of its packages</li>
+ * <li><code>marker=AUDIT</code> - one of the markers of the event</li>
+ * <li><code>mdc.requestId=42</code> - the value of a key of the diagnostic context</li>
+ * <li><code>template=Heartbeat from {}</code> - the message before it is formatted, without its leading and trailing spaces</li>
+ * </ul>
+ * <p>
+ * The first rule matching the event decides: <code>deny</code> drops it, <code>accept</code> logs it whatever the following rules. An event matching
+ * no rule is logged.
+ * </p>
+ * <p>
+ * The rules are compiled once into bitmasks: each rule is one of the {@value #MAX_RULES} bits of a <code>long</code>, and each condition is a table
+ * giving the rules it lets through, indexed by the level, by the marker id, by a value, or walked like {@link LogLevelTrie} for the logger names. An
+ * event is decided by intersecting the masks of its attributes and taking the lowest remaining rule, without creating any object.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+final class LogFilter {
+
+    /** The maximum number of rules */
+    static final int MAX_RULES = 64;
+
+    private static final String[] LEVEL_NAMES = { "trace", "debug", "info", "warn", "error", "fatal" };
+
+    /** The rules whose action is <code>deny</code> */
+    private final long denyRules;
+
+    /** The rules let through by each level, indexed by the LOG_LEVEL_XXX constants */
+    private final long[] levelRules = new long[SimpleAndroidLog.LOG_LEVEL_OFF + 1];
+
+    /** The rules having no logger condition */
+    private final long anyLoggerRules;
+
+    /** The logger conditions: the rules of the prefix of each node */
+    private final Node loggers = new Node("");
+
+    /** The rules having no marker condition */
+    private final long anyMarkerRules;
+
+    /** The rules of each marker, indexed by the marker id */
+    private final long[] markerRules = new long[Marker.MAX_MARKERS];
+
+    /** The rules having no template condition */
+    private final long anyTemplateRules;
+
+    /** The rules of each template */
+    private final Map<String, Long> templateRules = new HashMap<String, Long>();
+
+    /** The keys of the diagnostic context having a condition */
+    private final String[] mdcKeys;
+
+    /** The rules having no condition on each key */
+    private final long[] anyMdcRules;
+
+    /** The rules of each value of each key */
+    private final Map<String, Long>[] mdcRules;
+
+    /**
+     * Compiles the rules, in the order they are evaluated.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    LogFilter(List<Rule> rules) {
+        if (rules.size() > MAX_RULES) {
+            throw new IllegalArgumentException("Too many filter rules: " + rules.size() + ", the maximum is " + MAX_RULES);
+        }
+        long all = rules.size() == MAX_RULES ? -1L : (1L << rules.size()) - 1;
+        long deny = 0;
+        long anyLogger = all;
+        long anyMarker = all;
+        long anyTemplate = all;
+        Map<String, Integer> keyIndexes = new HashMap<String, Integer>();
+        for (int i = 0; i < rules.size(); i++) {
+            Rule rule = rules.get(i);
+            for (int j = 0; j < rule.mdcKeys.size(); j++) {
+                String key = rule.mdcKeys.get(j);
+                if (!keyIndexes.containsKey(key)) {
+                    keyIndexes.put(key, Integer.valueOf(keyIndexes.size()));
+                }
+            }
+        }
+        mdcKeys = new String[keyIndexes.size()];
+        anyMdcRules = new long[keyIndexes.size()];
+        mdcRules = new Map[keyIndexes.size()];
+        for (Map.Entry<String, Integer> entry : keyIndexes.entrySet()) {
+            int k = entry.getValue().intValue();
+            mdcKeys[k] = entry.getKey();
+            anyMdcRules[k] = all;
+            mdcRules[k] = new HashMap<String, Long>();
+        }
+
+        for (int i = 0; i < rules.size(); i++) {
+            Rule rule = rules.get(i);
+            long bit = 1L << i;
+            if (rule.deny) {
+                deny |= bit;
+            }
+            for (int level = rule.minLevel; level <= rule.maxLevel; level++) {
+                levelRules[level] |= bit;
+            }
+            if (rule.logger != null) {
+                anyLogger &= ~bit;
+                loggers.add(rule.logger, 0, bit);
+            }
+            if (rule.marker != null) {
+                anyMarker &= ~bit;
+                markerRules[rule.marker.getId()] |= bit;
+            }
+            if (rule.template != null) {
+                anyTemplate &= ~bit;
+                add(templateRules, rule.template, bit);
+            }
+            for (int j = 0; j < rule.mdcKeys.size(); j++) {
+                int k = keyIndexes.get(rule.mdcKeys.get(j)).intValue();
+                anyMdcRules[k] &= ~bit;
+                add(mdcRules[k], rule.mdcValues.get(j), bit);
+            }
+        }
+        this.denyRules = deny;
+        this.anyLoggerRules = anyLogger;
+        this.anyMarkerRules = anyMarker;
+        this.anyTemplateRules = anyTemplate;
+    }
+
+    private static void add(Map<String, Long> map, String value, long bit) {
+        Long rules = map.get(value);
+        map.put(value, Long.valueOf(rules == null ? bit : rules.longValue() | bit));
+    }
+
+    /**
+     * Is the given event dropped by the rules?
+     *
+     * @param loggerName
+     *            the name of the logger
+     * @param level
+     *            one of the LOG_LEVEL_XXX constants
+     * @param markers
+     *            the bitmask of the markers of the event, see {@link Marker#getMask()}
+     * @param template
+     *            the message before it is formatted, or <code>null</code> if it has been produced by the application
+     */
+    boolean isDenied(String loggerName, int level, long markers, String template) {
+        long rules = levelRules[level];
+        if (rules == 0) {
+            return false;
+        }
+        if ((rules & anyLoggerRules) != rules) {
+            rules &= anyLoggerRules | loggers.getRules(loggerName);
+        }
+        if (rules != 0 && (rules & anyMarkerRules) != rules) {
+            long matched = anyMarkerRules;
+            while (markers != 0) {
+                int id = Long.numberOfTrailingZeros(markers);
+                matched |= markerRules[id];
+                markers &= markers - 1;
+            }
+            rules &= matched;
+        }
+        if (rules != 0 && (rules & anyTemplateRules) != rules) {
+            Long matched = template == null ? null : templateRules.get(template);
+            rules &= matched == null ? anyTemplateRules : anyTemplateRules | matched.longValue();
+        }
+        if (rules != 0 && mdcKeys.length > 0) {
+            DiagnosticContext context = DiagnosticContext.current();
+            for (int k = 0; k < mdcKeys.length && rules != 0; k++) {
+                String value = context.get(mdcKeys[k]);
+                Long matched = value == null ? null : mdcRules[k].get(value);
+                rules &= matched == null ? anyMdcRules[k] : anyMdcRules[k] | matched.longValue();
+            }
+        }
+        // The first matching rule decides
+        return (rules & -rules & denyRules) != 0;
+    }
+
+    // -------------------------------------------------------- Rule
+
+    /**
+     * A rule parsed from its definition, before it is compiled.
+     */
+    static final class Rule {
+
+        final boolean deny;
+
+        int minLevel = SimpleAndroidLog.LOG_LEVEL_ALL;
+
+        int maxLevel = SimpleAndroidLog.LOG_LEVEL_OFF;
+
+        String logger;
+
+        Marker marker;
+
+        String template;
+
+        final List<String> mdcKeys = new ArrayList<String>();
+
+        final List<String> mdcValues = new ArrayList<String>();
+
+        private Rule(boolean deny) {
+            this.deny = deny;
+        }
+
+        /**
+         * Parses a rule: <code>deny logger=com.example.net; level&lt;=debug</code>.
+         *
+         * @throws IllegalArgumentException
+         *             if the rule is invalid
+         * @throws IllegalStateException
+         *             if the marker of the rule can't be created, see {@link Marker#get(String)}
+         */
+        static Rule parse(String definition) {
+            String text = definition.trim();
+            int space = text.indexOf(' ');
+            String action = space < 0 ? text : text.substring(0, space);
+            Rule rule;
+            if ("deny".equalsIgnoreCase(action)) {
+                rule = new Rule(true);
+            } else if ("accept".equalsIgnoreCase(action)) {
+                rule = new Rule(false);
+            } else {
+                throw new IllegalArgumentException("unknown action '" + action + "', must be accept or deny");
+            }
+            if (space < 0) {
+                return rule;
+            }
+            String[] conditions = text.substring(space + 1).split(";");
+            for (int i = 0; i < conditions.length; i++) {
+                String condition = conditions[i].trim();
+                if (condition.length() > 0) {
+                    rule.addCondition(condition);
+                }
+            }
+            return rule;
+        }
+
+        private void addCondition(String condition) {
+            int equals = condition.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("invalid condition '" + condition + "'");
+            }
+            char operator = condition.charAt(equals - 1);
+            String name = condition.substring(0, operator == '<' || operator == '>' ? equals - 1 : equals).trim();
+            String value = condition.substring(equals + 1).trim();
+            if (name.equals("level")) {
+                int level = toLevel(value);
+                if (operator != '>') {
+                    maxLevel = Math.min(maxLevel, level);
+                }
+                if (operator != '<') {
+                    minLevel = Math.max(minLevel, level);
+                }
+            } else if (operator == '<' || operator == '>') {
+                throw new IllegalArgumentException("invalid condition '" + condition + "', only the level can be compared");
+            } else if (name.equals("logger") && logger == null) {
+                logger = value;
+            } else if (name.equals("marker") && marker == null) {
+                marker = Marker.get(value);
+            } else if (name.equals("template") && template == null) {
+                template = value;
+            } else if (name.startsWith("mdc.") && name.length() > 4 && !mdcKeys.contains(name.substring(4))) {
+                mdcKeys.add(name.substring(4));
+                mdcValues.add(value);
+            } else {
+                throw new IllegalArgumentException("invalid or repeated condition '" + condition + "'");
+            }
+        }
+
+        private static int toLevel(String name) {
+            for (int i = 0; i < LEVEL_NAMES.length; i++) {
+                if (LEVEL_NAMES[i].equalsIgnoreCase(name)) {
+                    return SimpleAndroidLog.LOG_LEVEL_TRACE + i;
+                }
+            }
+            throw new IllegalArgumentException("unknown level '" + name + "'");
+        }
+    }
+
+    // -------------------------------------------------------- Node
+
+    /**
+     * A node of the prefix tree of the logger conditions, built while the rules are compiled.
+     */
+    private static final class Node {
+
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        final String segment;
+
+        long rules;
+
+        Node[] children = NO_CHILDREN;
+
+        Node(String segment) {
+            this.segment = segment;
+        }
+
+        /**
+         * Returns the rules of the given logger name and of its prefixes.
+         */
+        long getRules(String name) {
+            long result = rules;
+            Node node = this;
+            int start = 0;
+            int length = name.length();
+            while (start <= length) {
+                int end = name.indexOf('.', start);
+                if (end < 0) {
+                    end = length;
+                }
+                node = node.child(name, start, end - start);
+                if (node == null) {
+                    break;
+                }
+                result |= node.rules;
+                start = end + 1;
+            }
+            return result;
+        }
+
+        Node child(String name, int start, int length) {
+            for (int i = 0; i < children.length; i++) {
+                Node child = children[i];
+                if (child.segment.length() == length && name.regionMatches(start, child.segment, 0, length)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Adds the rule to the descendant <code>name[start..]</code>.
+         */
+        void add(String name, int start, long bit) {
+            int end = name.indexOf('.', start);
+            if (end < 0) {
+                end = name.length();
+            }
+            Node child = child(name, start, end - start);
+            if (child == null) {
+                child = new Node(name.substring(start, end));
+                Node[] newChildren = new Node[children.length + 1];
+                System.arraycopy(children, 0, newChildren, 0, children.length);
+                newChildren[children.length] = child;
+                children = newChildren;
+            }
+            if (end == name.length()) {
+                child.rules |= bit;
+            } else {
+                child.add(name, end + 1, bit);
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package org.apache.commons.logging.impl;
+
+/**
+ * <p>
+ * Immutable prefix tree of the logging levels configured for the logger names and their packages.
+ * </p>
+ * <p>
+ * The logger names are split on the dots: the level of a logger is the level configured for its longest configured prefix ("a.b.c", then "a.b",
+ * then "a"), or the default level. It is resolved in a single walk of the tree, without creating any string.
+ * </p>
+ * <p>
+ * A tree is never modified: {@link #with(String, int)} returns a new tree sharing the untouched branches, with a new version. The loggers keep the
+ * version of the tree their level has been resolved from, so that they resolve it again once the tree has been replaced.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+final class LogLevelTrie {
+
+    /** The level of a node for which no level has been configured */
+    static final int UNSET = -1;
+
+    /** The versions are stored on 24 bits by the loggers */
+    static final int VERSION_MASK = 0xFFFFFF;
+
+    private final Node root;
+
+    private final int version;
+
+    /**
+     * Creates an empty tree.
+     *
+     * @param defaultLevel
+     *            the level of the loggers having no configured prefix
+     */
+    LogLevelTrie(int defaultLevel) {
+        this(new Node("", defaultLevel, null), 1);
+    }
+
+    /**
+     * Creates an empty tree replacing the given one: its version follows the version of the replaced tree.
+     *
+     * @param defaultLevel
+     *            the level of the loggers having no configured prefix
+     * @param replaced
+     *            the tree being replaced
+     */
+    LogLevelTrie(int defaultLevel, LogLevelTrie replaced) {
+        this(new Node("", defaultLevel, null), nextVersion(replaced.version));
+    }
+
+    private LogLevelTrie(Node root, int version) {
+        this.root = root;
+        this.version = version;
+    }
+
+    /**
+     * Returns the version of this tree, never 0.
+     */
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the level of the loggers having no configured prefix.
+     */
+    int getDefaultLevel() {
+        return root.level;
+    }
+
+    /**
+     * Returns the effective level of the given logger.
+     *
+     * @param name
+     *            the logger name
+     */
+    int getLevel(String name) {
+        int level = root.level;
+        Node node = root;
+        int start = 0;
+        int length = name.length();
+        while (start <= length) {
+            int end = name.indexOf('.', start);
+            if (end < 0) {
+                end = length;
+            }
+            node = node.child(name, start, end - start);
+            if (node == null) {
+                break;
+            }
+            if (node.level != UNSET) {
+                level = node.level;
+            }
+            start = end + 1;
+        }
+        return level;
+    }
+
+    /**
+     * Returns a new tree in which the given logger or package has the given level.
+     *
+     * @param name
+     *            the logger name or one of its prefixes
+     * @param level
+     *            the level, or {@link #UNSET} to remove the configured level
+     */
+    LogLevelTrie with(String name, int level) {
+        return new LogLevelTrie(root.with(name, 0, level), nextVersion(version));
+    }
+
+    /**
+     * Returns a new tree in which the loggers having no configured prefix have the given level.
+     */
+    LogLevelTrie withDefaultLevel(int level) {
+        return new LogLevelTrie(new Node(root.segment, level, root.children), nextVersion(version));
+    }
+
+    private static int nextVersion(int version) {
+        int next = (version + 1) & VERSION_MASK;
+        return next == 0 ? 1 : next;
+    }
+
+    // -------------------------------------------------------- Node
+
+    private static final class Node {
+
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        final String segment;
+
+        final int level;
+
+        final Node[] children;
+
+        Node(String segment, int level, Node[] children) {
+            this.segment = segment;
+            this.level = level;
+            this.children = children == null ? NO_CHILDREN : children;
+        }
+
+        /**
+         * Returns the child whose segment is <code>name[start..start + length[</code>.
+         */
+        Node child(String name, int start, int length) {
+            for (int i = 0; i < children.length; i++) {
+                Node child = children[i];
+                if (child.segment.length() == length && name.regionMatches(start, child.segment, 0, length)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns a copy of this node in which the descendant <code>name[start..]</code> has the given level.
+         */
+        Node with(String name, int start, int newLevel) {
+            int end = name.indexOf('.', start);
+            if (end < 0) {
+                end = name.length();
+            }
+
+            int index = -1;
+            for (int i = 0; i < children.length; i++) {
+                if (children[i].segment.length() == end - start && name.regionMatches(start, children[i].segment, 0, end - start)) {
+                    index = i;
+                    break;
+                }
+            }
+
+            Node child;
+            if (index >= 0) {
+                child = children[index];
+            } else {
+                child = new Node(name.substring(start, end), UNSET, null);
+            }
+            if (end == name.length()) {
+                child = new Node(child.segment, newLevel, child.children);
+            } else {
+                child = child.with(name, end + 1, newLevel);
+            }
+
+            Node[] newChildren;
+            if (index >= 0) {
+                newChildren = children.clone();
+                newChildren[index] = child;
+            } else {
+                newChildren = new Node[children.length + 1];
+                System.arraycopy(children, 0, newChildren, 0, children.length);
+                newChildren[children.length] = child;
+            }
+            return new Node(segment, level, newChildren);
+        }
+    }
+}
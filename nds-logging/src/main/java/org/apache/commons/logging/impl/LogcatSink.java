@@ -0,0 +1,33 @@
+package org.apache.commons.logging.impl;
+
+import org.apache.commons.logging.LogSink;
+
+import android.util.Log;
+
+/**
+ * <p>
+ * Writes the events to the Android logging system, with the <code>android.util.Log</code> priority matching their level. This is the default sink
+ * of <code>SimpleAndroidLog</code>.
+ * </p>
+ * 
+ * @author Nicolas Dos Santos
+ */
+public class LogcatSink implements LogSink {
+
+    /** The <code>android.util.Log</code> priority of each log level, indexed by the LOG_LEVEL_XXX constants */
+    private static final int[] PRIORITIES = { Log.VERBOSE, Log.VERBOSE, Log.DEBUG, Log.INFO, Log.WARN, Log.ERROR, Log.ERROR, Log.ERROR };
+
+    public void write(int level, String tag, CharSequence event) {
+        if (level >= SimpleAndroidLog.LOG_LEVEL_TRACE && level <= SimpleAndroidLog.LOG_LEVEL_FATAL) {
+            Log.println(PRIORITIES[level], tag, event.toString());
+        }
+    }
+
+    public void flush() {
+        // Nothing to flush
+    }
+
+    public void close() {
+        // Nothing to release
+    }
+}
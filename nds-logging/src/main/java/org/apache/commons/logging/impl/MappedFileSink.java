@@ -0,0 +1,599 @@
+package org.apache.commons.logging.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.LogSink;
+
+/**
+ * <p>
+ * Writes the events, encoded in UTF-8 and one per line, to rolling log files through memory-mapped buffers.
+ * </p>
+ * <p>
+ * The log is a sequence of segments of fixed size, named <code>&lt;file&gt;.000001.log</code>, <code>&lt;file&gt;.000002.log</code>, ... Each segment
+ * is preallocated and mapped in memory, so an event is encoded straight into the mapped buffer without any system call. When the current segment is
+ * full, the sink rolls to the next one, which has already been created and mapped by a background thread. The same thread then maps the
+ * following segment, writes the full segment to the disk, unmaps it, truncates it to its written length and releases it.
+ * </p>
+ * <p>
+ * When a segment can't be created, for example because the disk is full, the events are ignored and the background thread tries again after a
+ * delay, doubled after each failure up to one minute. The events are written again as soon as a segment has been created.
+ * </p>
+ * <p>
+ * An event is never split across two segments, unless it is longer than a whole segment. When the application starts, the log continues with a new
+ * segment following the existing ones.
+ * </p>
+ * <p>
+ * The released segments can be compressed and deleted by a {@link SegmentArchiver}.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+public class MappedFileSink implements LogSink {
+
+    /** The default size of a segment: 16 MB */
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    /** The extension of the segment files */
+    static final String SEGMENT_EXTENSION = ".log";
+
+    private static final byte[] LINE_SEPARATOR = System.getProperty("line.separator").getBytes();
+
+    /** The number of bytes a char may be encoded to, a surrogate pair being encoded to 4 bytes */
+    private static final int MAX_BYTES_PER_CHAR = 3;
+
+    /** The delay before the first new attempt to create a segment, in milliseconds */
+    private static final long MIN_RETRY_DELAY = 100;
+
+    /** The maximum delay between two attempts to create a segment, in milliseconds */
+    private static final long MAX_RETRY_DELAY = 60 * 1000;
+
+    private final File file;
+
+    private final int segmentSize;
+
+    /** The segment being written, or <code>null</code> while no segment could be created, guarded by this sink */
+    private Segment current;
+
+    private boolean closed = false;
+
+    /** The number of events ignored since no segment could be created, guarded by this sink */
+    private long ignored = 0;
+
+    /** Guards the fields shared with the roller thread */
+    private final Object rollLock = new Object();
+
+    /** The next segment, mapped in advance by the roller thread */
+    private Segment prepared;
+
+    /** The full segments, to be written to the disk and released by the roller thread */
+    private final List<Segment> retired = new ArrayList<Segment>();
+
+    /** The index of the next segment to create */
+    private int nextIndex;
+
+    /** Set while the roller thread is unable to create the next segment */
+    private IOException failure;
+
+    /** The time of the next attempt to create a segment, once it has failed */
+    private long retryTime;
+
+    /** The delay between the last failed attempt to create a segment and the next one */
+    private long retryDelay = 0;
+
+    private volatile boolean running = true;
+
+    private final Thread roller;
+
+    /** Compresses and deletes the released segments, or <code>null</code> */
+    private final SegmentArchiver archiver;
+
+    /**
+     * Creates a sink writing segments of {@link #DEFAULT_SEGMENT_SIZE} bytes named after <code>androidlog</code> in the current directory.
+     */
+    public MappedFileSink() throws IOException {
+        this(new File("androidlog"), DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param file
+     *            the path of the log files, without the segment index and extension
+     * @param segmentSize
+     *            the size of a segment, in bytes
+     * @throws IOException
+     *             if the first segment can't be created
+     */
+    public MappedFileSink(File file, int segmentSize) throws IOException {
+        this(file, segmentSize, null);
+    }
+
+    /**
+     * @param file
+     *            the path of the log files, without the segment index and extension
+     * @param segmentSize
+     *            the size of a segment, in bytes
+     * @param archiver
+     *            compresses and deletes the released segments, <code>null</code> to keep them as they are
+     * @throws IOException
+     *             if the first segment can't be created
+     */
+    public MappedFileSink(File file, int segmentSize, SegmentArchiver archiver) throws IOException {
+        this.file = file.getAbsoluteFile();
+        this.archiver = archiver;
+        this.segmentSize = Math.max(segmentSize, 4096);
+        File directory = this.file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the directory " + directory);
+        }
+
+        int lastIndex = 0;
+        File[] segments = listSegments(this.file);
+        if (segments.length > 0) {
+            lastIndex = getIndex(this.file, segments[segments.length - 1]);
+        }
+        nextIndex = lastIndex + 1;
+        current = Segment.open(segmentFile(nextIndex++), this.segmentSize);
+        if (archiver != null) {
+            archiver.start(this.file, lastIndex);
+        }
+
+        roller = new Thread("MappedFileSink-roller") {
+            @Override
+            public void run() {
+                roll();
+            }
+        };
+        roller.setDaemon(true);
+        roller.start();
+
+        try {
+            Runtime.getRuntime().addShutdownHook(new Thread("MappedFileSink-shutdown") {
+                @Override
+                public void run() {
+                    close();
+                }
+            });
+        } catch (SecurityException e) {
+            ; // Ignore: the last segment won't be truncated on exit
+        }
+    }
+
+    // -------------------------------------------------------- Segment files
+
+    /**
+     * Returns the file of the segment having the given index.
+     */
+    File segmentFile(int index) {
+        StringBuilder name = new StringBuilder(file.getName()).append('.');
+        String digits = String.valueOf(index);
+        for (int i = digits.length(); i < 6; i++) {
+            name.append('0');
+        }
+        name.append(digits).append(SEGMENT_EXTENSION);
+        return new File(file.getParentFile(), name.toString());
+    }
+
+    /**
+     * Returns the existing segments of the given log, from the oldest to the most recent.
+     */
+    static File[] listSegments(File file) {
+        File directory = file.getAbsoluteFile().getParentFile();
+        File[] files = directory == null ? null : directory.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        List<File> segments = new ArrayList<File>();
+        for (int i = 0; i < files.length; i++) {
+            if (getIndex(file, files[i]) > 0) {
+                segments.add(files[i]);
+            }
+        }
+        File[] sorted = segments.toArray(new File[segments.size()]);
+        // Insertion sort on the index: there are only a few segments
+        for (int i = 1; i < sorted.length; i++) {
+            File segment = sorted[i];
+            int index = getIndex(file, segment);
+            int j = i - 1;
+            while (j >= 0 && getIndex(file, sorted[j]) > index) {
+                sorted[j + 1] = sorted[j];
+                j--;
+            }
+            sorted[j + 1] = segment;
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns the index of the given segment of the log, or -1 if the file is not a segment of this log. The name of a segment may be followed by
+     * another extension, such as the extension of a compressed segment.
+     */
+    static int getIndex(File file, File segment) {
+        String name = segment.getName();
+        String prefix = file.getName() + '.';
+        if (!name.startsWith(prefix)) {
+            return -1;
+        }
+        int end = name.indexOf(SEGMENT_EXTENSION, prefix.length());
+        if (end <= prefix.length()) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(prefix.length(), end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // -------------------------------------------------------- LogSink
+
+    public synchronized void write(int level, String tag, CharSequence event) {
+        if (current == null && (closed || !resume())) {
+            ignored++;
+            return;
+        }
+        int length = event.length();
+        int maxBytes = length * MAX_BYTES_PER_CHAR + LINE_SEPARATOR.length;
+        if (maxBytes > current.buffer.remaining() && maxBytes <= segmentSize && !nextSegment()) {
+            return;
+        }
+
+        MappedByteBuffer buffer = current.buffer;
+        for (int i = 0; i < length; i++) {
+            if (buffer.remaining() < 4) {
+                // The event is longer than a segment
+                if (!nextSegment()) {
+                    return;
+                }
+                buffer = current.buffer;
+            }
+            char c = event.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(event.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, event.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                // Unpaired surrogate
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        if (buffer.remaining() < LINE_SEPARATOR.length && !nextSegment()) {
+            return;
+        }
+        current.buffer.put(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes the content of the current segment to the disk.
+     */
+    public synchronized void flush() {
+        if (current != null) {
+            current.buffer.force();
+        }
+    }
+
+    /**
+     * Writes the current segment to the disk, truncates it to its written length and stops the roller thread. The events written afterwards are
+     * ignored.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            synchronized (rollLock) {
+                if (current != null) {
+                    retired.add(current);
+                }
+                running = false;
+                rollLock.notifyAll();
+            }
+            current = null;
+        }
+        try {
+            roller.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (archiver != null) {
+            archiver.stop();
+        }
+    }
+
+    /**
+     * Takes the segment created by the roller thread after a failure, if any, without waiting for it.
+     *
+     * @return <code>false</code> if no segment has been created yet
+     */
+    private boolean resume() {
+        synchronized (rollLock) {
+            current = prepared;
+            prepared = null;
+            rollLock.notifyAll();
+        }
+        if (current != null && ignored > 0) {
+            System.err.println("MappedFileSink: writing again to " + current.file + ", " + ignored + " log events have been ignored");
+            ignored = 0;
+        }
+        return current != null;
+    }
+
+    /**
+     * Replaces the current segment with the segment prepared by the roller thread, and hands the current segment over to it.
+     *
+     * @return <code>false</code> if no segment could be created: the events are then ignored until {@link #resume()} succeeds
+     */
+    private boolean nextSegment() {
+        Segment next;
+        synchronized (rollLock) {
+            retired.add(current);
+            rollLock.notifyAll();
+            boolean interrupted = false;
+            while (prepared == null && failure == null && running) {
+                // The roller thread is still mapping the next segment
+                try {
+                    rollLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            next = prepared;
+            prepared = null;
+            rollLock.notifyAll();
+        }
+        current = next;
+        if (next == null) {
+            ignored++;
+        }
+        return next != null;
+    }
+
+    // -------------------------------------------------------- Roller
+
+    /**
+     * The loop of the roller thread: maps the next segment in advance, then releases the full segments. The next segment is mapped first, so that
+     * a writer filling its segment quickly doesn't wait for the full segments to be written to the disk.
+     */
+    private void roll() {
+        for (;;) {
+            List<Segment> toRelease;
+            int index = -1;
+            synchronized (rollLock) {
+                while (running && retired.isEmpty() && prepared == null && failure != null) {
+                    // Wait for the next attempt to create a segment
+                    long delay = retryTime - System.currentTimeMillis();
+                    if (delay <= 0) {
+                        break;
+                    }
+                    try {
+                        rollLock.wait(delay);
+                    } catch (InterruptedException e) {
+                        ; // Ignore: stopped by close()
+                    }
+                }
+                while (running && retired.isEmpty() && prepared != null) {
+                    try {
+                        rollLock.wait();
+                    } catch (InterruptedException e) {
+                        ; // Ignore: stopped by close()
+                    }
+                }
+                toRelease = new ArrayList<Segment>(retired);
+                retired.clear();
+                if (running && prepared == null && (failure == null || System.currentTimeMillis() >= retryTime)) {
+                    index = nextIndex;
+                }
+            }
+
+            if (index > 0) {
+                prepare(index);
+            }
+
+            for (Segment segment : toRelease) {
+                release(segment);
+            }
+
+            if (!running) {
+                synchronized (rollLock) {
+                    if (!retired.isEmpty()) {
+                        continue;
+                    }
+                    if (prepared != null) {
+                        // Never written: remove it
+                        prepared.discard();
+                        prepared = null;
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Creates the segment having the given index and hands it over to the writers. After a failure, the next attempt is delayed.
+     */
+    private void prepare(int index) {
+        Segment segment = null;
+        IOException error = null;
+        try {
+            segment = Segment.open(segmentFile(index), segmentSize);
+        } catch (IOException e) {
+            error = e;
+        }
+        synchronized (rollLock) {
+            if (segment != null) {
+                nextIndex++;
+                retryDelay = 0;
+            } else {
+                if (failure == null) {
+                    System.err.println("MappedFileSink: unable to create a new segment of " + file
+                            + ", the log events are ignored until it can be created - " + error);
+                }
+                retryDelay = Math.min(Math.max(retryDelay * 2, MIN_RETRY_DELAY), MAX_RETRY_DELAY);
+                retryTime = System.currentTimeMillis() + retryDelay;
+            }
+            prepared = segment;
+            failure = error;
+            rollLock.notifyAll();
+        }
+    }
+
+    /**
+     * Called by the roller thread once a full segment has been written to the disk and released. Hands the segment over to the archiver, if any.
+     *
+     * @param segment
+     *            the file of the segment
+     */
+    protected void segmentReleased(File segment) {
+        if (archiver != null) {
+            archiver.submit(segment);
+        }
+    }
+
+    private void release(Segment segment) {
+        try {
+            segment.close();
+        } catch (IOException e) {
+            System.err.println("MappedFileSink: unable to close " + segment.file + " - " + e);
+        }
+        try {
+            segmentReleased(segment.file);
+        } catch (Throwable t) {
+            System.err.println("MappedFileSink: unable to process " + segment.file + " - " + t);
+        }
+    }
+
+    // -------------------------------------------------------- Segment
+
+    /**
+     * A preallocated file, mapped in memory.
+     */
+    private static final class Segment {
+
+        /**
+         * Unmaps a buffer: <code>Unsafe.invokeCleaner</code> on Java 9 and later, or <code>NioUtils.freeDirectBuffer</code> on Android.
+         * <code>null</code> on Java 8 and earlier, where the cleaner of the buffer is called instead.
+         */
+        private static final Method unmapper;
+
+        /** The instance on which {@link #unmapper} is invoked, <code>null</code> for a static method */
+        private static final Object unmapperTarget;
+
+        static {
+            Method method = null;
+            Object target = null;
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                target = theUnsafe.get(null);
+                method = invokeCleaner;
+            } catch (Throwable t) {
+                try {
+                    method = Class.forName("java.nio.NioUtils").getMethod("freeDirectBuffer", ByteBuffer.class);
+                    target = null;
+                } catch (Throwable t2) {
+                    method = null; // Try the cleaner of the buffer when unmapping it
+                }
+            }
+            unmapper = method;
+            unmapperTarget = target;
+        }
+
+        final File file;
+
+        final RandomAccessFile raf;
+
+        final MappedByteBuffer buffer;
+
+        private Segment(File file, RandomAccessFile raf, MappedByteBuffer buffer) {
+            this.file = file;
+            this.raf = raf;
+            this.buffer = buffer;
+        }
+
+        static Segment open(File file, int size) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(size);
+                MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+                return new Segment(file, raf, buffer);
+            } catch (IOException e) {
+                raf.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Writes the segment to the disk, unmaps it and truncates the file to its written length. The buffer must not be used afterwards.
+         */
+        void close() throws IOException {
+            try {
+                buffer.force();
+                int length = buffer.position();
+                unmap(buffer);
+                raf.setLength(length);
+            } finally {
+                raf.close();
+            }
+        }
+
+        /**
+         * Unmaps and deletes this segment.
+         */
+        void discard() {
+            unmap(buffer);
+            try {
+                raf.close();
+            } catch (IOException e) {
+                ; // Ignore
+            }
+            file.delete();
+        }
+
+        /**
+         * Releases the mapping of the buffer now, instead of when the buffer is garbage collected. Does nothing if the platform offers no way to
+         * do it.
+         */
+        private static void unmap(MappedByteBuffer buffer) {
+            try {
+                if (unmapper != null) {
+                    unmapper.invoke(unmapperTarget, buffer);
+                } else {
+                    // Java 8 and earlier
+                    Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                    cleanerMethod.setAccessible(true);
+                    Object cleaner = cleanerMethod.invoke(buffer);
+                    if (cleaner != null) {
+                        cleaner.getClass().getMethod("clean").invoke(cleaner);
+                    }
+                }
+            } catch (Throwable t) {
+                ; // Left to the garbage collector
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.apache.commons.logging.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.LogSink;
+
+/**
+ * <p>
+ * Keeps the last events in memory, to check the logs from a test or to display them from the application itself.
+ * </p>
+ * <p>
+ * The events are kept in a ring of fixed capacity: once it is full, a new event replaces the oldest one.
+ * </p>
+ * 
+ * @author Nicolas Dos Santos
+ */
+public class MemorySink implements LogSink {
+
+    /** The default number of kept events */
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    private final String[] events;
+
+    private final int[] levels;
+
+    /** The total number of events written, guarded by this sink */
+    private long count = 0;
+
+    /**
+     * Creates a sink keeping the last {@link #DEFAULT_CAPACITY} events.
+     */
+    public MemorySink() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity
+     *            the number of kept events
+     */
+    public MemorySink(int capacity) {
+        this.events = new String[Math.max(1, capacity)];
+        this.levels = new int[events.length];
+    }
+
+    public void write(int level, String tag, CharSequence event) {
+        String text = event.toString();
+        synchronized (this) {
+            int index = (int) (count % events.length);
+            events[index] = text;
+            levels[index] = level;
+            count++;
+        }
+    }
+
+    /**
+     * Returns the kept events, from the oldest to the most recent.
+     */
+    public synchronized List<String> getEvents() {
+        return getEvents(SimpleAndroidLog.LOG_LEVEL_ALL);
+    }
+
+    /**
+     * Returns the kept events having at least the given level, from the oldest to the most recent.
+     * 
+     * @param level
+     *            One of the <code>SimpleAndroidLog.LOG_LEVEL_XXX</code> constants defining the log level
+     */
+    public synchronized List<String> getEvents(int level) {
+        int size = (int) Math.min(count, events.length);
+        List<String> list = new ArrayList<String>(size);
+        for (long i = count - size; i < count; i++) {
+            int index = (int) (i % events.length);
+            if (levels[index] >= level) {
+                list.add(events[index]);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns the number of events written since the creation of this sink, or since the last call to {@link #clear()}.
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Removes the kept events.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < events.length; i++) {
+            events[i] = null;
+        }
+        count = 0;
+    }
+
+    public void flush() {
+        // Nothing to flush
+    }
+
+    public void close() {
+        // Nothing to release
+    }
+}
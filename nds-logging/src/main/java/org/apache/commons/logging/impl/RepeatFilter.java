@@ -0,0 +1,243 @@
+package org.apache.commons.logging.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>
+ * Suppresses the messages a logger repeats within a time window, and counts them to summarize them once the window is closed.
+ * </p>
+ * <p>
+ * The messages are checked once rendered, with their level and exception: the filter remembers the most recent distinct messages of its logger in
+ * a small table of slots indexed by the hash of the message, a new message replacing the message of its slot. When a remembered message is logged
+ * again within the window opened by its first occurrence, it is suppressed and counted. Once the window is closed, the count is turned into a
+ * summary, to be logged as "Last message repeated N times", and a new window is opened. The same happens to a counted message replaced by a new one.
+ * </p>
+ * <p>
+ * The filter takes no lock, so that the threads repeating the same message during a storm don't wait for each other: a slot is replaced with a CAS,
+ * and a repeat is counted with a CAS on the count of its message, which fails once the message has been replaced and its count summarized.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+final class RepeatFilter {
+
+    /** The default number of distinct messages remembered by a filter */
+    static final int DEFAULT_SIZE = 16;
+
+    /** The remembered messages, indexed by their hash */
+    private final AtomicReferenceArray<Entry> slots;
+
+    private final int mask;
+
+    /** The summaries not yet logged */
+    private final ConcurrentLinkedQueue<Summary> summaries = new ConcurrentLinkedQueue<Summary>();
+
+    /** Has this filter been handed over to the timer closing the windows? */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * @param size
+     *            the number of distinct messages remembered, rounded up to the next power of two
+     */
+    RepeatFilter(int size) {
+        int length = 1;
+        while (length < size) {
+            length <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<Entry>(length);
+        this.mask = length - 1;
+    }
+
+    /**
+     * Checks a message against the messages seen within the window.
+     *
+     * @param now
+     *            the current time, in milliseconds
+     * @param window
+     *            the length of the window, in milliseconds
+     * @return <code>true</code> if the message must be logged, <code>false</code> if it repeats a message of the current window
+     */
+    boolean accept(int level, String text, Throwable t, long now, long window) {
+        String exception = t == null ? null : t.toString();
+        int hash = hash(level, text, exception);
+        int index = (hash ^ (hash >>> 16)) & mask;
+        for (;;) {
+            Entry entry = slots.get(index);
+            if (entry != null && entry.matches(hash, level, text, exception)) {
+                if (now - entry.windowStart < window) {
+                    if (entry.countRepeat()) {
+                        return false;
+                    }
+                    // Closed meanwhile: check the new entry
+                    continue;
+                }
+                if (replace(index, entry, new Entry(hash, level, text, exception, now))) {
+                    return true;
+                }
+            } else if (replace(index, entry, new Entry(hash, level, text, exception, now))) {
+                // A new message, replacing the message of its slot
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Replaces the entry of a slot, and summarizes the repeats counted by the replaced entry.
+     *
+     * @return <code>false</code> if the slot has been replaced by another thread
+     */
+    private boolean replace(int index, Entry entry, Entry newEntry) {
+        if (!slots.compareAndSet(index, entry, newEntry)) {
+            return false;
+        }
+        if (entry != null) {
+            int repeats = entry.close();
+            if (repeats > 0) {
+                summaries.add(new Summary(entry.level, "Last message repeated " + repeats + " times: " + entry.text));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Closes the windows that have ended, turning their counts into summaries.
+     *
+     * @return <code>true</code> if some messages are still counted, in windows not yet closed, and the filter must stay handed over to the timer
+     */
+    boolean closeWindows(long now, long window) {
+        // Cleared first: a repeat counted after the scan below hands the filter over again
+        scheduled.set(false);
+        boolean counting = false;
+        for (int i = 0; i < slots.length(); i++) {
+            Entry entry = slots.get(i);
+            if (entry != null && entry.getRepeats() > 0) {
+                if (now - entry.windowStart >= window) {
+                    replace(i, entry, new Entry(entry.hash, entry.level, entry.text, entry.exception, now));
+                } else {
+                    counting = true;
+                }
+            }
+        }
+        return counting && scheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * Marks this filter as handed over to the timer, once a repeat has been counted, if it is not already.
+     *
+     * @return <code>true</code> if the filter must be handed over to the timer
+     */
+    boolean schedule() {
+        return !scheduled.get() && scheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * Returns the summaries to log and forgets them, or <code>null</code> if there are none.
+     */
+    List<Summary> drainSummaries() {
+        if (summaries.isEmpty()) {
+            return null;
+        }
+        List<Summary> drained = new ArrayList<Summary>(2);
+        Summary summary;
+        while ((summary = summaries.poll()) != null) {
+            drained.add(summary);
+        }
+        return drained;
+    }
+
+    private static int hash(int level, String text, String exception) {
+        int hash = level;
+        hash = hash * 31 + (text == null ? 0 : text.hashCode());
+        hash = hash * 31 + (exception == null ? 0 : exception.hashCode());
+        return hash;
+    }
+
+    // -------------------------------------------------------- Entry
+
+    /**
+     * A remembered message, and the number of times it has been repeated in its window.
+     */
+    private static final class Entry {
+
+        final int hash;
+
+        final int level;
+
+        final String text;
+
+        final String exception;
+
+        final long windowStart;
+
+        /** The number of repeats in the window, -1 once the entry has been replaced */
+        private final AtomicInteger repeats = new AtomicInteger();
+
+        Entry(int hash, int level, String text, String exception, long windowStart) {
+            this.hash = hash;
+            this.level = level;
+            this.text = text;
+            this.exception = exception;
+            this.windowStart = windowStart;
+        }
+
+        boolean matches(int otherHash, int otherLevel, String otherText, String otherException) {
+            return hash == otherHash && level == otherLevel && equals(text, otherText) && equals(exception, otherException);
+        }
+
+        private static boolean equals(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        /**
+         * Counts a repeat.
+         *
+         * @return <code>false</code> if the entry has been replaced
+         */
+        boolean countRepeat() {
+            for (;;) {
+                int count = repeats.get();
+                if (count < 0) {
+                    return false;
+                }
+                if (repeats.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        int getRepeats() {
+            return repeats.get();
+        }
+
+        /**
+         * Stops counting the repeats, once the entry has been replaced.
+         *
+         * @return the number of repeats counted
+         */
+        int close() {
+            return repeats.getAndSet(-1);
+        }
+    }
+
+    // -------------------------------------------------------- Summary
+
+    /**
+     * The message logged for the repeats of a message.
+     */
+    static final class Summary {
+
+        final int level;
+
+        final String text;
+
+        Summary(int level, String text) {
+            this.level = level;
+            this.text = text;
+        }
+    }
+}
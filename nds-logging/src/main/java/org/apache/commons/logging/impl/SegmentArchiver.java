@@ -0,0 +1,231 @@
+package org.apache.commons.logging.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>
+ * Compresses the segments released by a {@link MappedFileSink} and deletes the oldest ones, in a background thread of the lowest priority.
+ * </p>
+ * <p>
+ * Each released segment is compressed with GZIP to <code>&lt;segment&gt;.gz</code>, which keeps the modification time of the segment, and the
+ * segment is then deleted. The released segments, compressed or not, are then deleted from the oldest while their total size is over the size budget,
+ * and when they are older than the age budget. The segment being written by the sink is not counted. When it starts, the archiver also processes the
+ * segments left by the previous runs of the application, such as the last segment of the previous run.
+ * </p>
+ * <p>
+ * The budgets are applied each time a segment is released and, with an age budget, at least every minute (or every age budget if it is shorter), so
+ * the old segments are deleted even when the sink no longer rolls.
+ * </p>
+ * <p>
+ * The sink only queues the released segments, so the writing threads never wait for the archiver.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+public class SegmentArchiver {
+
+    /** The extension added to the compressed segments */
+    public static final String COMPRESSED_EXTENSION = ".gz";
+
+    /** The extension of a segment being compressed */
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The maximum interval between two checks of the age budget, in milliseconds */
+    private static final long MAX_AGE_CHECK_INTERVAL = 60 * 1000;
+
+    private final boolean compress;
+
+    private final long maxTotalSize;
+
+    private final long maxAge;
+
+    /** The path of the log files, without the segment index and extension */
+    private File file;
+
+    /** The highest index of the segments released by the sink, only accessed by the archiver thread */
+    private int releasedIndex;
+
+    private final BlockingQueue<File> queue = new LinkedBlockingQueue<File>();
+
+    private volatile boolean running = true;
+
+    private Thread thread;
+
+    /**
+     * @param compress
+     *            if <code>true</code>, the released segments are compressed
+     * @param maxTotalSize
+     *            the maximum total size of the released segments in bytes, 0 for no limit
+     * @param maxAge
+     *            the maximum age of the released segments in milliseconds, 0 for no limit
+     */
+    public SegmentArchiver(boolean compress, long maxTotalSize, long maxAge) {
+        this.compress = compress;
+        this.maxTotalSize = Math.max(0, maxTotalSize);
+        this.maxAge = Math.max(0, maxAge);
+    }
+
+    /**
+     * Starts the archiver thread, called by the sink once it has created its first segment.
+     *
+     * @param logFile
+     *            the path of the log files, without the segment index and extension
+     * @param lastIndex
+     *            the index of the last segment written by the previous runs, 0 if none
+     */
+    synchronized void start(File logFile, int lastIndex) {
+        if (thread != null) {
+            throw new IllegalStateException("The archiver is already used by another sink");
+        }
+        this.file = logFile;
+        this.releasedIndex = lastIndex;
+        thread = new Thread("SegmentArchiver") {
+            @Override
+            public void run() {
+                archive();
+            }
+        };
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Queues a segment released by the sink, without waiting.
+     */
+    void submit(File segment) {
+        queue.offer(segment);
+    }
+
+    /**
+     * Stops the archiver thread once the queued segments have been processed. The segments released afterwards are processed when the next archiver
+     * starts.
+     */
+    synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    // -------------------------------------------------------- Archiver thread
+
+    private void archive() {
+        // The segments of the previous runs
+        File[] segments = MappedFileSink.listSegments(file);
+        for (int i = 0; i < segments.length; i++) {
+            File segment = segments[i];
+            if (segment.getName().endsWith(TEMPORARY_EXTENSION)) {
+                // Interrupted compression
+                segment.delete();
+            } else if (MappedFileSink.getIndex(file, segment) <= releasedIndex) {
+                process(segment);
+            }
+        }
+        applyBudgets();
+
+        long ageCheckInterval = Math.min(maxAge, MAX_AGE_CHECK_INTERVAL);
+        while (running || !queue.isEmpty()) {
+            File segment;
+            try {
+                segment = ageCheckInterval > 0 ? queue.poll(ageCheckInterval, TimeUnit.MILLISECONDS) : queue.take();
+            } catch (InterruptedException e) {
+                segment = queue.poll();
+                if (segment == null) {
+                    continue;
+                }
+            }
+            if (segment == null) {
+                // No segment released for a while: some may have expired meanwhile
+                applyBudgets();
+                continue;
+            }
+            releasedIndex = Math.max(releasedIndex, MappedFileSink.getIndex(file, segment));
+            process(segment);
+            applyBudgets();
+        }
+    }
+
+    private void process(File segment) {
+        if (!compress || !segment.getName().endsWith(MappedFileSink.SEGMENT_EXTENSION) || !segment.isFile()) {
+            return;
+        }
+        File compressed = new File(segment.getPath() + COMPRESSED_EXTENSION);
+        File temporary = new File(compressed.getPath() + TEMPORARY_EXTENSION);
+        try {
+            gzip(segment, temporary);
+            temporary.setLastModified(segment.lastModified());
+            if (!temporary.renameTo(compressed)) {
+                throw new IOException("Unable to rename " + temporary + " to " + compressed);
+            }
+            segment.delete();
+        } catch (IOException e) {
+            temporary.delete();
+            System.err.println("SegmentArchiver: unable to compress " + segment + " - " + e);
+        }
+    }
+
+    private static void gzip(File source, File destination) throws IOException {
+        InputStream in = new FileInputStream(source);
+        try {
+            OutputStream out = new GZIPOutputStream(new FileOutputStream(destination), BUFFER_SIZE);
+            try {
+                byte[] buf = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = in.read(buf)) >= 0) {
+                    out.write(buf, 0, n);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Deletes the oldest released segments while they exceed the size budget, and the released segments older than the age budget.
+     */
+    private void applyBudgets() {
+        if (maxTotalSize == 0 && maxAge == 0) {
+            return;
+        }
+        File[] segments = MappedFileSink.listSegments(file);
+        long totalSize = 0;
+        for (int i = 0; i < segments.length; i++) {
+            if (isReleased(segments[i])) {
+                totalSize += segments[i].length();
+            }
+        }
+        long oldest = System.currentTimeMillis() - maxAge;
+        for (int i = 0; i < segments.length; i++) {
+            File segment = segments[i];
+            if (!isReleased(segment)) {
+                continue;
+            }
+            boolean tooLarge = maxTotalSize > 0 && totalSize > maxTotalSize;
+            boolean tooOld = maxAge > 0 && segment.lastModified() < oldest;
+            if (tooLarge || tooOld) {
+                long length = segment.length();
+                if (segment.delete()) {
+                    totalSize -= length;
+                }
+            }
+        }
+    }
+
+    private boolean isReleased(File segment) {
+        return !segment.getName().endsWith(TEMPORARY_EXTENSION) && MappedFileSink.getIndex(file, segment) <= releasedIndex;
+    }
+}
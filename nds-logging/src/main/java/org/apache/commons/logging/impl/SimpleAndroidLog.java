@@ -17,6 +17,7 @@
 
 package org.apache.commons.logging.impl;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
@@ -25,13 +26,20 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Properties;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.commons.logging.AndroidLog;
-
-import android.util.Log;
+import org.apache.commons.logging.AndroidLogFactory;
+import org.apache.commons.logging.LogSink;
+import org.apache.commons.logging.Marker;
+import org.apache.commons.logging.PrecomputedLogConfiguration;
 
 /**
  * <p>
@@ -52,11 +60,55 @@ import android.util.Log;
  * <li><code>org.apache.commons.logging.androidlog.dateTimeFormat</code> - The date and time format to be used in the output messages. The pattern
  * describing the date and time format is the same that is used in <code>java.text.SimpleDateFormat</code>. If the format is not specified or is
  * invalid, the default format is used. The default format is <code>yyyy/MM/dd HH:mm:ss:SSS zzz</code>.</li>
+ * <li><code>org.apache.commons.logging.androidlog.reloadInterval</code> - The interval in milliseconds between two checks of
+ * <code>androidlog.properties</code>: when the file has been modified, the configuration is reloaded and applied to all the existing loggers. The file
+ * can only be watched when it is found on the file system. Defaults to 0, which disables the reload.</li>
+ * <li><code>org.apache.commons.logging.androidlog.mdcKeys</code> - The comma-separated keys of the {@link DiagnosticContext} included in the
+ * output messages, after the name of the log instance: <code>[requestId=42 user=bob]</code>. Set to <code>*</code> to include all the keys.
+ * Defaults to none.</li>
+ * <li><code>org.apache.commons.logging.androidlog.disabledMarkers</code> - The comma-separated names of the {@link Marker}s whose events are not
+ * logged, whatever their level. Can be overridden for a logger with {@link #setMarkerEnabled(Marker, boolean)}. Defaults to none.</li>
+ * <li><code>org.apache.commons.logging.androidlog.filter.N</code> - A rule dropping or keeping the enabled events logged through
+ * <code>org.nds.logging.Logger</code>, such as <code>deny logger=com.example.net; level&lt;=debug</code>. The rules are evaluated in the order of
+ * their number N, and the first one matching an event decides; see <code>LogFilter</code> for their conditions. Defaults to none.</li>
+ * <li><code>org.apache.commons.logging.androidlog.stackTraceDepth</code> - The maximum number of frames written for each exception of a stack trace.
+ * Defaults to 0, which writes all the frames.</li>
+ * <li><code>org.apache.commons.logging.androidlog.stackTraceCacheSize</code> - The number of stack traces whose text is kept to be reused when the same
+ * failure is logged again. Defaults to 64, 0 disables the cache.</li>
+ * <li><code>org.apache.commons.logging.androidlog.sink</code> - The destination of the log messages: "logcat" (the Android logging system),
+ * "console" (the standard error stream), "memory" (the last messages kept in memory), "file" (memory-mapped rolling files), "durable" (a file
+ * forced to the disk before the most severe messages return), or the class name of a {@link LogSink} implementation. Defaults to "logcat".</li>
+ * <li><code>org.apache.commons.logging.androidlog.file</code> - With the "file" sink, the path of the log files, to which the index and extension of
+ * each segment are added: <code>androidlog.000001.log</code>, <code>androidlog.000002.log</code>, ... Defaults to "androidlog".</li>
+ * <li><code>org.apache.commons.logging.androidlog.fileSegmentSize</code> - With the "file" sink, the size of a log file in bytes. Defaults to 16 MB.</li>
+ * <li><code>org.apache.commons.logging.androidlog.fileCompress</code> - With the "file" sink, if the full log files are compressed with GZIP in the
+ * background. Defaults to false.</li>
+ * <li><code>org.apache.commons.logging.androidlog.fileMaxTotalSize</code> - With the "file" sink, the maximum total size in bytes of the full log
+ * files: the oldest ones are deleted in the background. Defaults to 0, which keeps them all.</li>
+ * <li><code>org.apache.commons.logging.androidlog.fileMaxAge</code> - With the "file" sink, the maximum age in hours of the full log files: the older
+ * ones are deleted in the background. Defaults to 0, which keeps them all.</li>
+ * <li><code>org.apache.commons.logging.androidlog.repeatWindow</code> - The time in milliseconds during which a logger suppresses the repeats of a
+ * message, then logs "Last message repeated N times" instead. The repeats are detected on the messages once formatted. Defaults to 0, which logs all
+ * the repeats.</li>
+ * <li><code>org.apache.commons.logging.androidlog.repeatCacheSize</code> - The number of distinct recent messages each logger remembers to detect
+ * their repeats. Defaults to 16.</li>
+ * <li><code>org.apache.commons.logging.androidlog.durableLevel</code> - With the "durable" sink, which writes to the <code>file</code> path followed
+ * by <code>.log</code>, the lowest level of the messages whose logging waits for them to be on the disk. Defaults to "error". The logging doesn't
+ * wait when the messages are written on a background thread by the asynchronous mode of <code>org.nds.logging.LoggerFactory</code>.</li>
+ * <li><code>org.apache.commons.logging.androidlog.durableCommitLatency</code> - With the "durable" sink, the maximum time in milliseconds a message
+ * waits for other messages to be forced to the disk together. Defaults to 2, 0 forces them as soon as the previous commit is done.</li>
  * </ul>
  * 
  * <p>
  * In addition to looking for system properties with the names specified above, this implementation also checks for a class loader resource named
- * <code>"androidlog.properties"</code>, and includes any matching definitions from this resource (if it exists).
+ * <code>"androidlog.properties"</code>, and includes any matching definitions from this resource (if it exists). When the configuration has been
+ * generated at build time, the definitions of the resource come from the {@link PrecomputedLogConfiguration} instead, and the resource is neither
+ * searched nor watched.
+ * </p>
+ * <p>
+ * The levels configured for the loggers and their packages are loaded once into a prefix tree, and can be changed while the application is running
+ * with {@link #setLoggerLevel(String, int)}: the new level applies to all the existing loggers of the package, unless their level has been set with
+ * {@link #setLevel(int)}.
  * </p>
  * 
  * @author Nicolas Dos Santos
@@ -91,15 +143,59 @@ public class SimpleAndroidLog implements AndroidLog, Serializable {
     static protected boolean showLevel = false;
     /** Include the short tag ( last component ) of the logger in the android log cat. Defaults to false */
     static protected boolean showShortTag = false;
+    /** The keys of the diagnostic context included in the log message, <code>null</code> for all of them */
+    private static volatile String[] mdcKeys = new String[0];
+    /** The bitmask of the markers disabled for all the loggers */
+    private static volatile long disabledMarkers = 0;
+    /** The compiled <code>filter.N</code> rules, or <code>null</code> if there is none */
+    private static volatile LogFilter filter = null;
 
     /**
      * Used to format times.
      * <p>
      * Any code that accesses this object should first obtain a lock on it, ie use synchronized(dateFormatter); this requirement was introduced in
      * 1.1.1 to fix an existing thread safety bug (SimpleDateFormat.format is not thread-safe).
+     * <p>
+     * The log messages are formatted by {@link #timestampFormat} instead, which has the same pattern and needs no lock.
      */
     static protected DateFormat dateFormatter = null;
 
+    /** Formats the times of the log messages, without lock */
+    private static CachedDateFormat timestampFormat = null;
+
+    /** Renders the stack traces of the exceptions */
+    private static StackTraceRenderer stackTraceRenderer = null;
+
+    /** The destination of the log messages */
+    private static volatile LogSink sink = null;
+
+    /** The value of the <code>sink</code> property from which {@link #sink} has been created */
+    private static String sinkName = null;
+
+    /**
+     * The levels configured for the loggers and their packages, replaced as a whole when a level is changed. As it is written after the other class
+     * attributes when the configuration is reloaded, the loggers see the new attributes once they have read it.
+     */
+    private static volatile LogLevelTrie levels;
+
+    /** The location of androidlog.properties, if found */
+    private static URL configurationUrl = null;
+
+    /** Watches androidlog.properties to reload it, if enabled */
+    private static ConfigurationWatcher configurationWatcher = null;
+
+    /** The time during which the repeats of a message are suppressed, in milliseconds, 0 to log them all */
+    private static volatile long repeatWindow = 0;
+
+    /** The number of distinct messages each logger remembers to detect the repeats */
+    private static int repeatCacheSize = RepeatFilter.DEFAULT_SIZE;
+
+    /** Closes the windows of the repeated messages, created when a repeat is first suppressed */
+    private static Timer repeatTimer = null;
+
+    /** The loggers counting suppressed repeats, whose windows are closed by {@link #repeatTimer} */
+    private static final ConcurrentLinkedQueue<SimpleAndroidLog> repeatingLogs = new ConcurrentLinkedQueue<SimpleAndroidLog>();
+
     // ---------------------------------------------------- Log Level Constants
 
     /** "Trace" level logging. */
@@ -143,26 +239,163 @@ public class SimpleAndroidLog implements AndroidLog, Serializable {
         return (prop == null) ? dephault : "true".equalsIgnoreCase(prop);
     }
 
+    private static int getIntProperty(String name, int dephault) {
+        String prop = getStringProperty(name);
+        if (prop != null) {
+            try {
+                return Integer.parseInt(prop.trim());
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid value for " + name + ": " + prop);
+            }
+        }
+        return dephault;
+    }
+
+    private static long getLongProperty(String name, long dephault) {
+        String prop = getStringProperty(name);
+        if (prop != null) {
+            try {
+                return Long.parseLong(prop.trim());
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid value for " + name + ": " + prop);
+            }
+        }
+        return dephault;
+    }
+
+    /**
+     * Builds the tree of the levels configured in the given properties, overridden by the system properties.
+     */
+    static LogLevelTrie loadLevels(Properties props, LogLevelTrie replaced) {
+        String defaultLog = null;
+        try {
+            defaultLog = System.getProperty(systemPrefix + "defaultlog");
+        } catch (SecurityException e) {
+            ; // Ignore
+        }
+        if (defaultLog == null) {
+            defaultLog = props.getProperty(systemPrefix + "defaultlog");
+        }
+        LogLevelTrie trie = replaced == null ? new LogLevelTrie(toLevel(defaultLog)) : new LogLevelTrie(toLevel(defaultLog), replaced);
+
+        trie = addLevels(trie, props);
+        try {
+            trie = addLevels(trie, System.getProperties());
+        } catch (SecurityException e) {
+            ; // Ignore
+        }
+        return trie;
+    }
+
+    private static LogLevelTrie addLevels(LogLevelTrie trie, Properties props) {
+        String logPrefix = systemPrefix + "log.";
+        Enumeration<?> names = props.propertyNames();
+        while (names.hasMoreElements()) {
+            String name = String.valueOf(names.nextElement());
+            if (name.startsWith(logPrefix)) {
+                trie = trie.with(name.substring(logPrefix.length()), toLevel(props.getProperty(name)));
+            }
+        }
+        return trie;
+    }
+
+    /**
+     * Converts the name of a level ("all", "trace", "debug", "info", "warn", "error", "fatal" or "off") to one of the LOG_LEVEL_XXX constants.
+     * Defaults to {@link #LOG_LEVEL_INFO}.
+     */
+    private static int toLevel(String lvl) {
+        if ("all".equalsIgnoreCase(lvl)) {
+            return SimpleAndroidLog.LOG_LEVEL_ALL;
+        } else if ("trace".equalsIgnoreCase(lvl)) {
+            return SimpleAndroidLog.LOG_LEVEL_TRACE;
+        } else if ("debug".equalsIgnoreCase(lvl)) {
+            return SimpleAndroidLog.LOG_LEVEL_DEBUG;
+        } else if ("warn".equalsIgnoreCase(lvl)) {
+            return SimpleAndroidLog.LOG_LEVEL_WARN;
+        } else if ("error".equalsIgnoreCase(lvl)) {
+            return SimpleAndroidLog.LOG_LEVEL_ERROR;
+        } else if ("fatal".equalsIgnoreCase(lvl)) {
+            return SimpleAndroidLog.LOG_LEVEL_FATAL;
+        } else if ("off".equalsIgnoreCase(lvl)) {
+            return SimpleAndroidLog.LOG_LEVEL_OFF;
+        }
+        // Used to be: set default log level to ERROR
+        // IMHO it should be lower, but at least info ( costin ).
+        return SimpleAndroidLog.LOG_LEVEL_INFO;
+    }
+
+    /**
+     * Sets the level of a logger, or of all the loggers of a package, including the loggers already created. The loggers whose level has been set
+     * with {@link #setLevel(int)} keep their level.
+     * 
+     * @param name
+     *            the logger name, or a package name
+     * @param level
+     *            One of the LOG_LEVEL_XXX constants defining the log level
+     */
+    public static synchronized void setLoggerLevel(String name, int level) {
+        levels = levels.with(String.valueOf(name), level);
+    }
+
+    /**
+     * Removes the level of a logger or of a package: the loggers then use the level of the parent package, or the default level.
+     * 
+     * @param name
+     *            the logger name, or a package name
+     */
+    public static synchronized void clearLoggerLevel(String name) {
+        levels = levels.with(String.valueOf(name), LogLevelTrie.UNSET);
+    }
+
     // Initialize class attributes.
     // Load properties file, if found.
     // Override with system properties.
     static {
-        // Identify the class loader we will be using
-        ClassLoader classLoader = getClassLoader(SimpleAndroidLog.class);
-        System.out.println("classLoader: " + classLoader);
-        // Add props from the resource androidlog.properties
-        Properties props = getConfigurationFile(classLoader, "androidlog.properties");
-        if (props != null) {
-            androidLogProps.putAll(props);
+        PrecomputedLogConfiguration precomputed = AndroidLogFactory.getPrecomputedConfiguration();
+        if (precomputed != null) {
+            // The properties have been read at build time
+            androidLogProps.putAll(precomputed.getLogProperties());
+        } else {
+            // Identify the class loader we will be using
+            ClassLoader classLoader = getClassLoader(SimpleAndroidLog.class);
+            System.out.println("classLoader: " + classLoader);
+            // Add props from the resource androidlog.properties
+            Properties props = getConfigurationFile(classLoader, "androidlog.properties");
+            if (props != null) {
+                androidLogProps.putAll(props);
+            }
+            System.out.println("Android Log Properties: " + androidLogProps);
+        }
+
+        configure(null);
+
+        long reloadInterval = 0;
+        try {
+            reloadInterval = Long.parseLong(getStringProperty(systemPrefix + "reloadInterval", "0").trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + systemPrefix + "reloadInterval");
+        }
+        File configurationFile = ConfigurationWatcher.toFile(configurationUrl);
+        if (reloadInterval > 0 && configurationFile != null) {
+            configurationWatcher = new ConfigurationWatcher(configurationFile, reloadInterval, new ConfigurationWatcher.Listener() {
+                public void configurationChanged(Properties properties) {
+                    reloadConfiguration(properties);
+                }
+            });
+            configurationWatcher.start();
         }
-        System.out.println("Android Log Properties: " + androidLogProps);
+    }
 
-        showLogName = getBooleanProperty(systemPrefix + "showlogname", showLogName);
-        showShortName = getBooleanProperty(systemPrefix + "showShortLogname", showShortName);
-        showDateTime = getBooleanProperty(systemPrefix + "showdatetime", showDateTime);
+    /**
+     * Sets the class attributes from the current properties, then publishes the levels.
+     */
+    private static void configure(LogLevelTrie replaced) {
+        showLogName = getBooleanProperty(systemPrefix + "showlogname", false);
+        showShortName = getBooleanProperty(systemPrefix + "showShortLogname", true);
+        showDateTime = getBooleanProperty(systemPrefix + "showdatetime", false);
 
         if (showDateTime) {
-            dateTimeFormat = getStringProperty(systemPrefix + "dateTimeFormat", dateTimeFormat);
+            dateTimeFormat = getStringProperty(systemPrefix + "dateTimeFormat", DEFAULT_DATE_TIME_FORMAT);
             try {
                 dateFormatter = new SimpleDateFormat(dateTimeFormat);
             } catch (IllegalArgumentException e) {
@@ -170,10 +403,193 @@ public class SimpleAndroidLog implements AndroidLog, Serializable {
                 dateTimeFormat = DEFAULT_DATE_TIME_FORMAT;
                 dateFormatter = new SimpleDateFormat(dateTimeFormat);
             }
+            timestampFormat = new CachedDateFormat(dateTimeFormat);
+        }
+
+        showLevel = getBooleanProperty(systemPrefix + "showlevel", false);
+        showShortTag = getBooleanProperty(systemPrefix + "showShortTag", false);
+        mdcKeys = parseKeys(getStringProperty(systemPrefix + "mdcKeys", ""));
+        disabledMarkers = parseMarkers(getStringProperty(systemPrefix + "disabledMarkers", ""));
+        filter = loadFilter();
+
+        stackTraceRenderer = new StackTraceRenderer(getIntProperty(systemPrefix + "stackTraceDepth", 0), getIntProperty(systemPrefix
+                + "stackTraceCacheSize", StackTraceRenderer.DEFAULT_CACHE_SIZE));
+
+        repeatCacheSize = getIntProperty(systemPrefix + "repeatCacheSize", RepeatFilter.DEFAULT_SIZE);
+        repeatWindow = Math.max(0, getLongProperty(systemPrefix + "repeatWindow", 0));
+
+        String newSinkName = getStringProperty(systemPrefix + "sink", "logcat").trim();
+        if (!newSinkName.equals(sinkName)) {
+            LogSink oldSink = sink;
+            sink = createSink(newSinkName);
+            sinkName = newSinkName;
+            if (oldSink != null) {
+                oldSink.close();
+            }
+        }
+
+        // Written last: publishes the attributes above to the loggers
+        levels = loadLevels(androidLogProps, replaced);
+    }
+
+    /**
+     * Parses the comma-separated keys of the <code>mdcKeys</code> property: <code>*</code> designates all the keys.
+     */
+    private static String[] parseKeys(String property) {
+        if (property.trim().equals("*")) {
+            return null;
+        }
+        List<String> keys = new ArrayList<String>();
+        String[] tokens = property.split(",");
+        for (int i = 0; i < tokens.length; i++) {
+            String key = tokens[i].trim();
+            if (key.length() > 0) {
+                keys.add(key);
+            }
         }
+        return keys.toArray(new String[keys.size()]);
+    }
 
-        showLevel = getBooleanProperty(systemPrefix + "showlevel", showLevel);
-        showShortTag = getBooleanProperty(systemPrefix + "showShortTag", showShortTag);
+    /**
+     * Parses the comma-separated names of the <code>disabledMarkers</code> property into a bitmask, ignoring the markers which can't be created.
+     */
+    private static long parseMarkers(String property) {
+        long mask = 0;
+        String[] tokens = property.split(",");
+        for (int i = 0; i < tokens.length; i++) {
+            String name = tokens[i].trim();
+            if (name.length() > 0) {
+                try {
+                    mask |= Marker.get(name).getMask();
+                } catch (IllegalStateException e) {
+                    System.err.println("Ignoring the disabled marker " + name + " - " + e.getMessage());
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Compiles the <code>filter.N</code> rules, in the order of their numbers.
+     */
+    private static LogFilter loadFilter() {
+        TreeMap<Integer, String> names = new TreeMap<Integer, String>();
+        addFilterNames(names, androidLogProps);
+        try {
+            addFilterNames(names, System.getProperties());
+        } catch (SecurityException e) {
+            ; // Ignore
+        }
+        if (names.isEmpty()) {
+            return null;
+        }
+        List<LogFilter.Rule> rules = new ArrayList<LogFilter.Rule>();
+        for (String name : names.values()) {
+            String definition = getStringProperty(name);
+            try {
+                rules.add(LogFilter.Rule.parse(definition));
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid filter rule " + name + ": " + definition + " - " + e.getMessage());
+            } catch (IllegalStateException e) {
+                // Too many markers
+                System.err.println("Ignoring the filter rule " + name + ": " + definition + " - " + e.getMessage());
+            }
+        }
+        try {
+            return new LogFilter(rules);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unable to compile the filter rules - " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void addFilterNames(TreeMap<Integer, String> names, Properties props) {
+        String filterPrefix = systemPrefix + "filter.";
+        Enumeration<?> propertyNames = props.propertyNames();
+        while (propertyNames.hasMoreElements()) {
+            String name = String.valueOf(propertyNames.nextElement());
+            if (name.startsWith(filterPrefix)) {
+                try {
+                    names.put(Integer.valueOf(name.substring(filterPrefix.length()).trim()), name);
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid filter rule number: " + name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the sink designated by the <code>sink</code> property: "logcat", "console", "memory", "file", "durable" or a class name.
+     */
+    private static LogSink createSink(String name) {
+        if ("logcat".equalsIgnoreCase(name)) {
+            return new LogcatSink();
+        } else if ("console".equalsIgnoreCase(name)) {
+            return new ConsoleSink();
+        } else if ("memory".equalsIgnoreCase(name)) {
+            return new MemorySink();
+        }
+        try {
+            if ("file".equalsIgnoreCase(name)) {
+                File file = new File(getStringProperty(systemPrefix + "file", "androidlog"));
+                SegmentArchiver archiver = null;
+                boolean compress = getBooleanProperty(systemPrefix + "fileCompress", false);
+                long maxTotalSize = getLongProperty(systemPrefix + "fileMaxTotalSize", 0);
+                long maxAge = getLongProperty(systemPrefix + "fileMaxAge", 0) * 60 * 60 * 1000;
+                if (compress || maxTotalSize > 0 || maxAge > 0) {
+                    archiver = new SegmentArchiver(compress, maxTotalSize, maxAge);
+                }
+                return new MappedFileSink(file, getIntProperty(systemPrefix + "fileSegmentSize", MappedFileSink.DEFAULT_SEGMENT_SIZE), archiver);
+            } else if ("durable".equalsIgnoreCase(name)) {
+                File file = new File(getStringProperty(systemPrefix + "file", "androidlog") + ".log");
+                return new DurableFileSink(file, toLevel(getStringProperty(systemPrefix + "durableLevel", "error")), getIntProperty(systemPrefix
+                        + "durableCommitLatency", (int) DurableFileSink.DEFAULT_COMMIT_LATENCY_MILLIS));
+            }
+            ClassLoader classLoader = getClassLoader(SimpleAndroidLog.class);
+            Class<?> sinkClass = classLoader == null ? Class.forName(name) : Class.forName(name, true, classLoader);
+            return (LogSink) sinkClass.getDeclaredConstructor().newInstance();
+        } catch (Throwable t) {
+            System.err.println("Unable to create the log sink '" + name + "', using logcat - " + t);
+            return new LogcatSink();
+        }
+    }
+
+    /**
+     * Returns the current destination of the log messages.
+     */
+    public static LogSink getSink() {
+        return sink;
+    }
+
+    /**
+     * Replaces the destination of the log messages. The previous sink is closed.
+     * 
+     * @param newSink
+     *            the new destination of the log messages
+     */
+    public static synchronized void setSink(LogSink newSink) {
+        if (newSink == null) {
+            throw new IllegalArgumentException("The sink can't be null");
+        }
+        LogSink oldSink = sink;
+        sink = newSink;
+        sinkName = newSink.getClass().getName();
+        if (oldSink != null && oldSink != newSink) {
+            oldSink.close();
+        }
+    }
+
+    /**
+     * Replaces the current configuration with the given properties, overridden by the system properties. The levels set with
+     * {@link #setLoggerLevel(String, int)} are replaced by the levels of the new configuration, the levels set with {@link #setLevel(int)} are kept.
+     * 
+     * @param properties
+     *            the new content of androidlog.properties
+     */
+    public static synchronized void reloadConfiguration(Properties properties) {
+        androidLogProps.clear();
+        androidLogProps.putAll(properties);
+        configure(levels);
     }
 
     // ------------------------------------------------------------- Attributes
@@ -182,10 +598,22 @@ public class SimpleAndroidLog implements AndroidLog, Serializable {
     protected String logName = null;
     /** The current log level */
     protected int currentLogLevel;
+    /** Has the level been set with {@link #setLevel(int)}, instead of being resolved from the configured levels? */
+    private boolean levelPinned = false;
+    /** The version of {@link #levels} (high 24 bits) from which the current level (low 8 bits) has been resolved */
+    private transient int levelState;
     /** The short name of this android log instance */
     private String shortLogName = null;
     /** The tag of this android log instance */
     private String tag = null;
+    /** Detects the repeated messages, created on first use */
+    private transient volatile RepeatFilter repeatFilter;
+    /** The bitmask of the markers disabled for this instance, in addition to the markers disabled for all the loggers */
+    private volatile long markersDisabled = 0;
+    /** The bitmask of the markers enabled for this instance, even if they are disabled for all the loggers */
+    private volatile long markersEnabled = 0;
+    /** Does the class of this instance override the deprecated {@link #write(StringBuffer)}? */
+    private final boolean legacyWrite;
 
     // ------------------------------------------------------------ Constructor
 
@@ -197,42 +625,10 @@ public class SimpleAndroidLog implements AndroidLog, Serializable {
      */
     public SimpleAndroidLog(String name) {
         logName = tag = name;
+        legacyWrite = overridesLegacyWrite(getClass());
 
-        // Set initial log level
-        // Used to be: set default log level to ERROR
-        // IMHO it should be lower, but at least info ( costin ).
-        setLevel(SimpleAndroidLog.LOG_LEVEL_INFO);
-
-        // Set log level from properties
-        String lvl = getStringProperty(systemPrefix + "log." + logName);
-        int i = String.valueOf(name).lastIndexOf(".");
-        while (null == lvl && i > -1) {
-            name = name.substring(0, i);
-            lvl = getStringProperty(systemPrefix + "log." + name);
-            i = String.valueOf(name).lastIndexOf(".");
-        }
-
-        if (null == lvl) {
-            lvl = getStringProperty(systemPrefix + "defaultlog");
-        }
-
-        if ("all".equalsIgnoreCase(lvl)) {
-            setLevel(SimpleAndroidLog.LOG_LEVEL_ALL);
-        } else if ("trace".equalsIgnoreCase(lvl)) {
-            setLevel(SimpleAndroidLog.LOG_LEVEL_TRACE);
-        } else if ("debug".equalsIgnoreCase(lvl)) {
-            setLevel(SimpleAndroidLog.LOG_LEVEL_DEBUG);
-        } else if ("info".equalsIgnoreCase(lvl)) {
-            setLevel(SimpleAndroidLog.LOG_LEVEL_INFO);
-        } else if ("warn".equalsIgnoreCase(lvl)) {
-            setLevel(SimpleAndroidLog.LOG_LEVEL_WARN);
-        } else if ("error".equalsIgnoreCase(lvl)) {
-            setLevel(SimpleAndroidLog.LOG_LEVEL_ERROR);
-        } else if ("fatal".equalsIgnoreCase(lvl)) {
-            setLevel(SimpleAndroidLog.LOG_LEVEL_FATAL);
-        } else if ("off".equalsIgnoreCase(lvl)) {
-            setLevel(SimpleAndroidLog.LOG_LEVEL_OFF);
-        }
+        // Set log level from the configured levels
+        resolveLevel(levels);
     }
 
     // ------------------------------------------------------------ Initializer
@@ -323,6 +719,7 @@ public class SimpleAndroidLog implements AndroidLog, Serializable {
             System.err.println("[LOOKUP] Properties file of name '" + fileName + "' found at '" + propsUrl + '"');
         }
 
+        configurationUrl = propsUrl;
         return props;
     }
 
@@ -354,7 +751,7 @@ public class SimpleAndroidLog implements AndroidLog, Serializable {
 
     /**
      * <p>
-     * Set logging level.
+     * Set logging level. This level is kept when the levels are changed with {@link #setLoggerLevel(String, int)}.
      * </p>
      * 
      * @param currentLogLevel
@@ -362,7 +759,22 @@ public class SimpleAndroidLog implements AndroidLog, Serializable {
      */
     public void setLevel(int currentLogLevel) {
         this.currentLogLevel = currentLogLevel;
+        this.levelPinned = true;
+        this.levelState = toLevelState(levels.getVersion(), currentLogLevel);
+    }
 
+    /**
+     * Enables or disables a marker for this instance, overriding the <code>disabledMarkers</code> property.
+     */
+    public synchronized void setMarkerEnabled(Marker marker, boolean enabled) {
+        long mask = marker.getMask();
+        if (enabled) {
+            markersDisabled &= ~mask;
+            markersEnabled |= mask;
+        } else {
+            markersDisabled |= mask;
+            markersEnabled &= ~mask;
+        }
     }
 
     /**
@@ -371,15 +783,55 @@ public class SimpleAndroidLog implements AndroidLog, Serializable {
      * </p>
      */
     public int getLevel() {
-        return currentLogLevel;
+        return currentLevel();
+    }
+
+    /**
+     * Returns the current level, resolving it again if the configured levels have been changed since it has been resolved.
+     */
+    private int currentLevel() {
+        int state = levelState;
+        LogLevelTrie trie = levels;
+        if (state >>> 8 != trie.getVersion()) {
+            return resolveLevel(trie);
+        }
+        return (byte) state;
+    }
+
+    private int resolveLevel(LogLevelTrie trie) {
+        int level = levelPinned ? currentLogLevel : trie.getLevel(String.valueOf(logName));
+        currentLogLevel = level;
+        levelState = toLevelState(trie.getVersion(), level);
+        return level;
+    }
+
+    private static int toLevelState(int version, int level) {
+        return (version << 8) | (level & 0xFF);
     }
 
     // -------------------------------------------------------- Logging Methods
 
+    /** The readable representation of each log level, indexed by the LOG_LEVEL_XXX constants */
+    private static final String[] LEVEL_LABELS = { "", "[TRACE] ", "[DEBUG] ", "[INFO] ", "[WARN] ", "[ERROR] ", "[FATAL] ", "" };
+
+    /** A per-thread buffer growing beyond this capacity is released after use */
+    private static final int MAX_BUFFER_CAPACITY = 8192;
+
+    /** The per-thread buffers in which the messages are assembled */
+    private static final ThreadLocal<Encoder> encoders = new ThreadLocal<Encoder>() {
+        @Override
+        protected Encoder initialValue() {
+            return new Encoder();
+        }
+    };
+
     /**
      * <p>
      * Do the actual logging. This method assembles the message and then calls <code>write()</code> to cause it to be written.<br/>
-     * Calls {@link android.util.Log} to write log for the Android platform.
+     * Calls the {@link LogSink}, by default {@link android.util.Log} to write log for the Android platform.
+     * </p>
+     * <p>
+     * The message is assembled in a per-thread reusable buffer, which is handed to the {@link LogSink} without being copied.
      * </p>
      * 
      * @param type
@@ -390,95 +842,101 @@ public class SimpleAndroidLog implements AndroidLog, Serializable {
      *            The exception whose stack trace should be logged
      */
     protected void log(int type, Object message, Throwable t) {
-        // Use a string buffer for better performance
-        StringBuffer buf = new StringBuffer();
+        long window = repeatWindow;
+        if (window > 0 && !acceptRepeat(type, message, t, window)) {
+            return;
+        }
+        render(type, message, t);
+    }
 
-        // Append date-time if so configured
-        if (showDateTime) {
-            Date now = new Date();
-            String dateText;
-            synchronized (dateFormatter) {
-                dateText = dateFormatter.format(now);
+    /**
+     * Formats the message and writes it to the sink.
+     */
+    private void render(int type, Object message, Throwable t) {
+        Encoder encoder = encoders.get();
+        if (encoder.busy) {
+            // The message logs from its toString(): don't overwrite the buffer being assembled
+            encoder = new Encoder();
+        }
+        encoder.busy = true;
+        try {
+            StringBuilder buf = encoder.builder;
+
+            // Append date-time if so configured
+            if (showDateTime) {
+                timestampFormat.format(buf, System.currentTimeMillis());
+                buf.append(" ");
             }
-            buf.append(dateText);
-            buf.append(" ");
-        }
-
-        // Append a readable representation of the log level
-        if (showLevel) {
-            switch (type) {
-                case SimpleAndroidLog.LOG_LEVEL_TRACE:
-                    buf.append("[TRACE] ");
-                    break;
-                case SimpleAndroidLog.LOG_LEVEL_DEBUG:
-                    buf.append("[DEBUG] ");
-                    break;
-                case SimpleAndroidLog.LOG_LEVEL_INFO:
-                    buf.append("[INFO] ");
-                    break;
-                case SimpleAndroidLog.LOG_LEVEL_WARN:
-                    buf.append("[WARN] ");
-                    break;
-                case SimpleAndroidLog.LOG_LEVEL_ERROR:
-                    buf.append("[ERROR] ");
-                    break;
-                case SimpleAndroidLog.LOG_LEVEL_FATAL:
-                    buf.append("[FATAL] ");
-                    break;
+
+            // Append a readable representation of the log level
+            if (showLevel && type >= 0 && type < LEVEL_LABELS.length) {
+                buf.append(LEVEL_LABELS[type]);
             }
-        }
 
-        // Append the name of the log instance if so configured
-        if (showShortName) {
-            initShortLogName();
-            buf.append(String.valueOf(shortLogName)).append(" - ");
-        } else if (showLogName) {
-            buf.append(String.valueOf(logName)).append(" - ");
-        }
+            // Append the name of the log instance if so configured
+            if (showShortName) {
+                initShortLogName();
+                buf.append(String.valueOf(shortLogName)).append(" - ");
+            } else if (showLogName) {
+                buf.append(String.valueOf(logName)).append(" - ");
+            }
 
-        // Append the message
-        buf.append(String.valueOf(message));
+            // Append the diagnostic context if so configured
+            String[] keys = mdcKeys;
+            if (keys == null || keys.length > 0) {
+                appendContext(buf, keys);
+            }
 
-        // Append stack trace if not null
-        if (t != null) {
-            buf.append(" <");
-            buf.append(t.toString());
-            buf.append(">");
+            // Append the message
+            if (message instanceof CharSequence) {
+                buf.append((CharSequence) message);
+            } else {
+                buf.append(String.valueOf(message));
+            }
 
-            java.io.StringWriter sw = new java.io.StringWriter(1024);
-            java.io.PrintWriter pw = new java.io.PrintWriter(sw);
-            t.printStackTrace(pw);
-            pw.close();
-            buf.append(sw.toString());
-        }
+            // Append stack trace if not null
+            if (t != null) {
+                buf.append(" <");
+                buf.append(t.toString());
+                buf.append(">");
 
-        // Print to the appropriate destination
-        write(buf);
+                stackTraceRenderer.render(t, buf);
+            }
 
-        if (showShortTag) {
-            initShortLogName();
-            tag = shortLogName;
+            // Print to the appropriate destination
+            write(buf);
+
+            if (showShortTag) {
+                initShortLogName();
+                tag = shortLogName;
+            }
+
+            sink.write(type, tag, buf);
+        } finally {
+            encoder.release();
         }
+    }
 
-        switch (type) {
-            case SimpleAndroidLog.LOG_LEVEL_TRACE:
-                Log.v(tag, buf.toString());
-                break;
-            case SimpleAndroidLog.LOG_LEVEL_DEBUG:
-                Log.d(tag, buf.toString());
-                break;
-            case SimpleAndroidLog.LOG_LEVEL_INFO:
-                Log.i(tag, buf.toString());
-                break;
-            case SimpleAndroidLog.LOG_LEVEL_WARN:
-                Log.w(tag, buf.toString());
-                break;
-            case SimpleAndroidLog.LOG_LEVEL_ERROR:
-                Log.e(tag, buf.toString());
-                break;
-            case SimpleAndroidLog.LOG_LEVEL_FATAL:
-                Log.e(tag, buf.toString());
-                break;
+    /**
+     * Appends the given keys of the diagnostic context of the current thread, or all of them if <code>keys</code> is <code>null</code>:
+     * <code>[requestId=42 user=bob] </code>.
+     */
+    private static void appendContext(StringBuilder buf, String[] keys) {
+        DiagnosticContext context = DiagnosticContext.current();
+        if (context.size() == 0) {
+            return;
+        }
+        int start = buf.length();
+        int count = keys == null ? context.size() : keys.length;
+        for (int i = 0; i < count; i++) {
+            String key = keys == null ? context.getKey(i) : keys[i];
+            String value = keys == null ? context.getValue(i) : context.get(key);
+            if (value != null) {
+                buf.append(buf.length() == start ? '[' : ' ').append(key).append('=').append(value);
+            }
+        }
+        if (buf.length() > start) {
+            buf.append("] ");
         }
     }
 
@@ -491,18 +949,126 @@ public class SimpleAndroidLog implements AndroidLog, Serializable {
     }
 
     /**
+     * Checks whether the message repeats a message logged within the window, and logs the summaries of the windows closed meanwhile.
+     * 
+     * @return <code>false</code> if the message must be suppressed
+     */
+    private boolean acceptRepeat(int type, Object message, Throwable t, long window) {
+        RepeatFilter filter = repeatFilter;
+        if (filter == null) {
+            synchronized (this) {
+                if (repeatFilter == null) {
+                    repeatFilter = new RepeatFilter(repeatCacheSize);
+                }
+                filter = repeatFilter;
+            }
+        }
+        boolean accepted = filter.accept(type, String.valueOf(message), t, System.currentTimeMillis(), window);
+        logSummaries(filter);
+        if (!accepted && filter.schedule()) {
+            scheduleRepeats(this, window);
+        }
+        return accepted;
+    }
+
+    private void logSummaries(RepeatFilter filter) {
+        List<RepeatFilter.Summary> summaries = filter.drainSummaries();
+        if (summaries != null) {
+            for (RepeatFilter.Summary summary : summaries) {
+                render(summary.level, summary.text, null);
+            }
+        }
+    }
+
+    /**
+     * Hands a logger counting suppressed repeats over to the timer, which logs their summaries once their window is closed.
+     */
+    private static synchronized void scheduleRepeats(SimpleAndroidLog log, long window) {
+        repeatingLogs.add(log);
+        if (repeatTimer == null) {
+            long period = Math.max(10, window / 2);
+            repeatTimer = new Timer("SimpleAndroidLog-repeats", true);
+            repeatTimer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    closeRepeatWindows();
+                }
+            }, period, period);
+        }
+    }
+
+    /**
+     * Called by the timer: logs the summaries of the windows that have ended.
+     */
+    private static void closeRepeatWindows() {
+        long now = System.currentTimeMillis();
+        long window = repeatWindow;
+        for (int i = repeatingLogs.size(); i > 0; i--) {
+            SimpleAndroidLog log = repeatingLogs.poll();
+            if (log == null) {
+                break;
+            }
+            RepeatFilter filter = log.repeatFilter;
+            if (filter.closeWindows(now, window)) {
+                repeatingLogs.add(log);
+            }
+            log.logSummaries(filter);
+        }
+    }
+
+    /**
+     * <p>
+     * Write the content of the message accumulated in the specified buffer to an additional output destination. The default implementation does
+     * nothing, the message being written to the Android log.
+     * </p>
      * <p>
-     * Write the content of the message accumulated in the specified <code>StringBuffer</code> to the appropriate output destination. The default
-     * implementation writes to <code>System.err</code>.
+     * The buffer is reused for the next messages of the current thread: it must not be kept after this method returns.
+     * </p>
+     * 
+     * @param buffer
+     *            A <code>CharSequence</code> containing the accumulated text to be logged
+     */
+    protected void write(CharSequence buffer) {
+        if (legacyWrite) {
+            write(new StringBuffer(buffer));
+        }
+    }
+
+    /**
+     * <p>
+     * Write the content of the message accumulated in the specified <code>StringBuffer</code> to an additional output destination. The default
+     * implementation does nothing.
+     * </p>
+     * <p>
+     * When a subclass overrides this method, it is called by {@link #write(CharSequence)} with a copy of the message.
      * </p>
      * 
      * @param buffer
      *            A <code>StringBuffer</code> containing the accumulated text to be logged
+     * @deprecated override {@link #write(CharSequence)}, which is called without copying the message
      */
+    @Deprecated
     protected void write(StringBuffer buffer) {
         // System.err.println(buffer.toString());
     }
 
+    /**
+     * Does the given class, or one of its superclasses below <code>SimpleAndroidLog</code>, override {@link #write(StringBuffer)}?
+     */
+    private static boolean overridesLegacyWrite(Class<?> clazz) {
+        for (Class<?> c = clazz; c != null && c != SimpleAndroidLog.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod("write", StringBuffer.class);
+                return true;
+            } catch (NoSuchMethodException e) {
+                ; // Look in the superclass
+            } catch (SecurityException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
     /**
      * Is the given log level currently enabled?
      * 
@@ -512,7 +1078,34 @@ public class SimpleAndroidLog implements AndroidLog, Serializable {
     protected boolean isLevelEnabled(int logLevel) {
         // log level are numerically ordered so can use simple numeric
         // comparison
-        return (logLevel >= currentLogLevel);
+        return (logLevel >= currentLevel());
+    }
+
+    /**
+     * Is the given log level enabled for the events tagged with the given markers? The markers are enabled unless one of them is disabled.
+     * 
+     * @param logLevel
+     *            is this level enabled?
+     * @param markers
+     *            the bitmask of the markers, see {@link Marker#getMask()}
+     */
+    public boolean isEnabled(int logLevel, long markers) {
+        return logLevel >= currentLevel() && (markers & (disabledMarkers | markersDisabled) & ~markersEnabled) == 0;
+    }
+
+    /**
+     * Is the given enabled event dropped by the <code>filter.N</code> rules? The rules are checked before the message is formatted.
+     * 
+     * @param logLevel
+     *            the level of the event
+     * @param markers
+     *            the bitmask of the markers of the event, see {@link Marker#getMask()}
+     * @param template
+     *            the message before it is formatted, or <code>null</code> if it has been produced by the application
+     */
+    public boolean isFiltered(int logLevel, long markers, String template) {
+        LogFilter rules = filter;
+        return rules != null && rules.isDenied(String.valueOf(logName), logLevel, markers, template);
     }
 
     // -------------------------------------------------------- Log Implementation
@@ -763,4 +1356,25 @@ public class SimpleAndroidLog implements AndroidLog, Serializable {
         return isLevelEnabled(SimpleAndroidLog.LOG_LEVEL_WARN);
     }
 
+    // -------------------------------------------------------- Encoder
+
+    /**
+     * The per-thread state used to assemble the messages.
+     */
+    private static final class Encoder {
+
+        StringBuilder builder = new StringBuilder(256);
+
+        boolean busy;
+
+        void release() {
+            busy = false;
+            if (builder.capacity() > MAX_BUFFER_CAPACITY) {
+                builder = new StringBuilder(256);
+            } else {
+                builder.setLength(0);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,188 @@
+package org.apache.commons.logging.impl;
+
+/**
+ * <p>
+ * Renders the stack traces of the exceptions as <code>Throwable.printStackTrace()</code> does, reusing the text of the stack traces already
+ * rendered.
+ * </p>
+ * <p>
+ * The frames of each exception of a cause chain are rendered once and kept in a bounded cache, keyed by a fingerprint of the exception class and of
+ * its frames. When the same failure is logged again, only the first line of each exception (its class and message) is rendered: the frames are
+ * copied from the cache, once checked to be the same. As <code>printStackTrace()</code>, the frames a cause has in common with the exception it
+ * caused are collapsed into "... n more", and the number of frames rendered for each exception can be limited.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+final class StackTraceRenderer {
+
+    /** The default number of cached stack traces */
+    static final int DEFAULT_CACHE_SIZE = 64;
+
+    /** The maximum length of a cause chain, to stop on a circular reference */
+    private static final int MAX_CAUSES = 64;
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    /** The maximum number of frames rendered for each exception, 0 for all */
+    private final int maxDepth;
+
+    /** The cached frames, indexed by fingerprint: a new entry replaces the entry having the same index */
+    private final Frames[] cache;
+
+    private final int mask;
+
+    /**
+     * @param maxDepth
+     *            the maximum number of frames rendered for each exception, 0 for all
+     * @param cacheSize
+     *            the number of cached stack traces, rounded up to the next power of two, 0 to disable the cache
+     */
+    StackTraceRenderer(int maxDepth, int cacheSize) {
+        this.maxDepth = Math.max(0, maxDepth);
+        int size = 1;
+        while (size < cacheSize) {
+            size <<= 1;
+        }
+        this.cache = cacheSize > 0 ? new Frames[size] : null;
+        this.mask = size - 1;
+    }
+
+    /**
+     * Appends the stack trace of the given exception and of its causes to the buffer.
+     */
+    void render(Throwable t, StringBuilder buf) {
+        buf.append(t.toString()).append(LINE_SEPARATOR);
+        StackTraceElement[] trace = t.getStackTrace();
+        appendFrames(t, trace, 0, buf);
+
+        Throwable[] chain = null;
+        int chainLength = 0;
+        Throwable cause = t.getCause();
+        while (cause != null) {
+            if (cause == t || contains(chain, chainLength, cause)) {
+                buf.append("Caused by: [CIRCULAR REFERENCE: ").append(cause.toString()).append(']').append(LINE_SEPARATOR);
+                break;
+            }
+            if (chain == null) {
+                chain = new Throwable[4];
+            } else if (chainLength == chain.length) {
+                if (chainLength == MAX_CAUSES) {
+                    break;
+                }
+                Throwable[] newChain = new Throwable[chainLength * 2];
+                System.arraycopy(chain, 0, newChain, 0, chainLength);
+                chain = newChain;
+            }
+            chain[chainLength++] = cause;
+
+            StackTraceElement[] causeTrace = cause.getStackTrace();
+            buf.append("Caused by: ").append(cause.toString()).append(LINE_SEPARATOR);
+            appendFrames(cause, causeTrace, framesInCommon(causeTrace, trace), buf);
+
+            trace = causeTrace;
+            cause = cause.getCause();
+        }
+    }
+
+    private static boolean contains(Throwable[] chain, int length, Throwable t) {
+        for (int i = 0; i < length; i++) {
+            if (chain[i] == t) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of frames at the bottom of the trace of a cause that are the same as the frames of the exception it caused.
+     */
+    private static int framesInCommon(StackTraceElement[] trace, StackTraceElement[] enclosingTrace) {
+        int m = trace.length - 1;
+        int n = enclosingTrace.length - 1;
+        while (m >= 0 && n >= 0 && trace[m].equals(enclosingTrace[n])) {
+            m--;
+            n--;
+        }
+        return trace.length - 1 - m;
+    }
+
+    private void appendFrames(Throwable t, StackTraceElement[] trace, int inCommon, StringBuilder buf) {
+        if (cache == null) {
+            renderFrames(trace, inCommon, buf);
+            return;
+        }
+
+        Class<?> type = t.getClass();
+        int hash = fingerprint(type, trace, inCommon);
+        int index = hash & mask;
+        Frames frames = cache[index];
+        if (frames == null || !frames.matches(hash, type, trace, inCommon)) {
+            int start = buf.length();
+            renderFrames(trace, inCommon, buf);
+            cache[index] = new Frames(hash, type, trace, inCommon, buf.substring(start));
+        } else {
+            buf.append(frames.text);
+        }
+    }
+
+    private static int fingerprint(Class<?> type, StackTraceElement[] trace, int inCommon) {
+        int hash = type.hashCode() * 31 + inCommon;
+        for (int i = 0; i < trace.length; i++) {
+            hash = hash * 31 + trace[i].hashCode();
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private void renderFrames(StackTraceElement[] trace, int inCommon, StringBuilder buf) {
+        int count = trace.length - inCommon;
+        int rendered = (maxDepth > 0 && maxDepth < count) ? maxDepth : count;
+        for (int i = 0; i < rendered; i++) {
+            buf.append("\tat ").append(trace[i].toString()).append(LINE_SEPARATOR);
+        }
+        if (rendered < count) {
+            buf.append("\t... ").append(count - rendered).append(" frames omitted").append(LINE_SEPARATOR);
+        }
+        if (inCommon != 0) {
+            buf.append("\t... ").append(inCommon).append(" more").append(LINE_SEPARATOR);
+        }
+    }
+
+    // -------------------------------------------------------- Frames
+
+    /**
+     * The rendered frames of an exception.
+     */
+    private static final class Frames {
+
+        final int hash;
+
+        final Class<?> type;
+
+        final StackTraceElement[] trace;
+
+        final int inCommon;
+
+        final String text;
+
+        Frames(int hash, Class<?> type, StackTraceElement[] trace, int inCommon, String text) {
+            this.hash = hash;
+            this.type = type;
+            this.trace = trace;
+            this.inCommon = inCommon;
+            this.text = text;
+        }
+
+        boolean matches(int otherHash, Class<?> otherType, StackTraceElement[] otherTrace, int otherInCommon) {
+            if (hash != otherHash || type != otherType || inCommon != otherInCommon || trace.length != otherTrace.length) {
+                return false;
+            }
+            for (int i = 0; i < trace.length; i++) {
+                if (!trace[i].equals(otherTrace[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package org.nds.logging;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.logging.impl.SimpleAndroidLog;
+
+/**
+ * <p>
+ * Renders the binary log files written by {@link BinaryLogWriter} to text, with the layout of <code>SimpleAndroidLog</code>: date and time, level,
+ * short logger name, message and stack trace.
+ * </p>
+ * <p>
+ * Usage: <code>java org.nds.logging.BinaryLogDecoder [-dateTimeFormat &lt;pattern&gt;] &lt;file&gt;...</code>. The text is written to the standard
+ * output.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+public final class BinaryLogDecoder {
+
+    /** The default format of the dates, the same as <code>SimpleAndroidLog</code> */
+    public static final String DEFAULT_DATE_TIME_FORMAT = "yyyy/MM/dd HH:mm:ss:SSS zzz";
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private final SimpleDateFormat dateFormatter;
+
+    private final List<String> templates = new ArrayList<String>();
+
+    private final List<String> loggers = new ArrayList<String>();
+
+    private final List<String> markers = new ArrayList<String>();
+
+    /** The version of the records being read */
+    private int version;
+
+    private InputStream in;
+
+    /**
+     * @param dateTimeFormat
+     *            the format of the dates, as expected by <code>SimpleDateFormat</code>
+     */
+    public BinaryLogDecoder(String dateTimeFormat) {
+        this.dateFormatter = new SimpleDateFormat(dateTimeFormat);
+    }
+
+    public static void main(String[] args) throws IOException {
+        String dateTimeFormat = DEFAULT_DATE_TIME_FORMAT;
+        List<String> files = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-dateTimeFormat".equals(args[i]) && i + 1 < args.length) {
+                dateTimeFormat = args[++i];
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println("Usage: java " + BinaryLogDecoder.class.getName() + " [-dateTimeFormat <pattern>] <file>...");
+            System.exit(1);
+        }
+
+        BinaryLogDecoder decoder = new BinaryLogDecoder(dateTimeFormat);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+        for (String file : files) {
+            InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try {
+                decoder.decode(in, out);
+            } finally {
+                in.close();
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Renders all the events of the given binary log.
+     *
+     * @param input
+     *            the binary log
+     * @param out
+     *            the destination of the text
+     * @throws IOException
+     *             if the log can't be read, or is invalid
+     */
+    public void decode(InputStream input, Writer out) throws IOException {
+        this.in = input;
+        templates.clear();
+        loggers.clear();
+        markers.clear();
+        version = BinaryLogWriter.VERSION;
+        StringBuilder buf = new StringBuilder(256);
+        for (;;) {
+            int type = input.read();
+            if (type < 0) {
+                break;
+            }
+            switch (type) {
+                case BinaryLogWriter.HEADER:
+                    readHeader();
+                    break;
+                case BinaryLogWriter.TEMPLATE:
+                    define(templates, readVarInt(), readString());
+                    break;
+                case BinaryLogWriter.LOGGER:
+                    define(loggers, readVarInt(), readString());
+                    break;
+                case BinaryLogWriter.MARKER:
+                    define(markers, readVarInt(), readString());
+                    break;
+                case BinaryLogWriter.EVENT:
+                    buf.setLength(0);
+                    readEvent(buf);
+                    out.write(buf.toString());
+                    break;
+                default:
+                    throw new IOException("Invalid record type: " + type);
+            }
+        }
+    }
+
+    private void readHeader() throws IOException {
+        for (int i = 0; i < BinaryLogWriter.MAGIC.length; i++) {
+            if (readByte() != BinaryLogWriter.MAGIC[i]) {
+                throw new IOException("Not a binary log file");
+            }
+        }
+        int version = readVarInt();
+        if (version < 1 || version > BinaryLogWriter.VERSION) {
+            throw new IOException("Unsupported binary log version: " + version);
+        }
+        this.version = version;
+        // A new writer has appended to the file: its ids start again
+        templates.clear();
+        loggers.clear();
+        markers.clear();
+    }
+
+    private static void define(List<String> values, int id, String value) throws IOException {
+        if (id != values.size()) {
+            throw new IOException("Invalid definition id: " + id);
+        }
+        values.add(value);
+    }
+
+    private void readEvent(StringBuilder buf) throws IOException {
+        String logger = get(loggers, readVarInt());
+        String template = get(templates, readVarInt());
+        int markerId = version < 2 ? 0 : readVarInt();
+        String marker = markerId == 0 ? null : get(markers, markerId - 1);
+        int level = readVarInt();
+        long timestamp = readVarLong();
+        readVarLong(); // Thread id, not part of the layout
+        String stackTrace = readString();
+        int count = readVarInt();
+        Object[] params = new Object[count];
+        for (int i = 0; i < count; i++) {
+            params[i] = readValue();
+        }
+
+        buf.append(dateFormatter.format(new Date(timestamp))).append(' ');
+        buf.append(levelLabel(level));
+        String shortName = logger.substring(logger.lastIndexOf('.') + 1);
+        shortName = shortName.substring(shortName.lastIndexOf('/') + 1);
+        buf.append(shortName).append(" - ");
+        if (marker != null) {
+            buf.append('{').append(marker).append("} ");
+        }
+        try {
+            buf.append(MessageFormatter.format(template, params, 0, count));
+        } catch (RuntimeException e) {
+            // The parameters rendered to String no longer match the template
+            buf.append(template);
+            for (int i = 0; i < count; i++) {
+                buf.append(i == 0 ? " [" : ", ").append(params[i]);
+            }
+            buf.append(count > 0 ? "]" : "");
+        }
+        if (stackTrace.length() > 0) {
+            int end = stackTrace.indexOf(LINE_SEPARATOR);
+            buf.append(" <").append(end < 0 ? stackTrace : stackTrace.substring(0, end)).append('>');
+            buf.append(stackTrace);
+        } else {
+            buf.append(LINE_SEPARATOR);
+        }
+    }
+
+    private static String levelLabel(int level) {
+        switch (level) {
+            case SimpleAndroidLog.LOG_LEVEL_TRACE:
+                return "[TRACE] ";
+            case SimpleAndroidLog.LOG_LEVEL_DEBUG:
+                return "[DEBUG] ";
+            case SimpleAndroidLog.LOG_LEVEL_INFO:
+                return "[INFO] ";
+            case SimpleAndroidLog.LOG_LEVEL_WARN:
+                return "[WARN] ";
+            case SimpleAndroidLog.LOG_LEVEL_ERROR:
+                return "[ERROR] ";
+            case SimpleAndroidLog.LOG_LEVEL_FATAL:
+                return "[FATAL] ";
+            default:
+                return "";
+        }
+    }
+
+    private static String get(List<String> values, int id) throws IOException {
+        if (id < 0 || id >= values.size()) {
+            throw new IOException("Undefined id: " + id);
+        }
+        return values.get(id);
+    }
+
+    // -------------------------------------------------------- Decoding
+
+    private Object readValue() throws IOException {
+        int type = readVarInt();
+        switch (type) {
+            case BinaryLogWriter.NULL:
+                return null;
+            case BinaryLogWriter.STRING:
+                return readString();
+            case BinaryLogWriter.INT:
+                return Integer.valueOf((int) unZigZag(readVarLong()));
+            case BinaryLogWriter.LONG:
+                return Long.valueOf(unZigZag(readVarLong()));
+            case BinaryLogWriter.DOUBLE:
+                return Double.valueOf(Double.longBitsToDouble(readFixedLong()));
+            case BinaryLogWriter.FLOAT:
+                return Float.valueOf(Float.intBitsToFloat((int) readFixedLong()));
+            case BinaryLogWriter.TRUE:
+                return Boolean.TRUE;
+            case BinaryLogWriter.FALSE:
+                return Boolean.FALSE;
+            case BinaryLogWriter.CHAR:
+                return Character.valueOf((char) readVarInt());
+            case BinaryLogWriter.SHORT:
+                return Short.valueOf((short) unZigZag(readVarLong()));
+            case BinaryLogWriter.BYTE:
+                return Byte.valueOf((byte) unZigZag(readVarLong()));
+            case BinaryLogWriter.DATE:
+                return new Date(unZigZag(readVarLong()));
+            default:
+                throw new IOException("Invalid parameter type: " + type);
+        }
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("Truncated binary log");
+        }
+        return b;
+    }
+
+    private int readVarInt() throws IOException {
+        return (int) readVarLong();
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid variable-length integer");
+    }
+
+    private long readFixedLong() throws IOException {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | readByte();
+        }
+        return value;
+    }
+
+    private String readString() throws IOException {
+        int length = readVarInt();
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = in.read(bytes, read, length - read);
+            if (n < 0) {
+                throw new EOFException("Truncated binary log");
+            }
+            read += n;
+        }
+        return new String(bytes, "UTF-8");
+    }
+}
@@ -0,0 +1,410 @@
+package org.nds.logging;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Writes the events of {@link Logger} in a compact binary format, leaving their rendering to {@link BinaryLogDecoder}.
+ * </p>
+ * <p>
+ * The message templates, the logger names and the marker names are written once, in a definition record assigning them a numeric id. An event then
+ * only stores the ids of its logger, template and marker, its level, timestamp and thread id, and the raw values of its parameters. The format is:
+ * </p>
+ * <ul>
+ * <li>A header record (0) followed by <code>"NDSL"</code> and the version, starting each file or each append to it: the ids defined before it are
+ * forgotten.</li>
+ * <li>A template definition (1): id, template.</li>
+ * <li>A logger definition (2): id, logger name.</li>
+ * <li>A marker definition (4): id, marker name.</li>
+ * <li>An event (3): logger id, template id, marker id plus one (0 if none), level, timestamp, thread id, stack trace (empty if none), number of
+ * parameters and the parameters, each one being prefixed by its type. The marker id is absent from the events of version 1.</li>
+ * </ul>
+ * <p>
+ * The integers are written as variable-length quantities, the strings as their length followed by their UTF-8 bytes. The records are accumulated in
+ * a buffer written to the file once it is half full, when an error is logged, and on {@link #flush()}.
+ * </p>
+ * <p>
+ * At most {@link #MAX_TEMPLATES} templates are defined, and only the templates short enough to be cached by {@link MessageFormatter}: the messages
+ * built dynamically would otherwise fill the definitions without end. The other messages are formatted when they are logged, and written as the
+ * parameter of the template {@link #PRODUCED_TEMPLATE}.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+final class BinaryLogWriter {
+
+    static final byte[] MAGIC = { 'N', 'D', 'S', 'L' };
+    static final int VERSION = 2;
+
+    // Record types
+    static final int HEADER = 0;
+    static final int TEMPLATE = 1;
+    static final int LOGGER = 2;
+    static final int EVENT = 3;
+    static final int MARKER = 4;
+
+    // Parameter types
+    static final int NULL = 0;
+    static final int STRING = 1;
+    static final int INT = 2;
+    static final int LONG = 3;
+    static final int DOUBLE = 4;
+    static final int FLOAT = 5;
+    static final int TRUE = 6;
+    static final int FALSE = 7;
+    static final int CHAR = 8;
+    static final int SHORT = 9;
+    static final int BYTE = 10;
+    static final int DATE = 11;
+
+    /** The template of the messages written as their only parameter: the messages produced on demand, and the messages not defined as templates */
+    static final String PRODUCED_TEMPLATE = "{}";
+
+    /** The maximum number of templates defined by a writer */
+    static final int MAX_TEMPLATES = 4096;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+
+    /** The ids of the templates already defined, guarded by this writer */
+    private final Map<String, Integer> templates = new HashMap<String, Integer>();
+
+    /** The ids of the loggers already defined, guarded by this writer */
+    private final Map<String, Integer> loggers = new HashMap<String, Integer>();
+
+    /** The ids of the markers already defined, guarded by this writer */
+    private final Map<String, Integer> markers = new HashMap<String, Integer>();
+
+    /** The records not yet written to the file, guarded by this writer */
+    private byte[] buf = new byte[BUFFER_SIZE];
+    private int size = 0;
+
+    private boolean closed = false;
+
+    /**
+     * Opens the file in append mode and writes the header.
+     *
+     * @param file
+     *            the binary log file
+     * @throws IOException
+     *             if the file can't be opened
+     */
+    BinaryLogWriter(File file) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory()) {
+            directory.mkdirs();
+        }
+        this.out = new FileOutputStream(file, true);
+        writeVarInt(HEADER);
+        for (int i = 0; i < MAGIC.length; i++) {
+            writeByte(MAGIC[i]);
+        }
+        writeVarInt(VERSION);
+
+        try {
+            Runtime.getRuntime().addShutdownHook(new Thread("BinaryLogWriter-shutdown") {
+                @Override
+                public void run() {
+                    close();
+                }
+            });
+        } catch (SecurityException e) {
+            ; // Ignore: the last events may be lost on exit
+        }
+    }
+
+    /**
+     * Writes an event whose parameters are <code>params[offset..offset + count[</code>.
+     *
+     * @param marker
+     *            the name of the marker of the event, or <code>null</code>
+     */
+    void write(String logger, int level, String marker, String template, Throwable t, Object[] params, int offset, int count) {
+        write(logger, level, marker, template, t, params, offset, count, null, null, null);
+    }
+
+    /**
+     * Writes an event with up to three parameters.
+     *
+     * @param marker
+     *            the name of the marker of the event, or <code>null</code>
+     */
+    void write(String logger, int level, String marker, String template, Throwable t, int count, Object arg0, Object arg1, Object arg2) {
+        write(logger, level, marker, template, t, null, 0, count, arg0, arg1, arg2);
+    }
+
+    private void write(String logger, int level, String marker, String template, Throwable t, Object[] params, int offset, int count, Object arg0,
+            Object arg1, Object arg2) {
+        long timestamp = System.currentTimeMillis();
+        long threadId = Thread.currentThread().getId();
+        String stackTrace = t == null ? "" : renderThrowable(t);
+        // Rendered before taking the lock: toString() may log
+        Object[] values = null;
+        for (int i = 0; i < count; i++) {
+            Object value = params != null ? params[offset + i] : (i == 0 ? arg0 : (i == 1 ? arg1 : arg2));
+            if (!isRaw(value)) {
+                if (values == null) {
+                    values = new Object[count];
+                    for (int j = 0; j < i; j++) {
+                        values[j] = params != null ? params[offset + j] : (j == 0 ? arg0 : (j == 1 ? arg1 : arg2));
+                    }
+                }
+                value = String.valueOf(value);
+            }
+            if (values != null) {
+                values[i] = value;
+            }
+        }
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            int loggerId = define(loggers, LOGGER, logger);
+            if (!templates.containsKey(template)
+                    && (templates.size() >= MAX_TEMPLATES || template.length() > MessageFormatter.MAX_CACHED_MESSAGE_LENGTH)) {
+                // Not worth a definition: the parameters are all raw values by now, so formatting them can't log
+                String message;
+                if (values != null) {
+                    message = MessageFormatter.format(template, values, 0, count);
+                } else if (params != null) {
+                    message = MessageFormatter.format(template, params, offset, count);
+                } else {
+                    message = MessageFormatter.format(template, count, arg0, arg1, arg2);
+                }
+                template = PRODUCED_TEMPLATE;
+                values = null;
+                params = null;
+                count = 1;
+                arg0 = message;
+            }
+            int templateId = define(templates, TEMPLATE, template);
+            int markerId = marker == null ? 0 : define(markers, MARKER, marker) + 1;
+
+            writeVarInt(EVENT);
+            writeVarInt(loggerId);
+            writeVarInt(templateId);
+            writeVarInt(markerId);
+            writeVarInt(level);
+            writeVarLong(timestamp);
+            writeVarLong(threadId);
+            writeString(stackTrace);
+            writeVarInt(count);
+            for (int i = 0; i < count; i++) {
+                Object value;
+                if (values != null) {
+                    value = values[i];
+                } else {
+                    value = params != null ? params[offset + i] : (i == 0 ? arg0 : (i == 1 ? arg1 : arg2));
+                }
+                writeValue(value);
+            }
+
+            if (size >= BUFFER_SIZE / 2 || t != null) {
+                writeBuffer();
+            }
+        }
+    }
+
+    /**
+     * Writes the buffered records to the file.
+     */
+    synchronized void flush() {
+        writeBuffer();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            ; // Ignore
+        }
+    }
+
+    /**
+     * Writes the buffered records and closes the file.
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        try {
+            out.close();
+        } catch (IOException e) {
+            ; // Ignore
+        }
+    }
+
+    private void writeBuffer() {
+        if (size == 0) {
+            return;
+        }
+        try {
+            out.write(buf, 0, size);
+        } catch (IOException e) {
+            System.err.println("BinaryLogWriter: unable to write the log events - " + e);
+        }
+        size = 0;
+        if (buf.length > BUFFER_SIZE) {
+            buf = new byte[BUFFER_SIZE];
+        }
+    }
+
+    private int define(Map<String, Integer> ids, int recordType, String value) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = Integer.valueOf(ids.size());
+            ids.put(value, id);
+            writeVarInt(recordType);
+            writeVarInt(id.intValue());
+            writeString(value);
+        }
+        return id.intValue();
+    }
+
+    private static String renderThrowable(Throwable t) {
+        StringWriter sw = new StringWriter(1024);
+        PrintWriter pw = new PrintWriter(sw);
+        t.printStackTrace(pw);
+        pw.close();
+        return sw.toString();
+    }
+
+    /**
+     * Is the value written as is, instead of its <code>String</code> representation?
+     */
+    private static boolean isRaw(Object value) {
+        return value == null || value instanceof String || value instanceof Integer || value instanceof Long || value instanceof Double
+                || value instanceof Float || value instanceof Boolean || value instanceof Character || value instanceof Short
+                || value instanceof Byte || value instanceof Date;
+    }
+
+    // -------------------------------------------------------- Encoding
+
+    private void writeValue(Object value) {
+        if (value == null) {
+            writeVarInt(NULL);
+        } else if (value instanceof String) {
+            writeVarInt(STRING);
+            writeString((String) value);
+        } else if (value instanceof Integer) {
+            writeVarInt(INT);
+            writeVarLong(zigZag(((Integer) value).intValue()));
+        } else if (value instanceof Long) {
+            writeVarInt(LONG);
+            writeVarLong(zigZag(((Long) value).longValue()));
+        } else if (value instanceof Double) {
+            writeVarInt(DOUBLE);
+            writeFixedLong(Double.doubleToRawLongBits(((Double) value).doubleValue()));
+        } else if (value instanceof Float) {
+            writeVarInt(FLOAT);
+            writeFixedLong(Float.floatToRawIntBits(((Float) value).floatValue()));
+        } else if (value instanceof Boolean) {
+            writeVarInt(((Boolean) value).booleanValue() ? TRUE : FALSE);
+        } else if (value instanceof Character) {
+            writeVarInt(CHAR);
+            writeVarInt(((Character) value).charValue());
+        } else if (value instanceof Short) {
+            writeVarInt(SHORT);
+            writeVarLong(zigZag(((Short) value).shortValue()));
+        } else if (value instanceof Date) {
+            writeVarInt(DATE);
+            writeVarLong(zigZag(((Date) value).getTime()));
+        } else {
+            writeVarInt(BYTE);
+            writeVarLong(zigZag(((Byte) value).byteValue()));
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private void ensureCapacity(int length) {
+        if (size + length > buf.length) {
+            byte[] newBuf = new byte[Math.max(buf.length * 2, size + length)];
+            System.arraycopy(buf, 0, newBuf, 0, size);
+            buf = newBuf;
+        }
+    }
+
+    private void writeByte(int b) {
+        ensureCapacity(1);
+        buf[size++] = (byte) b;
+    }
+
+    private void writeVarInt(int value) {
+        writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    private void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buf[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[size++] = (byte) value;
+    }
+
+    private void writeFixedLong(long value) {
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buf[size++] = (byte) (value >>> shift);
+        }
+    }
+
+    /**
+     * Writes the UTF-8 length of the string, then its UTF-8 bytes.
+     */
+    private void writeString(String value) {
+        int length = value.length();
+        int utfLength = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                utfLength++;
+            } else if (c < 0x800) {
+                utfLength += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                utfLength += 4;
+                i++;
+            } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                utfLength++;
+            } else {
+                utfLength += 3;
+            }
+        }
+        writeVarInt(utfLength);
+        ensureCapacity(utfLength);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buf[size++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[size++] = (byte) (0xC0 | (c >> 6));
+                buf[size++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buf[size++] = (byte) (0xF0 | (codePoint >> 18));
+                buf[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buf[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buf[size++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                // Unpaired surrogate
+                buf[size++] = (byte) '?';
+            } else {
+                buf[size++] = (byte) (0xE0 | (c >> 12));
+                buf[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[size++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+}
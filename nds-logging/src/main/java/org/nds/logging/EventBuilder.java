@@ -0,0 +1,65 @@
+package org.nds.logging;
+
+/**
+ * <p>
+ * Builds a structured event: a message followed by fields, written as a JSON object. A builder is returned by the <code>atXxx()</code> methods of
+ * {@link Logger}, and the event is logged by {@link #log()}:
+ * </p>
+ * <p>
+ * <i>logger.atInfo("order placed").kv("orderId", id).kv("ms", elapsed).log();</i>
+ * </p>
+ * <p>
+ * When the level is disabled, the shared builder {@link #NOP} is returned: all its methods do nothing, so a disabled event only costs the boxing
+ * of its object values. A builder must not be kept after {@link #log()}, nor used by another thread.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+public class EventBuilder {
+
+    /** The builder of the disabled events */
+    static final EventBuilder NOP = new EventBuilder();
+
+    EventBuilder() {
+    }
+
+    /**
+     * Adds a field whose value is written according to its type: the numbers, booleans and characters as such, <code>null</code> as null, and the
+     * other objects as their <code>String</code> representation.
+     */
+    public EventBuilder kv(String key, Object value) {
+        return this;
+    }
+
+    public EventBuilder kv(String key, String value) {
+        return this;
+    }
+
+    public EventBuilder kv(String key, long value) {
+        return this;
+    }
+
+    public EventBuilder kv(String key, double value) {
+        return this;
+    }
+
+    public EventBuilder kv(String key, boolean value) {
+        return this;
+    }
+
+    public EventBuilder kv(String key, char value) {
+        return this;
+    }
+
+    /**
+     * Logs the event.
+     */
+    public void log() {
+    }
+
+    /**
+     * Logs the event with the given cause.
+     */
+    public void log(Throwable t) {
+    }
+}
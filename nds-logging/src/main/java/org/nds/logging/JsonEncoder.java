@@ -0,0 +1,276 @@
+package org.nds.logging;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * <p>
+ * Writes a JSON object in UTF-8 into a reusable byte buffer: the names and the strings are escaped and encoded character by character, and the
+ * integers are written digit by digit, so a field doesn't allocate any intermediate <code>String</code>. Only the doubles which are not integers
+ * are rendered with <code>Double.toString()</code>.
+ * </p>
+ * <p>
+ * The encoder doesn't check the structure of the object: the caller writes {@link #beginObject()}, then pairs of {@link #name(String)} and value,
+ * then {@link #endObject()}. An encoder is not thread-safe.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+final class JsonEncoder {
+
+    /** A buffer growing beyond this capacity is released by {@link #reset()} */
+    private static final int MAX_BUFFER_CAPACITY = 8192;
+
+    /** The largest magnitude of the doubles written as integers: all the integers up to 2^53 are exact */
+    private static final double MAX_EXACT_INTEGER = 9007199254740992.0;
+
+    private static final byte[] HEX_DIGITS = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+
+    private static final byte[] TRUE = { 't', 'r', 'u', 'e' };
+
+    private static final byte[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+
+    private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+
+    private static final byte[] MIN_LONG = { '-', '9', '2', '2', '3', '3', '7', '2', '0', '3', '6', '8', '5', '4', '7', '7', '5', '8', '0', '8' };
+
+    private byte[] buf = new byte[256];
+
+    private int size = 0;
+
+    /** Does the next name follow a field? */
+    private boolean afterField = false;
+
+    /**
+     * Empties the buffer.
+     */
+    void reset() {
+        size = 0;
+        afterField = false;
+        if (buf.length > MAX_BUFFER_CAPACITY) {
+            buf = new byte[256];
+        }
+    }
+
+    /**
+     * Returns the number of bytes written.
+     */
+    int size() {
+        return size;
+    }
+
+    void beginObject() {
+        writeByte('{');
+        afterField = false;
+    }
+
+    void endObject() {
+        writeByte('}');
+        afterField = true;
+    }
+
+    /**
+     * Writes the name of the next field.
+     */
+    void name(String name) {
+        if (afterField) {
+            writeByte(',');
+        }
+        writeString(name);
+        writeByte(':');
+        afterField = true;
+    }
+
+    void value(CharSequence value) {
+        if (value == null) {
+            nullValue();
+        } else {
+            writeString(value);
+        }
+    }
+
+    void value(boolean value) {
+        writeBytes(value ? TRUE : FALSE);
+    }
+
+    void value(char value) {
+        ensureCapacity(8);
+        buf[size++] = '"';
+        writeChar(value);
+        buf[size++] = '"';
+    }
+
+    void value(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeBytes(MIN_LONG);
+            return;
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            buf[size++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long bound = 10; digits < 19 && value >= bound; bound *= 10) {
+            digits++;
+        }
+        for (int i = size + digits - 1; i >= size; i--) {
+            buf[i] = (byte) ('0' + (int) (value % 10));
+            value /= 10;
+        }
+        size += digits;
+    }
+
+    /**
+     * Writes a double. JSON has no representation of NaN and of the infinities: they are written as strings.
+     */
+    void value(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            writeString(String.valueOf(value));
+        } else if (value == Math.rint(value) && Math.abs(value) <= MAX_EXACT_INTEGER) {
+            value((long) value);
+        } else {
+            writeAscii(Double.toString(value));
+        }
+    }
+
+    /**
+     * Writes a value according to its type: the numbers, booleans and characters as such, the other objects as their <code>String</code>
+     * representation.
+     */
+    void value(Object value) {
+        if (value == null) {
+            nullValue();
+        } else if (value instanceof CharSequence) {
+            writeString((CharSequence) value);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            value(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            value(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            value(((Boolean) value).booleanValue());
+        } else if (value instanceof Character) {
+            value(((Character) value).charValue());
+        } else {
+            writeString(String.valueOf(value));
+        }
+    }
+
+    void nullValue() {
+        writeBytes(NULL);
+    }
+
+    /**
+     * Copies the content of the buffer into the given array.
+     */
+    void copyTo(byte[] array, int offset) {
+        System.arraycopy(buf, 0, array, offset, size);
+    }
+
+    /**
+     * Returns the content of the buffer.
+     */
+    @Override
+    public String toString() {
+        try {
+            return new String(buf, 0, size, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.toString());
+        }
+    }
+
+    // -------------------------------------------------------- Encoding
+
+    /**
+     * Writes the string between double quotes, escaping the characters if needed.
+     */
+    private void writeString(CharSequence value) {
+        int length = value.length();
+        ensureCapacity(length + 2);
+        buf[size++] = '"';
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                ensureCapacity(2);
+                buf[size++] = (byte) c;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                ensureCapacity(5);
+                buf[size++] = (byte) (0xF0 | (codePoint >> 18));
+                buf[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buf[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buf[size++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                writeChar(c);
+            }
+        }
+        ensureCapacity(1);
+        buf[size++] = '"';
+    }
+
+    /**
+     * Writes a character of a string, escaped if needed.
+     */
+    private void writeChar(char c) {
+        ensureCapacity(6);
+        if (c == '"' || c == '\\') {
+            buf[size++] = '\\';
+            buf[size++] = (byte) c;
+        } else if (c == '\n') {
+            buf[size++] = '\\';
+            buf[size++] = 'n';
+        } else if (c == '\r') {
+            buf[size++] = '\\';
+            buf[size++] = 'r';
+        } else if (c == '\t') {
+            buf[size++] = '\\';
+            buf[size++] = 't';
+        } else if (c < 0x20 || Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+            // Control character, or unpaired surrogate
+            buf[size++] = '\\';
+            buf[size++] = 'u';
+            buf[size++] = HEX_DIGITS[(c >> 12) & 0xF];
+            buf[size++] = HEX_DIGITS[(c >> 8) & 0xF];
+            buf[size++] = HEX_DIGITS[(c >> 4) & 0xF];
+            buf[size++] = HEX_DIGITS[c & 0xF];
+        } else if (c < 0x80) {
+            buf[size++] = (byte) c;
+        } else if (c < 0x800) {
+            buf[size++] = (byte) (0xC0 | (c >> 6));
+            buf[size++] = (byte) (0x80 | (c & 0x3F));
+        } else {
+            buf[size++] = (byte) (0xE0 | (c >> 12));
+            buf[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buf[size++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    /**
+     * Writes an ASCII text as is.
+     */
+    private void writeAscii(String text) {
+        int length = text.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            buf[size++] = (byte) text.charAt(i);
+        }
+    }
+
+    private void writeByte(int b) {
+        ensureCapacity(1);
+        buf[size++] = (byte) b;
+    }
+
+    private void writeBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buf, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void ensureCapacity(int length) {
+        if (size + length > buf.length) {
+            byte[] newBuf = new byte[Math.max(buf.length * 2, size + length)];
+            System.arraycopy(buf, 0, newBuf, 0, size);
+            buf = newBuf;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.nds.logging;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <p>
+ * Writes the structured events of {@link Logger} to a file, one JSON object per line, so they can be read by a log pipeline without parsing the
+ * text of the messages.
+ * </p>
+ * <p>
+ * The lines are accumulated in a buffer written to the file once it is half full, when an error is logged, and on {@link #flush()}.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+final class JsonLogWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+
+    /** The lines not yet written to the file, guarded by this writer */
+    private byte[] buf = new byte[BUFFER_SIZE];
+    private int size = 0;
+
+    private boolean closed = false;
+
+    /**
+     * Opens the file in append mode.
+     *
+     * @param file
+     *            the JSON lines file
+     * @throws IOException
+     *             if the file can't be opened
+     */
+    JsonLogWriter(File file) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory()) {
+            directory.mkdirs();
+        }
+        this.out = new FileOutputStream(file, true);
+
+        try {
+            Runtime.getRuntime().addShutdownHook(new Thread("JsonLogWriter-shutdown") {
+                @Override
+                public void run() {
+                    close();
+                }
+            });
+        } catch (SecurityException e) {
+            ; // Ignore: the last events may be lost on exit
+        }
+    }
+
+    /**
+     * Writes the JSON object of the encoder as a line.
+     *
+     * @param flush
+     *            <code>true</code> to write the line to the file immediately
+     */
+    synchronized void write(JsonEncoder encoder, boolean flush) {
+        if (closed) {
+            return;
+        }
+        int length = encoder.size() + 1;
+        if (size + length > buf.length) {
+            writeBuffer();
+            if (length > buf.length) {
+                buf = new byte[length];
+            }
+        }
+        encoder.copyTo(buf, size);
+        size += encoder.size();
+        buf[size++] = '\n';
+
+        if (size >= BUFFER_SIZE / 2 || flush) {
+            writeBuffer();
+        }
+    }
+
+    /**
+     * Writes the buffered lines to the file.
+     */
+    synchronized void flush() {
+        writeBuffer();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            ; // Ignore
+        }
+    }
+
+    /**
+     * Writes the buffered lines and closes the file.
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        try {
+            out.close();
+        } catch (IOException e) {
+            ; // Ignore
+        }
+    }
+
+    private void writeBuffer() {
+        if (size == 0) {
+            return;
+        }
+        try {
+            out.write(buf, 0, size);
+        } catch (IOException e) {
+            System.err.println("JsonLogWriter: unable to write the log events - " + e);
+        }
+        size = 0;
+        if (buf.length > BUFFER_SIZE) {
+            buf = new byte[BUFFER_SIZE];
+        }
+    }
+}
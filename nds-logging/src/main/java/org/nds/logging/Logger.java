@@ -1,6 +1,11 @@
 package org.nds.logging;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.commons.logging.Log;
+import org.apache.commons.logging.Marker;
+import org.apache.commons.logging.impl.AsyncLog;
+import org.apache.commons.logging.impl.SimpleAndroidLog;
 
 /**
  * <p>
@@ -80,16 +85,198 @@ import org.apache.commons.logging.Log;
  * In addition to looking for system properties with the names specified above, this implementation also checks for a class loader resource named
  * <b>simplelog.properties</b>, and includes any matching definitions from this resource (if it exists).<br/>
  * </p>
- * 
+ * <h3>Messages:</h3>
+ * <p>
+ * The messages are formatted with the syntax of <b>String.format</b> (<i>"Loaded %d items in %s"</i>), or with <b>{}</b> placeholders when the
+ * message contains no '%' character (<i>"Loaded {} items in {}"</i>). Each message is parsed once and then kept in a bounded cache.
+ * </p>
+ * <h3>Rate limiting and sampling:</h3>
+ * <p>
+ * The number of messages logged per second by each call site (each message template and level) can be limited, to keep a noisy retry loop from
+ * flooding the log. The messages can also be sampled by a key, such as a request id, with {@link #sampled(Object)}: all the messages of a key are
+ * either kept or dropped. Both checks are made before the message is formatted, and the number of messages they drop is available from
+ * {@link #getRateLimitedCount()} and {@link #getSampledOutCount()}. See {@link LoggerFactory} for their configuration.
+ * </p>
+ * <h3>Deferred messages:</h3>
+ * <p>
+ * Each level method also accepts a {@link MessageSupplier}, called to build the message only if the level is enabled, and a {@link MessageWriter},
+ * writing the message into the per-thread buffer the messages are formatted in. Both can be lambda expressions on a Java 8 or later JVM:
+ * <i>logger.debug(() -&gt; "State: " + state.dump())</i>.
+ * </p>
+ * <h3>Structured events:</h3>
+ * <p>
+ * The <code>atXxx()</code> methods start an event made of a message and fields, encoded as a JSON object as they are added, and logged as the
+ * message of the event, or as a line of a JSON file (see {@link LoggerFactory}): <i>logger.atInfo("order placed").kv("orderId", id).kv("ms",
+ * elapsed).log()</i>. A disabled level returns a shared builder that does nothing.
+ * </p>
+ * <h3>Markers:</h3>
+ * <p>
+ * The level methods taking a {@link Marker} first tag the message, such as <i>logger.warn(SECURITY, "Login failed for {}", user)</i>: the name of
+ * the marker is written before the message, and the markers listed by the <code>disabledMarkers</code> property of <code>SimpleAndroidLog</code>
+ * are dropped before the message is formatted. The check is a bitmask test made with the level check; it only applies to the loggers writing to a
+ * <code>SimpleAndroidLog</code>, the markers are always enabled otherwise.
+ * </p>
+ * <h3>Filters:</h3>
+ * <p>
+ * The <code>filter.N</code> rules of <code>SimpleAndroidLog</code> drop or keep the enabled events from their level, logger, markers, diagnostic
+ * context and message template, such as <i>deny logger=com.example.net; level&lt;=debug</i>. They are compiled when the configuration is loaded and
+ * checked before the message is formatted and before the rate limit, without allocating; the dropped events are counted as suppressed.
+ * </p>
+ * <h3>Diagnostic context:</h3>
+ * <p>
+ * The keys and values put in the {@link MDC} by a thread, such as a request id, are added to the events it logs: see {@link MDC}.
+ * </p>
+ *
  * @author Nicolas Dos Santos
  * 
  */
 public class Logger {
 
+    private final String name;
+
     private final Log log;
 
+    /** Writes the events in the binary format instead of the log, or <code>null</code> */
+    private final BinaryLogWriter binaryWriter;
+
+    /** Writes the structured events as JSON lines instead of the log, or <code>null</code> */
+    private final JsonLogWriter jsonWriter;
+
+    /** Limits the rate of the messages of each call site, or <code>null</code> */
+    private final RateLimiter rateLimiter;
+
+    /** The fraction of the keys kept by {@link #sampled(Object)} */
+    private final double sampleRate;
+
+    /** The number of calls to {@link #sampled(Object)} whose key has been dropped */
+    private final AtomicLong sampledOut = new AtomicLong();
+
+    /** The logger returned for the dropped keys, created on first use */
+    private volatile Logger disabledLogger;
+
+    /** Counts the events, or <code>null</code> if the metrics are disabled */
+    private final LoggerMetrics metrics;
+
+    /** The counter of the events whose level is disabled: {@link LoggerMetrics#SAMPLED_OUT} for the logger of the dropped keys */
+    private final int suppressedCounter;
+
+    /** The log checking the markers and the filter rules of the events, or <code>null</code> if the markers are always enabled */
+    private final SimpleAndroidLog markerLog;
+
     protected Logger(String name, Log log) {
+        this(name, log, null, null, null, 1.0, null);
+    }
+
+    Logger(String name, Log log, BinaryLogWriter binaryWriter, JsonLogWriter jsonWriter, RateLimiter rateLimiter, double sampleRate,
+            LoggerMetrics metrics) {
+        this(name, log, binaryWriter, jsonWriter, rateLimiter, sampleRate, metrics, LoggerMetrics.SUPPRESSED);
+    }
+
+    private Logger(String name, Log log, BinaryLogWriter binaryWriter, JsonLogWriter jsonWriter, RateLimiter rateLimiter, double sampleRate,
+            LoggerMetrics metrics, int suppressedCounter) {
+        this.name = name;
         this.log = log;
+        this.binaryWriter = binaryWriter;
+        this.jsonWriter = jsonWriter;
+        this.rateLimiter = rateLimiter;
+        this.sampleRate = sampleRate;
+        this.metrics = metrics;
+        this.suppressedCounter = suppressedCounter;
+
+        Log target = log instanceof AsyncLog ? ((AsyncLog) log).getLog() : log;
+        this.markerLog = target instanceof SimpleAndroidLog ? (SimpleAndroidLog) target : null;
+    }
+
+    /**
+     * Returns the name of this logger.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the log writing the messages of this logger.
+     */
+    Log getLog() {
+        return log;
+    }
+
+    /**
+     * Samples the messages by key with the sample rate configured for this logger. See {@link #sampled(Object, double)}.
+     */
+    public Logger sampled(Object key) {
+        return sampled(key, sampleRate);
+    }
+
+    /**
+     * Samples the messages by key: returns this logger if the key is kept, or a logger with all its levels disabled if the key is dropped. The
+     * decision only depends on the hash code of the key, so the messages of a key are all kept or all dropped, by all the loggers having the same
+     * rate. The key must have a stable hash code, such as a <code>String</code> or a <code>Long</code>.
+     * 
+     * <pre>
+     * logger.sampled(requestId).info(&quot;Request {} received&quot;, requestId);
+     * </pre>
+     * 
+     * @param key
+     *            the sampling key, such as a request id
+     * @param rate
+     *            the fraction of the keys that are kept, from 0 (none) to 1 (all)
+     */
+    public Logger sampled(Object key, double rate) {
+        if (rate >= 1.0 || isKept(key, rate)) {
+            return this;
+        }
+        sampledOut.incrementAndGet();
+        Logger disabled = disabledLogger;
+        if (disabled == null) {
+            // Counts the events of the dropped keys in the metrics of this logger
+            disabled = new Logger(name, DisabledLog.INSTANCE, null, null, null, 1.0, metrics, LoggerMetrics.SAMPLED_OUT);
+            disabledLogger = disabled;
+        }
+        return disabled;
+    }
+
+    private static boolean isKept(Object key, double rate) {
+        if (rate <= 0.0) {
+            return false;
+        }
+        // Spreads the bits of the hash code, so the keys that only differ by their last characters are sampled evenly
+        int hash = key == null ? 0 : key.hashCode();
+        hash *= 0x9E3779B9;
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        return (hash & 0x7FFFFFFFL) < (long) (rate * 0x80000000L);
+    }
+
+    /**
+     * Returns the counters of this logger, or <code>null</code> if the metrics are disabled. See {@link LoggerFactory}.
+     */
+    public LoggerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the number of messages dropped by the rate limit of this logger.
+     */
+    public long getRateLimitedCount() {
+        return rateLimiter == null ? 0 : rateLimiter.getDroppedCount();
+    }
+
+    /**
+     * Returns the number of messages dropped by the rate limit of this logger from a bucket shared by several call sites: the messages without any
+     * conversion or placeholder, and the templates seen once the maximum number of call sites has been reached. They are included in
+     * {@link #getRateLimitedCount()}.
+     */
+    public long getRateLimitedSharedCount() {
+        return rateLimiter == null ? 0 : rateLimiter.getSharedDroppedCount();
+    }
+
+    /**
+     * Returns the number of calls to {@link #sampled(Object)} that have dropped their key.
+     */
+    public long getSampledOutCount() {
+        return sampledOut.get();
     }
 
     public boolean isTraceEnabled() {
@@ -116,108 +303,1349 @@ public class Logger {
         return log.isFatalEnabled();
     }
 
+    public boolean isTraceEnabled(Marker marker) {
+        return markerLog != null ? markerLog.isEnabled(SimpleAndroidLog.LOG_LEVEL_TRACE, marker.getMask()) : isTraceEnabled();
+    }
+
+    public boolean isDebugEnabled(Marker marker) {
+        return markerLog != null ? markerLog.isEnabled(SimpleAndroidLog.LOG_LEVEL_DEBUG, marker.getMask()) : isDebugEnabled();
+    }
+
+    public boolean isInfoEnabled(Marker marker) {
+        return markerLog != null ? markerLog.isEnabled(SimpleAndroidLog.LOG_LEVEL_INFO, marker.getMask()) : isInfoEnabled();
+    }
+
+    public boolean isWarnEnabled(Marker marker) {
+        return markerLog != null ? markerLog.isEnabled(SimpleAndroidLog.LOG_LEVEL_WARN, marker.getMask()) : isWarnEnabled();
+    }
+
+    public boolean isErrorEnabled(Marker marker) {
+        return markerLog != null ? markerLog.isEnabled(SimpleAndroidLog.LOG_LEVEL_ERROR, marker.getMask()) : isErrorEnabled();
+    }
+
+    public boolean isFatalEnabled(Marker marker) {
+        return markerLog != null ? markerLog.isEnabled(SimpleAndroidLog.LOG_LEVEL_FATAL, marker.getMask()) : isFatalEnabled();
+    }
+
+    public EventBuilder atTrace(String message) {
+        if (isTraceEnabled()) {
+            return event(SimpleAndroidLog.LOG_LEVEL_TRACE, null, message);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_TRACE, 1);
+        }
+        return EventBuilder.NOP;
+    }
+
+    public EventBuilder atDebug(String message) {
+        if (isDebugEnabled()) {
+            return event(SimpleAndroidLog.LOG_LEVEL_DEBUG, null, message);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_DEBUG, 1);
+        }
+        return EventBuilder.NOP;
+    }
+
+    public EventBuilder atInfo(String message) {
+        if (isInfoEnabled()) {
+            return event(SimpleAndroidLog.LOG_LEVEL_INFO, null, message);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_INFO, 1);
+        }
+        return EventBuilder.NOP;
+    }
+
+    public EventBuilder atWarn(String message) {
+        if (isWarnEnabled()) {
+            return event(SimpleAndroidLog.LOG_LEVEL_WARN, null, message);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_WARN, 1);
+        }
+        return EventBuilder.NOP;
+    }
+
+    public EventBuilder atError(String message) {
+        if (isErrorEnabled()) {
+            return event(SimpleAndroidLog.LOG_LEVEL_ERROR, null, message);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_ERROR, 1);
+        }
+        return EventBuilder.NOP;
+    }
+
+    public EventBuilder atFatal(String message) {
+        if (isFatalEnabled()) {
+            return event(SimpleAndroidLog.LOG_LEVEL_FATAL, null, message);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_FATAL, 1);
+        }
+        return EventBuilder.NOP;
+    }
+
+    public EventBuilder atTrace(Marker marker, String message) {
+        if (isTraceEnabled(marker)) {
+            return event(SimpleAndroidLog.LOG_LEVEL_TRACE, marker, message);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_TRACE, 1);
+        }
+        return EventBuilder.NOP;
+    }
+
+    public EventBuilder atDebug(Marker marker, String message) {
+        if (isDebugEnabled(marker)) {
+            return event(SimpleAndroidLog.LOG_LEVEL_DEBUG, marker, message);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_DEBUG, 1);
+        }
+        return EventBuilder.NOP;
+    }
+
+    public EventBuilder atInfo(Marker marker, String message) {
+        if (isInfoEnabled(marker)) {
+            return event(SimpleAndroidLog.LOG_LEVEL_INFO, marker, message);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_INFO, 1);
+        }
+        return EventBuilder.NOP;
+    }
+
+    public EventBuilder atWarn(Marker marker, String message) {
+        if (isWarnEnabled(marker)) {
+            return event(SimpleAndroidLog.LOG_LEVEL_WARN, marker, message);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_WARN, 1);
+        }
+        return EventBuilder.NOP;
+    }
+
+    public EventBuilder atError(Marker marker, String message) {
+        if (isErrorEnabled(marker)) {
+            return event(SimpleAndroidLog.LOG_LEVEL_ERROR, marker, message);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_ERROR, 1);
+        }
+        return EventBuilder.NOP;
+    }
+
+    public EventBuilder atFatal(Marker marker, String message) {
+        if (isFatalEnabled(marker)) {
+            return event(SimpleAndroidLog.LOG_LEVEL_FATAL, marker, message);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_FATAL, 1);
+        }
+        return EventBuilder.NOP;
+    }
+
     public void trace(Object message, Object... params) {
         if (isTraceEnabled()) {
-            if (params != null && params.length > 0 && params[0] instanceof Throwable) {
-                trace(message, params[0], paramsWithoutFirst(params));
-            } else {
-                log.trace(message);
-            }
+            log(SimpleAndroidLog.LOG_LEVEL_TRACE, String.valueOf(message), params);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_TRACE, 1);
+        }
+    }
+
+    public void trace(String message) {
+        if (isTraceEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_TRACE, message, null, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_TRACE, 1);
+        }
+    }
+
+    public void trace(String message, Object arg) {
+        if (isTraceEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_TRACE, message, 1, arg, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_TRACE, 1);
+        }
+    }
+
+    public void trace(String message, Object arg1, Object arg2) {
+        if (isTraceEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_TRACE, message, 2, arg1, arg2, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_TRACE, 1);
+        }
+    }
+
+    public void trace(String message, Object arg1, Object arg2, Object arg3) {
+        if (isTraceEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_TRACE, message, 3, arg1, arg2, arg3);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_TRACE, 1);
         }
     }
 
     public void trace(String message, Throwable t, Object... params) {
         if (isTraceEnabled()) {
-            log.trace(String.format(message, params), t);
+            log(SimpleAndroidLog.LOG_LEVEL_TRACE, message, t, params, 0, params == null ? 0 : params.length);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_TRACE, 1);
+        }
+    }
+
+    public void trace(String message, Throwable t) {
+        if (isTraceEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_TRACE, message, t, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_TRACE, 1);
+        }
+    }
+
+    public void trace(String message, Throwable t, Object arg) {
+        if (isTraceEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_TRACE, message, t, 1, arg, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_TRACE, 1);
+        }
+    }
+
+    public void trace(String message, Throwable t, Object arg1, Object arg2) {
+        if (isTraceEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_TRACE, message, t, 2, arg1, arg2, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_TRACE, 1);
+        }
+    }
+
+    public void trace(String message, Throwable t, Object arg1, Object arg2, Object arg3) {
+        if (isTraceEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_TRACE, message, t, 3, arg1, arg2, arg3);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_TRACE, 1);
+        }
+    }
+
+    public void trace(MessageSupplier supplier) {
+        if (isTraceEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_TRACE, supplier, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_TRACE, 1);
+        }
+    }
+
+    public void trace(MessageSupplier supplier, Throwable t) {
+        if (isTraceEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_TRACE, supplier, t);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_TRACE, 1);
+        }
+    }
+
+    public void trace(MessageWriter writer) {
+        if (isTraceEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_TRACE, writer, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_TRACE, 1);
+        }
+    }
+
+    public void trace(MessageWriter writer, Throwable t) {
+        if (isTraceEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_TRACE, writer, t);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_TRACE, 1);
+        }
+    }
+
+    public void trace(Marker marker, String message) {
+        if (isTraceEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_TRACE, marker, message, null, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_TRACE, 1);
+        }
+    }
+
+    public void trace(Marker marker, String message, Object arg) {
+        if (isTraceEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_TRACE, marker, message, 1, arg, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_TRACE, 1);
+        }
+    }
+
+    public void trace(Marker marker, String message, Object arg1, Object arg2) {
+        if (isTraceEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_TRACE, marker, message, 2, arg1, arg2, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_TRACE, 1);
+        }
+    }
+
+    public void trace(Marker marker, String message, Throwable t) {
+        if (isTraceEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_TRACE, marker, message, t, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_TRACE, 1);
+        }
+    }
+
+    public void trace(Marker marker, String message, Object... params) {
+        if (isTraceEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_TRACE, marker, message, params);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_TRACE, 1);
         }
     }
 
     public void debug(String message, Object... params) {
         if (isDebugEnabled()) {
-            if (params != null && params.length > 0 && params[0] instanceof Throwable) {
-                debug(message, (Throwable) params[0], paramsWithoutFirst(params));
-            } else {
-                log.debug(String.format(message, params));
-            }
+            log(SimpleAndroidLog.LOG_LEVEL_DEBUG, message, params);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_DEBUG, 1);
+        }
+    }
+
+    public void debug(String message) {
+        if (isDebugEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_DEBUG, message, null, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_DEBUG, 1);
+        }
+    }
+
+    public void debug(String message, Object arg) {
+        if (isDebugEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_DEBUG, message, 1, arg, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_DEBUG, 1);
+        }
+    }
+
+    public void debug(String message, Object arg1, Object arg2) {
+        if (isDebugEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_DEBUG, message, 2, arg1, arg2, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_DEBUG, 1);
+        }
+    }
+
+    public void debug(String message, Object arg1, Object arg2, Object arg3) {
+        if (isDebugEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_DEBUG, message, 3, arg1, arg2, arg3);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_DEBUG, 1);
         }
     }
 
     public void debug(String message, Throwable t, Object... params) {
         if (isDebugEnabled()) {
-            log.debug(String.format(message, params), t);
+            log(SimpleAndroidLog.LOG_LEVEL_DEBUG, message, t, params, 0, params == null ? 0 : params.length);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_DEBUG, 1);
         }
     }
 
-    public void info(String message, Object... params) {
-        if (isInfoEnabled()) {
-            if (params != null && params.length > 0 && params[0] instanceof Throwable) {
-                info(message, (Throwable) params[0], paramsWithoutFirst(params));
-            } else {
-                log.info(String.format(message, params));
-            }
+    public void debug(String message, Throwable t) {
+        if (isDebugEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_DEBUG, message, t, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_DEBUG, 1);
         }
     }
 
-    public void info(String message, Throwable t, Object... params) {
-        if (isInfoEnabled()) {
-            log.info(String.format(message, params), t);
+    public void debug(String message, Throwable t, Object arg) {
+        if (isDebugEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_DEBUG, message, t, 1, arg, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_DEBUG, 1);
         }
     }
 
-    public void warn(String message, Object... params) {
-        if (isWarnEnabled()) {
-            if (params != null && params.length > 0 && params[0] instanceof Throwable) {
-                warn(message, (Throwable) params[0], paramsWithoutFirst(params));
-            } else {
-                log.warn(String.format(message, params));
-            }
+    public void debug(String message, Throwable t, Object arg1, Object arg2) {
+        if (isDebugEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_DEBUG, message, t, 2, arg1, arg2, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_DEBUG, 1);
         }
     }
 
-    public void warn(String message, Throwable t, Object... params) {
-        if (isWarnEnabled()) {
-            log.warn(String.format(message, params), t);
+    public void debug(String message, Throwable t, Object arg1, Object arg2, Object arg3) {
+        if (isDebugEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_DEBUG, message, t, 3, arg1, arg2, arg3);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_DEBUG, 1);
         }
     }
 
-    public void error(String message, Object... params) {
-        if (isErrorEnabled()) {
-            if (params != null && params.length > 0 && params[0] instanceof Throwable) {
-                error(message, (Throwable) params[0], paramsWithoutFirst(params));
-            } else {
-                log.error(String.format(message, params));
-            }
+    public void debug(MessageSupplier supplier) {
+        if (isDebugEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_DEBUG, supplier, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_DEBUG, 1);
         }
     }
 
-    public void error(String message, Throwable t, Object... params) {
-        if (isErrorEnabled()) {
-            log.error(String.format(message, params), t);
+    public void debug(MessageSupplier supplier, Throwable t) {
+        if (isDebugEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_DEBUG, supplier, t);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_DEBUG, 1);
         }
     }
 
-    public void fatal(String message, Object... params) {
-        if (isFatalEnabled()) {
-            if (params != null && params.length > 0 && params[0] instanceof Throwable) {
-                fatal(message, (Throwable) params[0], paramsWithoutFirst(params));
-            } else {
-                log.fatal(String.format(message, params));
-            }
+    public void debug(MessageWriter writer) {
+        if (isDebugEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_DEBUG, writer, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_DEBUG, 1);
         }
     }
 
-    public void fatal(String message, Throwable t, Object... params) {
-        if (isFatalEnabled()) {
-            log.fatal(String.format(message, params), t);
+    public void debug(MessageWriter writer, Throwable t) {
+        if (isDebugEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_DEBUG, writer, t);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_DEBUG, 1);
+        }
+    }
+
+    public void debug(Marker marker, String message) {
+        if (isDebugEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_DEBUG, marker, message, null, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_DEBUG, 1);
+        }
+    }
+
+    public void debug(Marker marker, String message, Object arg) {
+        if (isDebugEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_DEBUG, marker, message, 1, arg, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_DEBUG, 1);
+        }
+    }
+
+    public void debug(Marker marker, String message, Object arg1, Object arg2) {
+        if (isDebugEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_DEBUG, marker, message, 2, arg1, arg2, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_DEBUG, 1);
         }
     }
 
-    private static Object[] paramsWithoutFirst(Object... params) {
-        Object[] newParams = new Object[params.length - 1];
-        if (newParams.length > 0) {
-            System.arraycopy(params, 1, newParams, 0, newParams.length);
+    public void debug(Marker marker, String message, Throwable t) {
+        if (isDebugEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_DEBUG, marker, message, t, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_DEBUG, 1);
         }
-        return newParams;
     }
 
+    public void debug(Marker marker, String message, Object... params) {
+        if (isDebugEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_DEBUG, marker, message, params);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_DEBUG, 1);
+        }
+    }
+
+    public void info(String message, Object... params) {
+        if (isInfoEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_INFO, message, params);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_INFO, 1);
+        }
+    }
+
+    public void info(String message) {
+        if (isInfoEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_INFO, message, null, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_INFO, 1);
+        }
+    }
+
+    public void info(String message, Object arg) {
+        if (isInfoEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_INFO, message, 1, arg, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_INFO, 1);
+        }
+    }
+
+    public void info(String message, Object arg1, Object arg2) {
+        if (isInfoEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_INFO, message, 2, arg1, arg2, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_INFO, 1);
+        }
+    }
+
+    public void info(String message, Object arg1, Object arg2, Object arg3) {
+        if (isInfoEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_INFO, message, 3, arg1, arg2, arg3);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_INFO, 1);
+        }
+    }
+
+    public void info(String message, Throwable t, Object... params) {
+        if (isInfoEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_INFO, message, t, params, 0, params == null ? 0 : params.length);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_INFO, 1);
+        }
+    }
+
+    public void info(String message, Throwable t) {
+        if (isInfoEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_INFO, message, t, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_INFO, 1);
+        }
+    }
+
+    public void info(String message, Throwable t, Object arg) {
+        if (isInfoEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_INFO, message, t, 1, arg, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_INFO, 1);
+        }
+    }
+
+    public void info(String message, Throwable t, Object arg1, Object arg2) {
+        if (isInfoEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_INFO, message, t, 2, arg1, arg2, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_INFO, 1);
+        }
+    }
+
+    public void info(String message, Throwable t, Object arg1, Object arg2, Object arg3) {
+        if (isInfoEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_INFO, message, t, 3, arg1, arg2, arg3);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_INFO, 1);
+        }
+    }
+
+    public void info(MessageSupplier supplier) {
+        if (isInfoEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_INFO, supplier, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_INFO, 1);
+        }
+    }
+
+    public void info(MessageSupplier supplier, Throwable t) {
+        if (isInfoEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_INFO, supplier, t);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_INFO, 1);
+        }
+    }
+
+    public void info(MessageWriter writer) {
+        if (isInfoEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_INFO, writer, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_INFO, 1);
+        }
+    }
+
+    public void info(MessageWriter writer, Throwable t) {
+        if (isInfoEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_INFO, writer, t);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_INFO, 1);
+        }
+    }
+
+    public void info(Marker marker, String message) {
+        if (isInfoEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_INFO, marker, message, null, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_INFO, 1);
+        }
+    }
+
+    public void info(Marker marker, String message, Object arg) {
+        if (isInfoEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_INFO, marker, message, 1, arg, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_INFO, 1);
+        }
+    }
+
+    public void info(Marker marker, String message, Object arg1, Object arg2) {
+        if (isInfoEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_INFO, marker, message, 2, arg1, arg2, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_INFO, 1);
+        }
+    }
+
+    public void info(Marker marker, String message, Throwable t) {
+        if (isInfoEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_INFO, marker, message, t, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_INFO, 1);
+        }
+    }
+
+    public void info(Marker marker, String message, Object... params) {
+        if (isInfoEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_INFO, marker, message, params);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_INFO, 1);
+        }
+    }
+
+    public void warn(String message, Object... params) {
+        if (isWarnEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_WARN, message, params);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_WARN, 1);
+        }
+    }
+
+    public void warn(String message) {
+        if (isWarnEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_WARN, message, null, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_WARN, 1);
+        }
+    }
+
+    public void warn(String message, Object arg) {
+        if (isWarnEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_WARN, message, 1, arg, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_WARN, 1);
+        }
+    }
+
+    public void warn(String message, Object arg1, Object arg2) {
+        if (isWarnEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_WARN, message, 2, arg1, arg2, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_WARN, 1);
+        }
+    }
+
+    public void warn(String message, Object arg1, Object arg2, Object arg3) {
+        if (isWarnEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_WARN, message, 3, arg1, arg2, arg3);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_WARN, 1);
+        }
+    }
+
+    public void warn(String message, Throwable t, Object... params) {
+        if (isWarnEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_WARN, message, t, params, 0, params == null ? 0 : params.length);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_WARN, 1);
+        }
+    }
+
+    public void warn(String message, Throwable t) {
+        if (isWarnEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_WARN, message, t, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_WARN, 1);
+        }
+    }
+
+    public void warn(String message, Throwable t, Object arg) {
+        if (isWarnEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_WARN, message, t, 1, arg, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_WARN, 1);
+        }
+    }
+
+    public void warn(String message, Throwable t, Object arg1, Object arg2) {
+        if (isWarnEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_WARN, message, t, 2, arg1, arg2, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_WARN, 1);
+        }
+    }
+
+    public void warn(String message, Throwable t, Object arg1, Object arg2, Object arg3) {
+        if (isWarnEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_WARN, message, t, 3, arg1, arg2, arg3);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_WARN, 1);
+        }
+    }
+
+    public void warn(MessageSupplier supplier) {
+        if (isWarnEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_WARN, supplier, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_WARN, 1);
+        }
+    }
+
+    public void warn(MessageSupplier supplier, Throwable t) {
+        if (isWarnEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_WARN, supplier, t);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_WARN, 1);
+        }
+    }
+
+    public void warn(MessageWriter writer) {
+        if (isWarnEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_WARN, writer, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_WARN, 1);
+        }
+    }
+
+    public void warn(MessageWriter writer, Throwable t) {
+        if (isWarnEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_WARN, writer, t);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_WARN, 1);
+        }
+    }
+
+    public void warn(Marker marker, String message) {
+        if (isWarnEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_WARN, marker, message, null, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_WARN, 1);
+        }
+    }
+
+    public void warn(Marker marker, String message, Object arg) {
+        if (isWarnEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_WARN, marker, message, 1, arg, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_WARN, 1);
+        }
+    }
+
+    public void warn(Marker marker, String message, Object arg1, Object arg2) {
+        if (isWarnEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_WARN, marker, message, 2, arg1, arg2, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_WARN, 1);
+        }
+    }
+
+    public void warn(Marker marker, String message, Throwable t) {
+        if (isWarnEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_WARN, marker, message, t, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_WARN, 1);
+        }
+    }
+
+    public void warn(Marker marker, String message, Object... params) {
+        if (isWarnEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_WARN, marker, message, params);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_WARN, 1);
+        }
+    }
+
+    public void error(String message, Object... params) {
+        if (isErrorEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_ERROR, message, params);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_ERROR, 1);
+        }
+    }
+
+    public void error(String message) {
+        if (isErrorEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_ERROR, message, null, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_ERROR, 1);
+        }
+    }
+
+    public void error(String message, Object arg) {
+        if (isErrorEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_ERROR, message, 1, arg, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_ERROR, 1);
+        }
+    }
+
+    public void error(String message, Object arg1, Object arg2) {
+        if (isErrorEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_ERROR, message, 2, arg1, arg2, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_ERROR, 1);
+        }
+    }
+
+    public void error(String message, Object arg1, Object arg2, Object arg3) {
+        if (isErrorEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_ERROR, message, 3, arg1, arg2, arg3);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_ERROR, 1);
+        }
+    }
+
+    public void error(String message, Throwable t, Object... params) {
+        if (isErrorEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_ERROR, message, t, params, 0, params == null ? 0 : params.length);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_ERROR, 1);
+        }
+    }
+
+    public void error(String message, Throwable t) {
+        if (isErrorEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_ERROR, message, t, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_ERROR, 1);
+        }
+    }
+
+    public void error(String message, Throwable t, Object arg) {
+        if (isErrorEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_ERROR, message, t, 1, arg, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_ERROR, 1);
+        }
+    }
+
+    public void error(String message, Throwable t, Object arg1, Object arg2) {
+        if (isErrorEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_ERROR, message, t, 2, arg1, arg2, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_ERROR, 1);
+        }
+    }
+
+    public void error(String message, Throwable t, Object arg1, Object arg2, Object arg3) {
+        if (isErrorEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_ERROR, message, t, 3, arg1, arg2, arg3);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_ERROR, 1);
+        }
+    }
+
+    public void error(MessageSupplier supplier) {
+        if (isErrorEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_ERROR, supplier, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_ERROR, 1);
+        }
+    }
+
+    public void error(MessageSupplier supplier, Throwable t) {
+        if (isErrorEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_ERROR, supplier, t);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_ERROR, 1);
+        }
+    }
+
+    public void error(MessageWriter writer) {
+        if (isErrorEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_ERROR, writer, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_ERROR, 1);
+        }
+    }
+
+    public void error(MessageWriter writer, Throwable t) {
+        if (isErrorEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_ERROR, writer, t);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_ERROR, 1);
+        }
+    }
+
+    public void error(Marker marker, String message) {
+        if (isErrorEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_ERROR, marker, message, null, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_ERROR, 1);
+        }
+    }
+
+    public void error(Marker marker, String message, Object arg) {
+        if (isErrorEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_ERROR, marker, message, 1, arg, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_ERROR, 1);
+        }
+    }
+
+    public void error(Marker marker, String message, Object arg1, Object arg2) {
+        if (isErrorEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_ERROR, marker, message, 2, arg1, arg2, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_ERROR, 1);
+        }
+    }
+
+    public void error(Marker marker, String message, Throwable t) {
+        if (isErrorEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_ERROR, marker, message, t, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_ERROR, 1);
+        }
+    }
+
+    public void error(Marker marker, String message, Object... params) {
+        if (isErrorEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_ERROR, marker, message, params);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_ERROR, 1);
+        }
+    }
+
+    public void fatal(String message, Object... params) {
+        if (isFatalEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_FATAL, message, params);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_FATAL, 1);
+        }
+    }
+
+    public void fatal(String message) {
+        if (isFatalEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_FATAL, message, null, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_FATAL, 1);
+        }
+    }
+
+    public void fatal(String message, Object arg) {
+        if (isFatalEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_FATAL, message, 1, arg, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_FATAL, 1);
+        }
+    }
+
+    public void fatal(String message, Object arg1, Object arg2) {
+        if (isFatalEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_FATAL, message, 2, arg1, arg2, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_FATAL, 1);
+        }
+    }
+
+    public void fatal(String message, Object arg1, Object arg2, Object arg3) {
+        if (isFatalEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_FATAL, message, 3, arg1, arg2, arg3);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_FATAL, 1);
+        }
+    }
+
+    public void fatal(String message, Throwable t, Object... params) {
+        if (isFatalEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_FATAL, message, t, params, 0, params == null ? 0 : params.length);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_FATAL, 1);
+        }
+    }
+
+    public void fatal(String message, Throwable t) {
+        if (isFatalEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_FATAL, message, t, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_FATAL, 1);
+        }
+    }
+
+    public void fatal(String message, Throwable t, Object arg) {
+        if (isFatalEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_FATAL, message, t, 1, arg, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_FATAL, 1);
+        }
+    }
+
+    public void fatal(String message, Throwable t, Object arg1, Object arg2) {
+        if (isFatalEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_FATAL, message, t, 2, arg1, arg2, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_FATAL, 1);
+        }
+    }
+
+    public void fatal(String message, Throwable t, Object arg1, Object arg2, Object arg3) {
+        if (isFatalEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_FATAL, message, t, 3, arg1, arg2, arg3);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_FATAL, 1);
+        }
+    }
+
+    public void fatal(MessageSupplier supplier) {
+        if (isFatalEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_FATAL, supplier, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_FATAL, 1);
+        }
+    }
+
+    public void fatal(MessageSupplier supplier, Throwable t) {
+        if (isFatalEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_FATAL, supplier, t);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_FATAL, 1);
+        }
+    }
+
+    public void fatal(MessageWriter writer) {
+        if (isFatalEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_FATAL, writer, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_FATAL, 1);
+        }
+    }
+
+    public void fatal(MessageWriter writer, Throwable t) {
+        if (isFatalEnabled()) {
+            log(SimpleAndroidLog.LOG_LEVEL_FATAL, writer, t);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_FATAL, 1);
+        }
+    }
+
+    public void fatal(Marker marker, String message) {
+        if (isFatalEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_FATAL, marker, message, null, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_FATAL, 1);
+        }
+    }
+
+    public void fatal(Marker marker, String message, Object arg) {
+        if (isFatalEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_FATAL, marker, message, 1, arg, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_FATAL, 1);
+        }
+    }
+
+    public void fatal(Marker marker, String message, Object arg1, Object arg2) {
+        if (isFatalEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_FATAL, marker, message, 2, arg1, arg2, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_FATAL, 1);
+        }
+    }
+
+    public void fatal(Marker marker, String message, Throwable t) {
+        if (isFatalEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_FATAL, marker, message, t, 0, null, null, null);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_FATAL, 1);
+        }
+    }
+
+    public void fatal(Marker marker, String message, Object... params) {
+        if (isFatalEnabled(marker)) {
+            log(SimpleAndroidLog.LOG_LEVEL_FATAL, marker, message, params);
+        } else if (metrics != null) {
+            metrics.add(suppressedCounter, SimpleAndroidLog.LOG_LEVEL_FATAL, 1);
+        }
+    }
+
+    /**
+     * Logs the message with the given parameters. If the first parameter is a {@link Throwable}, it is logged as the cause and the other parameters
+     * format the message.
+     */
+    private void log(int level, String message, Object[] params) {
+        log(level, null, message, params);
+    }
+
+    private void log(int level, Marker marker, String message, Object[] params) {
+        if (params != null && params.length > 0 && params[0] instanceof Throwable) {
+            log(level, marker, message, (Throwable) params[0], params, 1, params.length - 1);
+        } else {
+            log(level, marker, message, null, params, 0, params == null ? 0 : params.length);
+        }
+    }
+
+    /**
+     * Logs the message with up to three parameters. If the first parameter is a {@link Throwable}, it is logged as the cause and the other
+     * parameters format the message.
+     */
+    private void log(int level, String message, int count, Object arg1, Object arg2, Object arg3) {
+        log(level, null, message, count, arg1, arg2, arg3);
+    }
+
+    private void log(int level, Marker marker, String message, int count, Object arg1, Object arg2, Object arg3) {
+        if (arg1 instanceof Throwable) {
+            log(level, marker, message, (Throwable) arg1, count - 1, arg2, arg3, null);
+        } else {
+            log(level, marker, message, null, count, arg1, arg2, arg3);
+        }
+    }
+
+    private void log(int level, String message, Throwable t, Object[] params, int offset, int count) {
+        log(level, null, message, t, params, offset, count);
+    }
+
+    private void log(int level, String message, Throwable t, int count, Object arg1, Object arg2, Object arg3) {
+        log(level, null, message, t, count, arg1, arg2, arg3);
+    }
+
+    /**
+     * Logs the message with the parameters of the array. The label of the marker, if any, is written before the message.
+     */
+    private void log(int level, Marker marker, String message, Throwable t, Object[] params, int offset, int count) {
+        if (isFiltered(level, marker, message)) {
+            return;
+        }
+        if (rateLimiter != null && !rateLimiter.tryAcquire(level, message)) {
+            if (metrics != null) {
+                metrics.add(LoggerMetrics.DROPPED, level, 1);
+            }
+            return;
+        }
+        if (binaryWriter != null) {
+            if (metrics != null) {
+                metrics.add(LoggerMetrics.EMITTED, level, 1);
+            }
+            binaryWriter.write(name, level, marker == null ? null : marker.getName(), message, t, params, offset, count);
+            return;
+        }
+        write(level, MessageFormatter.format(marker == null ? null : marker.getLabel(), message, params, offset, count), t);
+    }
+
+    /**
+     * Logs the message with up to three parameters. The label of the marker, if any, is written before the message.
+     */
+    private void log(int level, Marker marker, String message, Throwable t, int count, Object arg1, Object arg2, Object arg3) {
+        if (isFiltered(level, marker, message)) {
+            return;
+        }
+        if (rateLimiter != null && !rateLimiter.tryAcquire(level, message)) {
+            if (metrics != null) {
+                metrics.add(LoggerMetrics.DROPPED, level, 1);
+            }
+            return;
+        }
+        if (binaryWriter != null) {
+            if (metrics != null) {
+                metrics.add(LoggerMetrics.EMITTED, level, 1);
+            }
+            binaryWriter.write(name, level, marker == null ? null : marker.getName(), message, t, count, arg1, arg2, arg3);
+            return;
+        }
+        write(level, MessageFormatter.format(marker == null ? null : marker.getLabel(), message, count, arg1, arg2, arg3), t);
+    }
+
+    /**
+     * Logs the message produced by the supplier. The class of the supplier identifies the call site for the rate limit.
+     */
+    private void log(int level, MessageSupplier supplier, Throwable t) {
+        if (isFiltered(level, null, null)) {
+            return;
+        }
+        if (rateLimiter != null && !rateLimiter.tryAcquireKey(level, supplier.getClass().getName())) {
+            if (metrics != null) {
+                metrics.add(LoggerMetrics.DROPPED, level, 1);
+            }
+            return;
+        }
+        logProduced(level, String.valueOf(supplier.get()), t);
+    }
+
+    /**
+     * Logs the message written by the writer into the per-thread buffer. The class of the writer identifies the call site for the rate limit.
+     */
+    private void log(int level, MessageWriter writer, Throwable t) {
+        if (isFiltered(level, null, null)) {
+            return;
+        }
+        if (rateLimiter != null && !rateLimiter.tryAcquireKey(level, writer.getClass().getName())) {
+            if (metrics != null) {
+                metrics.add(LoggerMetrics.DROPPED, level, 1);
+            }
+            return;
+        }
+        logProduced(level, MessageFormatter.format(writer), t);
+    }
+
+    /**
+     * Logs a message produced on demand. In the binary format, the message is the parameter of a constant template rather than a template of its
+     * own, so the messages don't fill the template definitions.
+     */
+    private void logProduced(int level, String message, Throwable t) {
+        if (binaryWriter != null) {
+            if (metrics != null) {
+                metrics.add(LoggerMetrics.EMITTED, level, 1);
+            }
+            binaryWriter.write(name, level, null, BinaryLogWriter.PRODUCED_TEMPLATE, t, 1, message, null, null);
+            return;
+        }
+        write(level, message, t);
+    }
+
+    /**
+     * Starts a structured event. The message identifies the call site for the rate limit.
+     */
+    private EventBuilder event(int level, Marker marker, String message) {
+        if (isFiltered(level, marker, message)) {
+            return EventBuilder.NOP;
+        }
+        if (rateLimiter != null && !rateLimiter.tryAcquire(level, message)) {
+            if (metrics != null) {
+                metrics.add(LoggerMetrics.DROPPED, level, 1);
+            }
+            return EventBuilder.NOP;
+        }
+        EventBuilder event = StructuredEvent.begin(this, level, message, jsonWriter != null);
+        return marker == null ? event : event.kv("marker", marker.getName());
+    }
+
+    /**
+     * Is the event dropped by the filter rules of <code>SimpleAndroidLog</code>? The dropped events are counted as suppressed.
+     */
+    private boolean isFiltered(int level, Marker marker, String template) {
+        if (markerLog != null && markerLog.isFiltered(level, marker == null ? 0 : marker.getMask(), template)) {
+            if (metrics != null) {
+                metrics.add(suppressedCounter, level, 1);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Logs a structured event, encoded as a JSON object: as a line of the JSON file if there is one, else as the message of the event.
+     */
+    void logStructured(int level, JsonEncoder encoder, Throwable t) {
+        if (jsonWriter != null) {
+            if (metrics != null) {
+                metrics.add(LoggerMetrics.EMITTED, level, 1);
+                metrics.add(LoggerMetrics.RENDERED_CHARS, level, encoder.size());
+            }
+            jsonWriter.write(encoder, t != null || level >= SimpleAndroidLog.LOG_LEVEL_ERROR);
+            return;
+        }
+        logProduced(level, encoder.toString(), t);
+    }
+
+    /**
+     * Sends the formatted message to the underlying {@link Log}.
+     */
+    private void write(int level, String message, Throwable t) {
+        if (metrics != null) {
+            metrics.add(LoggerMetrics.EMITTED, level, 1);
+            metrics.add(LoggerMetrics.RENDERED_CHARS, level, message == null ? 0 : message.length());
+        }
+        switch (level) {
+            case SimpleAndroidLog.LOG_LEVEL_TRACE:
+                if (t == null) {
+                    log.trace(message);
+                } else {
+                    log.trace(message, t);
+                }
+                break;
+            case SimpleAndroidLog.LOG_LEVEL_DEBUG:
+                if (t == null) {
+                    log.debug(message);
+                } else {
+                    log.debug(message, t);
+                }
+                break;
+            case SimpleAndroidLog.LOG_LEVEL_INFO:
+                if (t == null) {
+                    log.info(message);
+                } else {
+                    log.info(message, t);
+                }
+                break;
+            case SimpleAndroidLog.LOG_LEVEL_WARN:
+                if (t == null) {
+                    log.warn(message);
+                } else {
+                    log.warn(message, t);
+                }
+                break;
+            case SimpleAndroidLog.LOG_LEVEL_ERROR:
+                if (t == null) {
+                    log.error(message);
+                } else {
+                    log.error(message, t);
+                }
+                break;
+            case SimpleAndroidLog.LOG_LEVEL_FATAL:
+                if (t == null) {
+                    log.fatal(message);
+                } else {
+                    log.fatal(message, t);
+                }
+                break;
+        }
+    }
+
+    // -------------------------------------------------------- DisabledLog
+
+    /**
+     * The log of the sampled out messages: all its levels are disabled.
+     */
+    private static final class DisabledLog implements Log {
+
+        static final DisabledLog INSTANCE = new DisabledLog();
+
+        public boolean isTraceEnabled() {
+            return false;
+        }
+
+        public boolean isDebugEnabled() {
+            return false;
+        }
+
+        public boolean isInfoEnabled() {
+            return false;
+        }
+
+        public boolean isWarnEnabled() {
+            return false;
+        }
+
+        public boolean isErrorEnabled() {
+            return false;
+        }
+
+        public boolean isFatalEnabled() {
+            return false;
+        }
+
+        public void trace(Object message) {
+        }
+
+        public void trace(Object message, Throwable t) {
+        }
+
+        public void debug(Object message) {
+        }
+
+        public void debug(Object message, Throwable t) {
+        }
+
+        public void info(Object message) {
+        }
+
+        public void info(Object message, Throwable t) {
+        }
+
+        public void warn(Object message) {
+        }
+
+        public void warn(Object message, Throwable t) {
+        }
+
+        public void error(Object message) {
+        }
+
+        public void error(Object message, Throwable t) {
+        }
+
+        public void fatal(Object message) {
+        }
+
+        public void fatal(Object message, Throwable t) {
+        }
+    }
 }
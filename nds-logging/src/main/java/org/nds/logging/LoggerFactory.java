@@ -1,63 +1,395 @@
 package org.nds.logging;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.AndroidLogFactory;
+import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.commons.logging.PrecomputedLogConfiguration;
+import org.apache.commons.logging.impl.AndroidLogger;
+import org.apache.commons.logging.impl.AsyncLog;
+import org.apache.commons.logging.impl.AsyncLogDispatcher;
+import org.apache.commons.logging.impl.ConfigurationWatcher;
+import org.apache.commons.logging.impl.SimpleLog;
 
 /**
  * <p>
  * Factory for creating {@link Logger} instances
  * </p>
+ * <p>
+ * The messages can be written on a background thread instead of the caller's thread, with the following properties. They are read from the system
+ * properties, then from <b>androidlog.properties</b> (prefix <i>org.apache.commons.logging.androidlog.</i>) on Android, or from
+ * <b>simplelog.properties</b> (prefix <i>org.apache.commons.logging.simplelog.</i>) on any other java application:
+ * </p>
+ * <ul>
+ * <li>&lt;prefix&gt;async - Set to true to write the messages on a background thread. Defaults to false. The "durable" sink then waits for the
+ * messages to be on the disk on the background thread, not on the thread logging them.</li>
+ * <li>&lt;prefix&gt;asyncBufferSize - The maximum number of messages waiting to be written. Defaults to 1024.</li>
+ * <li>&lt;prefix&gt;asyncDiscardWhenFull - Set to true to drop the messages logged while the buffer is full, instead of waiting for the background
+ * thread to write the oldest ones. Defaults to false.</li>
+ * <li>&lt;prefix&gt;reloadInterval - The interval in milliseconds between two checks of the properties file: when it has been modified, the levels of
+ * the existing loggers are updated. The file can only be watched when it is found on the file system. Defaults to 0, which disables the reload. On
+ * Android, the whole configuration of <code>SimpleAndroidLog</code> is reloaded.</li>
+ * <li>&lt;prefix&gt;binaryFile - The path of a file to which the enabled messages are written in a compact binary format, instead of being formatted
+ * and written to the log. The file is rendered to text by {@link BinaryLogDecoder}. Not set by default.</li>
+ * <li>&lt;prefix&gt;jsonFile - The path of a file to which the structured events of {@link Logger#atInfo(String)} and the other
+ * <code>atXxx()</code> methods are written, one JSON object per line, instead of being written to the log. Not set by default.</li>
+ * <li>&lt;prefix&gt;rateLimit - The maximum number of messages logged per second by each call site (message template and level) of a logger, the
+ * others being dropped before they are formatted. Can be set for a logger or a package with &lt;prefix&gt;rateLimit.xxxxx. Defaults to 0, which
+ * disables the limit.</li>
+ * <li>&lt;prefix&gt;rateLimitBurst - The number of messages a call site that has been quiet can log at once, above the rate limit. Defaults to the
+ * rate limit.</li>
+ * <li>&lt;prefix&gt;sampleRate - The fraction of the keys kept by {@link Logger#sampled(Object)}, from 0 to 1. Can be set for a logger or a package
+ * with &lt;prefix&gt;sampleRate.xxxxx. Defaults to 1, which keeps all the keys.</li>
+ * <li>&lt;prefix&gt;metrics - Set to true to count the events of each logger by level, see {@link LoggerMetrics}. Defaults to false.</li>
+ * <li>&lt;prefix&gt;metricsJmx - With the metrics, set to true to publish them as the MBean <code>org.nds.logging:type=Metrics</code>. Defaults to
+ * true, ignored on Android.</li>
+ * <li>&lt;prefix&gt;metricsPort - With the metrics, the local port on which they are served over HTTP in the Prometheus text format. Defaults to 0,
+ * which disables the HTTP endpoint.</li>
+ * </ul>
+ * <p>
+ * The rate limit and the sample rate of a logger are read when it is created.
+ * </p>
  * 
  * @author Nicolas Dos Santos
  * 
  */
 public class LoggerFactory {
 
+    private final boolean androidLoggable;
+
+    /** The prefix of the properties used to configure the Android log */
+    private static final String ANDROID_LOG_PREFIX = "org.apache.commons.logging.androidlog.";
+
+    /** The prefix of the properties used to configure the simple log */
+    private static final String SIMPLE_LOG_PREFIX = "org.apache.commons.logging.simplelog.";
+
+    /** The prefix of the configuration properties of the current platform */
+    private final String prefix;
+
+    /** Properties loaded from androidlog.properties or simplelog.properties, replaced as a whole when the file is reloaded */
+    private volatile Properties properties = new Properties();
+
+    /** The location of the properties file, if found */
+    private URL configurationUrl = null;
+
+    /** Writes the messages in the binary format, or <code>null</code> if they are written to the log */
+    private BinaryLogWriter binaryWriter = null;
+
+    /** Writes the structured events as JSON lines, or <code>null</code> if they are written to the log */
+    private JsonLogWriter jsonWriter = null;
+
+    /** The dispatcher writing the messages in the background, or <code>null</code> if the messages are written synchronously */
+    private AsyncLogDispatcher dispatcher = null;
+
+    /** Are the events of the loggers counted? */
+    private boolean metricsEnabled = false;
+
     /**
-     * Instance of LoggerFactory singleton
+     * The {@link Logger} instances that have already been created, keyed by logger name. The lookups never lock, and a concurrent creation of the
+     * same logger is resolved with <code>putIfAbsent</code>.
      */
-    private static LoggerFactory factory = null;
-
-    private static boolean androidLoggable = false;
+    private final ConcurrentHashMap<String, Logger> instances = new ConcurrentHashMap<String, Logger>();
 
     /**
-     * The {@link Logger} instances that have already been created, keyed by logger name.
+     * Instance of LoggerFactory singleton, created when the class is initialized so that no lock is needed to get it.
      */
-    private final Map<String, Logger> instances = new HashMap<String, Logger>();
+    private static final LoggerFactory factory = new LoggerFactory();
 
     private LoggerFactory() {
+        boolean onAndroid = false;
         try {
             if (android.os.Build.ID != null) {
-                androidLoggable = true;
+                onAndroid = true;
             }
         } catch (Throwable t) {
         }
+        androidLoggable = onAndroid;
+
+        if (androidLoggable) {
+            prefix = ANDROID_LOG_PREFIX;
+            PrecomputedLogConfiguration precomputed = AndroidLogFactory.getPrecomputedConfiguration();
+            if (precomputed != null) {
+                // androidlog.properties has been read at build time
+                properties.putAll(precomputed.getLogProperties());
+            } else {
+                loadProperties("androidlog.properties");
+            }
+        } else {
+            prefix = SIMPLE_LOG_PREFIX;
+            loadProperties("simplelog.properties");
+        }
+
+        if (getBooleanProperty("async", false)) {
+            int bufferSize = getIntProperty("asyncBufferSize", AsyncLogDispatcher.DEFAULT_BUFFER_SIZE);
+            dispatcher = new AsyncLogDispatcher(bufferSize, getBooleanProperty("asyncDiscardWhenFull", false));
+            dispatcher.start();
+        }
+
+        String binaryFile = getStringProperty("binaryFile");
+        if (binaryFile != null && binaryFile.trim().length() > 0) {
+            try {
+                binaryWriter = new BinaryLogWriter(new File(binaryFile.trim()));
+            } catch (IOException e) {
+                System.err.println("Unable to open the binary log file " + binaryFile + ": " + e.getMessage());
+            }
+        }
+
+        String jsonFile = getStringProperty("jsonFile");
+        if (jsonFile != null && jsonFile.trim().length() > 0) {
+            try {
+                jsonWriter = new JsonLogWriter(new File(jsonFile.trim()));
+            } catch (IOException e) {
+                System.err.println("Unable to open the JSON log file " + jsonFile + ": " + e.getMessage());
+            }
+        }
+
+        metricsEnabled = getBooleanProperty("metrics", false);
+        if (metricsEnabled) {
+            if (!androidLoggable && getBooleanProperty("metricsJmx", true)) {
+                try {
+                    MetricsMBean.register(this);
+                } catch (Throwable t) {
+                    System.err.println("Unable to register the logging metrics MBean: " + t);
+                }
+            }
+            int metricsPort = getIntProperty("metricsPort", 0);
+            if (metricsPort > 0) {
+                try {
+                    new MetricsHttpServer(metricsPort, this).start();
+                } catch (IOException e) {
+                    System.err.println("Unable to serve the logging metrics on port " + metricsPort + ": " + e.getMessage());
+                }
+            }
+        }
+
+        // On Android, SimpleAndroidLog watches androidlog.properties itself
+        File configurationFile = ConfigurationWatcher.toFile(configurationUrl);
+        int reloadInterval = getIntProperty("reloadInterval", 0);
+        if (!androidLoggable && reloadInterval > 0 && configurationFile != null) {
+            ConfigurationWatcher watcher = new ConfigurationWatcher(configurationFile, reloadInterval, new ConfigurationWatcher.Listener() {
+                public void configurationChanged(Properties newProperties) {
+                    properties = newProperties;
+                    updateSimpleLogLevels();
+                }
+            });
+            watcher.start();
+        }
+    }
+
+    private void loadProperties(String fileName) {
+        ClassLoader classLoader = LoggerFactory.class.getClassLoader();
+        configurationUrl = classLoader == null ? ClassLoader.getSystemResource(fileName) : classLoader.getResource(fileName);
+        if (configurationUrl != null) {
+            InputStream stream = null;
+            try {
+                stream = configurationUrl.openStream();
+                properties.load(stream);
+            } catch (IOException e) {
+                System.err.println("Unable to read " + fileName + ": " + e.getMessage());
+            } finally {
+                try {
+                    if (stream != null) {
+                        stream.close();
+                    }
+                } catch (IOException e) {
+                    ; // Ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the levels of the reloaded simplelog.properties to the existing loggers.
+     */
+    private void updateSimpleLogLevels() {
+        for (Logger logger : instances.values()) {
+            updateSimpleLogLevel(logger.getName(), logger.getLog());
+        }
+    }
+
+    /**
+     * Sets the level of a <code>SimpleLog</code> from the current simplelog.properties. <code>SimpleLog</code> resolves its level from the
+     * properties it has read when its class was initialized, which are never reloaded.
+     */
+    private void updateSimpleLogLevel(String name, Log log) {
+        if (log instanceof AsyncLog) {
+            log = ((AsyncLog) log).getLog();
+        }
+        if (log instanceof SimpleLog) {
+            ((SimpleLog) log).setLevel(getSimpleLogLevel(name));
+        }
+    }
+
+    /**
+     * Resolves the level of a logger as <code>SimpleLog</code> does: from the level of the logger, of its closest package, or the default level.
+     */
+    private int getSimpleLogLevel(String name) {
+        String lvl = getStringProperty("log." + name);
+        int i = String.valueOf(name).lastIndexOf(".");
+        while (null == lvl && i > -1) {
+            name = name.substring(0, i);
+            lvl = getStringProperty("log." + name);
+            i = String.valueOf(name).lastIndexOf(".");
+        }
+        if (null == lvl) {
+            lvl = getStringProperty("defaultlog");
+        }
+
+        if ("all".equalsIgnoreCase(lvl)) {
+            return SimpleLog.LOG_LEVEL_ALL;
+        } else if ("trace".equalsIgnoreCase(lvl)) {
+            return SimpleLog.LOG_LEVEL_TRACE;
+        } else if ("debug".equalsIgnoreCase(lvl)) {
+            return SimpleLog.LOG_LEVEL_DEBUG;
+        } else if ("warn".equalsIgnoreCase(lvl)) {
+            return SimpleLog.LOG_LEVEL_WARN;
+        } else if ("error".equalsIgnoreCase(lvl)) {
+            return SimpleLog.LOG_LEVEL_ERROR;
+        } else if ("fatal".equalsIgnoreCase(lvl)) {
+            return SimpleLog.LOG_LEVEL_FATAL;
+        } else if ("off".equalsIgnoreCase(lvl)) {
+            return SimpleLog.LOG_LEVEL_OFF;
+        }
+        return SimpleLog.LOG_LEVEL_INFO;
+    }
+
+    private String getStringProperty(String name) {
+        String prop = null;
+        try {
+            prop = System.getProperty(prefix + name);
+        } catch (SecurityException e) {
+            ; // Ignore
+        }
+        return (prop == null) ? properties.getProperty(prefix + name) : prop;
+    }
+
+    private boolean getBooleanProperty(String name, boolean dephault) {
+        String prop = getStringProperty(name);
+        return (prop == null) ? dephault : "true".equalsIgnoreCase(prop.trim());
+    }
+
+    private int getIntProperty(String name, int dephault) {
+        String prop = getStringProperty(name);
+        if (prop != null) {
+            try {
+                return Integer.parseInt(prop.trim());
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid value for " + prefix + name + ": " + prop);
+            }
+        }
+        return dephault;
+    }
+
+    private double getDoubleValue(String name, String value, double dephault) {
+        if (value != null) {
+            try {
+                return Double.parseDouble(value.trim());
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid value for " + prefix + name + ": " + value);
+            }
+        }
+        return dephault;
     }
 
-    private final synchronized static LoggerFactory getInstance() {
-        if (factory == null) {
-            factory = new LoggerFactory();
+    /**
+     * Returns the value of a property for a logger: the value set for the logger, for its closest package, or the value of the property itself.
+     */
+    private String getLoggerProperty(String property, String name) {
+        String value = getStringProperty(property + "." + name);
+        int i = name.lastIndexOf(".");
+        while (null == value && i > -1) {
+            name = name.substring(0, i);
+            value = getStringProperty(property + "." + name);
+            i = name.lastIndexOf(".");
         }
+        return (value == null) ? getStringProperty(property) : value;
+    }
+
+    private final static LoggerFactory getInstance() {
         return factory;
     }
 
     public final static Logger getLogger(String name) {
-        Logger logger = getInstance().instances.get(name);
+        LoggerFactory factory = getInstance();
+        Logger logger = factory.instances.get(name);
         if (logger == null) {
-            if (androidLoggable) {
-                logger = new Logger(name, AndroidLogFactory.getLog(name));
-            } else {
-                logger = new Logger(name, LogFactory.getLog(name));
+            Properties current = factory.properties;
+            logger = factory.newLogger(name);
+            Logger existing = factory.instances.putIfAbsent(name, logger);
+            if (existing != null) {
+                // Another thread created the same logger first
+                logger = existing;
+            } else if (factory.properties != current) {
+                // The properties have been reloaded while the logger was created, maybe after the existing loggers have been updated
+                factory.updateSimpleLogLevel(name, logger.getLog());
             }
-            getInstance().instances.put(name, logger);
         }
         return logger;
     }
 
+    private Logger newLogger(String name) {
+        Log log;
+        if (androidLoggable) {
+            log = AndroidLogFactory.getLog(name);
+        } else {
+            log = LogFactory.getLog(name);
+            updateSimpleLogLevel(name, log);
+        }
+        final LoggerMetrics metrics = metricsEnabled ? new LoggerMetrics() : null;
+        if (dispatcher != null && metrics != null) {
+            log = new AsyncLog(log, dispatcher) {
+                @Override
+                protected void dropped(int level) {
+                    // Counted as logged by the Logger before it was handed over to the dispatcher
+                    metrics.add(LoggerMetrics.EMITTED, level, -1);
+                    metrics.add(LoggerMetrics.DROPPED, level, 1);
+                }
+            };
+        } else if (dispatcher != null) {
+            log = new AsyncLog(log, dispatcher);
+        }
+        RateLimiter rateLimiter = null;
+        double rateLimit = getDoubleValue("rateLimit", getLoggerProperty("rateLimit", name), 0);
+        if (rateLimit > 0) {
+            int burst = getIntProperty("rateLimitBurst", (int) Math.max(1, Math.ceil(rateLimit)));
+            rateLimiter = new RateLimiter(rateLimit, burst);
+        }
+        double sampleRate = getDoubleValue("sampleRate", getLoggerProperty("sampleRate", name), 1.0);
+        return new Logger(name, log, binaryWriter, jsonWriter, rateLimiter, sampleRate, metrics);
+    }
+
     public final static Logger getLogger(Class<?> clazz) {
         return getLogger(clazz.getName());
     }
+
+    /**
+     * Returns the loggers created so far.
+     */
+    Collection<Logger> getLoggers() {
+        return instances.values();
+    }
+
+    /**
+     * Resolves the levels of the loggers again, on their next level check. On Android, the levels read from <code>android.util.Log</code> are cached
+     * by the loggers: call this method once they have been changed with <code>setprop log.tag.&lt;TAG&gt; &lt;LEVEL&gt;</code>.
+     */
+    public final static void refreshLevels() {
+        AndroidLogger.refreshLevels();
+    }
+
+    /**
+     * Returns the dispatcher writing the messages on a background thread, to monitor its queue depth and throughput.
+     * 
+     * @return the dispatcher, or <code>null</code> if the messages are written on the caller's thread
+     */
+    public final static AsyncLogDispatcher getAsyncDispatcher() {
+        return getInstance().dispatcher;
+    }
 }
@@ -0,0 +1,113 @@
+package org.nds.logging;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.logging.impl.SimpleAndroidLog;
+
+/**
+ * <p>
+ * The counters of a {@link Logger}, by level: the events logged, the events suppressed because their level is disabled, the characters of the
+ * rendered messages, the events dropped by the rate limit or because the asynchronous buffer was full, and the events of the keys dropped by
+ * {@link Logger#sampled(Object)}.
+ * </p>
+ * <p>
+ * The counters are striped: each thread adds to the stripe selected by its id, each stripe having its own cache lines, so the threads logging at
+ * the same time don't contend on the same counter. A read adds the stripes together.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+public final class LoggerMetrics {
+
+    /** The events logged */
+    static final int EMITTED = 0;
+
+    /** The events suppressed because their level is disabled */
+    static final int SUPPRESSED = 1;
+
+    /** The characters of the rendered messages */
+    static final int RENDERED_CHARS = 2;
+
+    /** The events dropped by the rate limit or because the asynchronous buffer was full */
+    static final int DROPPED = 3;
+
+    /** The events of the keys dropped by {@link Logger#sampled(Object)} */
+    static final int SAMPLED_OUT = 4;
+
+    private static final int COUNTERS = 5;
+
+    /** The levels, from LOG_LEVEL_TRACE to LOG_LEVEL_FATAL */
+    private static final int LEVELS = SimpleAndroidLog.LOG_LEVEL_FATAL - SimpleAndroidLog.LOG_LEVEL_TRACE + 1;
+
+    /** The number of longs of a stripe: its counters, padded to whole cache lines with a cache line of margin */
+    private static final int STRIDE = ((COUNTERS * LEVELS + 7) & ~7) + 8;
+
+    private static final int STRIPES = stripes();
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * STRIDE);
+
+    LoggerMetrics() {
+    }
+
+    private static int stripes() {
+        int processors = Math.min(Runtime.getRuntime().availableProcessors(), 16);
+        int stripes = 1;
+        while (stripes < processors) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    void add(int counter, int level, long delta) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        cells.getAndAdd(stripe * STRIDE + counter * LEVELS + level - SimpleAndroidLog.LOG_LEVEL_TRACE, delta);
+    }
+
+    long get(int counter, int level) {
+        if (level < SimpleAndroidLog.LOG_LEVEL_TRACE || level > SimpleAndroidLog.LOG_LEVEL_FATAL) {
+            return 0;
+        }
+        int offset = counter * LEVELS + level - SimpleAndroidLog.LOG_LEVEL_TRACE;
+        long sum = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            sum += cells.get(stripe * STRIDE + offset);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the number of events logged at the given level, one of the <code>SimpleAndroidLog.LOG_LEVEL_XXX</code> constants.
+     */
+    public long getEmitted(int level) {
+        return get(EMITTED, level);
+    }
+
+    /**
+     * Returns the number of events of the given level suppressed because the level is disabled.
+     */
+    public long getSuppressed(int level) {
+        return get(SUPPRESSED, level);
+    }
+
+    /**
+     * Returns the number of characters of the messages rendered at the given level.
+     */
+    public long getRenderedChars(int level) {
+        return get(RENDERED_CHARS, level);
+    }
+
+    /**
+     * Returns the number of events of the given level dropped by the rate limit or because the asynchronous buffer was full. They are not
+     * included in {@link #getEmitted(int)}.
+     */
+    public long getDropped(int level) {
+        return get(DROPPED, level);
+    }
+
+    /**
+     * Returns the number of events of the given level logged for the keys dropped by {@link Logger#sampled(Object)}.
+     */
+    public long getSampledOut(int level) {
+        return get(SAMPLED_OUT, level);
+    }
+}
@@ -0,0 +1,85 @@
+package org.nds.logging;
+
+import org.apache.commons.logging.impl.DiagnosticContext;
+
+/**
+ * <p>
+ * The mapped diagnostic context of the current thread: keys and values, such as a request id or a user id, added to the events logged by the
+ * thread instead of being concatenated to each message.
+ * </p>
+ *
+ * <pre>
+ * MDC.put(&quot;requestId&quot;, requestId);
+ * try {
+ *     logger.info(&quot;Request received&quot;);
+ * } finally {
+ *     MDC.remove(&quot;requestId&quot;);
+ * }
+ * </pre>
+ * <p>
+ * The keys listed by the <code>mdcKeys</code> property of <code>SimpleAndroidLog</code> are written with its messages, and all the keys
+ * are written with the structured events of the JSON file (see {@link LoggerFactory}). The asynchronous loggers capture the context when the event
+ * is logged.
+ * </p>
+ * <p>
+ * A context is immutable and is replaced by a copy when a key is added or removed, so it is captured in constant time. To hand it over to another
+ * thread, such as a worker of a thread pool, capture it with {@link #getContext()} and attach it with {@link #setContext(DiagnosticContext)}.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+public final class MDC {
+
+    private MDC() {
+    }
+
+    /**
+     * Sets the value of a key in the context of the current thread.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value, <code>null</code> to remove the key
+     */
+    public static void put(String key, String value) {
+        DiagnosticContext.put(key, value);
+    }
+
+    /**
+     * Returns the value of a key in the context of the current thread, or <code>null</code> if there is none.
+     */
+    public static String get(String key) {
+        return DiagnosticContext.current().get(key);
+    }
+
+    /**
+     * Removes a key from the context of the current thread.
+     */
+    public static void remove(String key) {
+        DiagnosticContext.remove(key);
+    }
+
+    /**
+     * Removes all the keys from the context of the current thread.
+     */
+    public static void clear() {
+        DiagnosticContext.clear();
+    }
+
+    /**
+     * Returns the context of the current thread. The context is immutable: it is not affected by the later changes.
+     */
+    public static DiagnosticContext getContext() {
+        return DiagnosticContext.current();
+    }
+
+    /**
+     * Replaces the context of the current thread, such as by a context captured on another thread.
+     *
+     * @param context
+     *            the new context, <code>null</code> for the empty context
+     */
+    public static void setContext(DiagnosticContext context) {
+        DiagnosticContext.attach(context);
+    }
+}
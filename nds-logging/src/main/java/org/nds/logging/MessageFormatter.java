@@ -0,0 +1,644 @@
+package org.nds.logging;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Formattable;
+import java.util.Formatter;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Renders the messages of {@link Logger} from pre-parsed templates.
+ * </p>
+ * <p>
+ * A message is parsed once into a {@link MessageTemplate} and kept in a bounded cache keyed by the message string, so the same template is never
+ * parsed twice while it stays in the cache. When the cache is full, a template chosen from the hash of the new message is replaced by it, so the
+ * templates logged often end up cached even after many distinct messages. The messages without any conversion, often built dynamically, are not
+ * cached: they are only scanned. Two syntaxes are supported:
+ * </p>
+ * <ul>
+ * <li>The <code>java.util.Formatter</code> syntax (<code>%s</code>, <code>%d</code>, <code>%.2f</code>, ...), used by <code>String.format</code>.
+ * The simple conversions (<code>%s</code>, <code>%d</code>, <code>%%</code> and <code>%n</code>) are rendered directly, any other conversion is
+ * delegated to a per-thread <code>Formatter</code>.</li>
+ * <li>The <code>{}</code> placeholders, each one being replaced by the next parameter. This syntax is only recognized when the message contains no
+ * <code>%</code> character, so that the existing messages keep their meaning. A placeholder can be escaped with a backslash: <code>\{}</code>.</li>
+ * </ul>
+ * <p>
+ * The result is rendered into a per-thread reusable <code>StringBuilder</code>, so an enabled log call only allocates the resulting
+ * <code>String</code>. The behaviour is the same as <code>String.format</code>, including the exceptions thrown for an invalid message.
+ * </p>
+ * <p>
+ * The maximum number of cached templates can be set with the system property <code>org.nds.logging.templateCacheSize</code> (defaults to 512).
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+final class MessageFormatter {
+
+    /** The system property used to configure the maximum number of cached templates */
+    static final String CACHE_SIZE_PROPERTY = "org.nds.logging.templateCacheSize";
+
+    /** The default maximum number of cached templates */
+    static final int DEFAULT_CACHE_SIZE = 512;
+
+    /** Messages longer than this are parsed but not cached: they are most likely built dynamically */
+    static final int MAX_CACHED_MESSAGE_LENGTH = 1024;
+
+    /** A per-thread builder growing beyond this capacity is released after use */
+    private static final int MAX_BUFFER_CAPACITY = 4096;
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    /** The templates already parsed, keyed by message */
+    private static final ConcurrentHashMap<String, MessageTemplate> templates = new ConcurrentHashMap<String, MessageTemplate>();
+
+    /** The number of cached templates, cheaper to read than the size of the map */
+    private static final AtomicInteger templateCount = new AtomicInteger();
+
+    private static final int cacheSize = getCacheSize();
+
+    /** The maximum number of templates skipped before the one replaced, when the cache is full: a power of 2 */
+    private static final int MAX_EVICTION_SKIP = 16;
+
+    private static final ThreadLocal<Context> contexts = new ThreadLocal<Context>() {
+        @Override
+        protected Context initialValue() {
+            return new Context();
+        }
+    };
+
+    /** The default locale for which {@link #asciiDigits} has been computed */
+    private static volatile Locale digitsLocale;
+
+    /** Whether the default locale formats the integers with the ASCII digits */
+    private static volatile boolean asciiDigits;
+
+    private MessageFormatter() {
+    }
+
+    private static int getCacheSize() {
+        String size = null;
+        try {
+            size = System.getProperty(CACHE_SIZE_PROPERTY);
+        } catch (SecurityException e) {
+            ; // Ignore
+        }
+        if (size != null) {
+            try {
+                return Integer.parseInt(size.trim());
+            } catch (NumberFormatException e) {
+                ; // Use the default size
+            }
+        }
+        return DEFAULT_CACHE_SIZE;
+    }
+
+    /**
+     * Formats the message with the parameters <code>params[offset]</code> to <code>params[offset + count - 1]</code>, as
+     * <code>String.format(message, params)</code> would.
+     *
+     * @param message
+     *            the message template
+     * @param params
+     *            the parameters referenced by the message, may be <code>null</code> if <code>count</code> is 0
+     * @param offset
+     *            the index of the first parameter
+     * @param count
+     *            the number of parameters
+     * @return the formatted message
+     */
+    static String format(String message, Object[] params, int offset, int count) {
+        return format(null, message, params, offset, count);
+    }
+
+    /**
+     * Formats the message with the parameters <code>params[offset]</code> to <code>params[offset + count - 1]</code>, after the given prefix.
+     *
+     * @param prefix
+     *            the text written before the message, such as the label of a marker, or <code>null</code>
+     * @param message
+     *            the message template
+     * @param params
+     *            the parameters referenced by the message, may be <code>null</code> if <code>count</code> is 0
+     * @param offset
+     *            the index of the first parameter
+     * @param count
+     *            the number of parameters
+     * @return the formatted message
+     */
+    static String format(String prefix, String message, Object[] params, int offset, int count) {
+        MessageTemplate template = getTemplate(message);
+        if (template.isConstant() && prefix == null) {
+            return message;
+        }
+
+        Context ctx = acquire();
+        try {
+            if (prefix != null) {
+                ctx.builder.append(prefix);
+            }
+            ctx.setArguments(params, offset, count, null, null, null);
+            template.render(ctx);
+            return ctx.builder.toString();
+        } finally {
+            ctx.release();
+        }
+    }
+
+    /**
+     * Formats the message with up to three parameters, without allocating an array to hold them.
+     *
+     * @param message
+     *            the message template
+     * @param count
+     *            the number of parameters, from 0 to 3
+     * @param arg0
+     *            the first parameter
+     * @param arg1
+     *            the second parameter
+     * @param arg2
+     *            the third parameter
+     * @return the formatted message
+     */
+    static String format(String message, int count, Object arg0, Object arg1, Object arg2) {
+        return format(null, message, count, arg0, arg1, arg2);
+    }
+
+    /**
+     * Formats the message with up to three parameters after the given prefix, without allocating an array to hold the parameters.
+     *
+     * @param prefix
+     *            the text written before the message, such as the label of a marker, or <code>null</code>
+     * @param message
+     *            the message template
+     * @param count
+     *            the number of parameters, from 0 to 3
+     * @param arg0
+     *            the first parameter
+     * @param arg1
+     *            the second parameter
+     * @param arg2
+     *            the third parameter
+     * @return the formatted message
+     */
+    static String format(String prefix, String message, int count, Object arg0, Object arg1, Object arg2) {
+        MessageTemplate template = getTemplate(message);
+        if (template.isConstant() && prefix == null) {
+            return message;
+        }
+
+        Context ctx = acquire();
+        try {
+            if (prefix != null) {
+                ctx.builder.append(prefix);
+            }
+            ctx.setArguments(null, 0, count, arg0, arg1, arg2);
+            template.render(ctx);
+            return ctx.builder.toString();
+        } finally {
+            ctx.release();
+        }
+    }
+
+    /**
+     * Renders the message written by the given writer into the per-thread buffer.
+     *
+     * @param writer
+     *            the writer of the message
+     * @return the message
+     */
+    static String format(MessageWriter writer) {
+        Context ctx = acquire();
+        try {
+            writer.write(ctx.builder);
+            return ctx.builder.toString();
+        } finally {
+            ctx.release();
+        }
+    }
+
+    private static Context acquire() {
+        Context ctx = contexts.get();
+        if (ctx.busy) {
+            // A parameter logs from its toString(): don't overwrite the buffer being rendered
+            ctx = new Context();
+        }
+        ctx.busy = true;
+        return ctx;
+    }
+
+    /**
+     * Returns the template parsed from the given message, from the cache if possible.
+     */
+    static MessageTemplate getTemplate(String message) {
+        MessageTemplate template = templates.get(message);
+        if (template == null) {
+            template = new MessageTemplate(message);
+            if (!template.isConstant() && message.length() <= MAX_CACHED_MESSAGE_LENGTH && cacheSize > 0) {
+                if (templateCount.get() >= cacheSize) {
+                    evict(message);
+                }
+                MessageTemplate existing = templates.putIfAbsent(message, template);
+                if (existing == null) {
+                    templateCount.incrementAndGet();
+                } else {
+                    template = existing;
+                }
+            }
+        }
+        return template;
+    }
+
+    /**
+     * Removes a template from the full cache to make room for the given message. The templates are iterated in the order of the hash of their
+     * message, so skipping a number of them taken from the hash of the new message chooses a template regardless of how often it is used, without
+     * sharing a random generator between the threads.
+     */
+    private static void evict(String message) {
+        int hash = message.hashCode();
+        int skip = (hash ^ (hash >>> 16)) & (MAX_EVICTION_SKIP - 1);
+        Iterator<String> messages = templates.keySet().iterator();
+        String victim = null;
+        while (messages.hasNext() && (victim == null || skip-- > 0)) {
+            victim = messages.next();
+        }
+        if (victim != null && templates.remove(victim) != null) {
+            templateCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Does the message render to itself, having neither conversion nor placeholder?
+     */
+    static boolean isConstant(String message) {
+        return message.indexOf('%') < 0 && message.indexOf("{}") < 0;
+    }
+
+    /**
+     * Does the default locale format the integers with the ASCII digits? If not, <code>%d</code> is delegated to the <code>Formatter</code>.
+     */
+    private static boolean hasAsciiDigits(Locale locale) {
+        if (locale != digitsLocale) {
+            asciiDigits = new DecimalFormatSymbols(locale).getZeroDigit() == '0';
+            digitsLocale = locale;
+        }
+        return asciiDigits;
+    }
+
+    // ------------------------------------------------------------ Context
+
+    /**
+     * The per-thread rendering state: a reusable builder and the <code>Formatter</code> writing into it.
+     */
+    static final class Context {
+
+        StringBuilder builder = new StringBuilder(256);
+
+        private Formatter formatter;
+
+        private boolean busy;
+
+        /** The parameters being rendered: either <code>params[offset..offset + count[</code>, or <code>arg0</code> to <code>arg2</code> */
+        private Object[] params;
+        private int offset;
+        private int count;
+        private Object arg0;
+        private Object arg1;
+        private Object arg2;
+
+        void setArguments(Object[] params, int offset, int count, Object arg0, Object arg1, Object arg2) {
+            this.params = params;
+            this.offset = offset;
+            this.count = count;
+            this.arg0 = arg0;
+            this.arg1 = arg1;
+            this.arg2 = arg2;
+        }
+
+        Object arg(int index) {
+            if (params != null) {
+                return params[offset + index];
+            }
+            return index == 0 ? arg0 : (index == 1 ? arg1 : arg2);
+        }
+
+        /**
+         * Returns the parameters as an array, as expected by <code>Formatter</code>.
+         */
+        Object[] toArray() {
+            if (params != null && offset == 0 && count == params.length) {
+                return params;
+            }
+            Object[] array = new Object[count];
+            for (int i = 0; i < count; i++) {
+                array[i] = arg(i);
+            }
+            return array;
+        }
+
+        Formatter formatter() {
+            if (formatter == null) {
+                formatter = new Formatter(builder);
+            }
+            return formatter;
+        }
+
+        void release() {
+            busy = false;
+            setArguments(null, 0, 0, null, null, null);
+            if (builder.capacity() > MAX_BUFFER_CAPACITY) {
+                builder = new StringBuilder(256);
+                formatter = null;
+            } else {
+                builder.setLength(0);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------ Template
+
+    /**
+     * A message parsed into a sequence of literal text and conversions.
+     */
+    static final class MessageTemplate {
+
+        private static final int LITERAL = 0;
+        private static final int PERCENT = 1;
+        private static final int NEWLINE = 2;
+        private static final int STRING = 3;
+        private static final int DECIMAL = 4;
+        private static final int COMPLEX = 5;
+        private static final int PLACEHOLDER = 6;
+
+        private final String message;
+
+        /** The kind of each segment */
+        private int[] kinds;
+        /** The start (inclusive) and end (exclusive) index of each segment in the message */
+        private int[] starts;
+        private int[] ends;
+        private int size;
+
+        /** The number of parameters consumed by the conversions */
+        private int argCount;
+
+        /** Does the message need the full <code>Formatter</code> (explicit indexes, invalid syntax, ...)? */
+        private boolean fallback;
+
+        /** Does the message render to itself? */
+        private boolean constant;
+
+        /** Does the message use the <code>{}</code> placeholders? */
+        private boolean placeholders;
+
+        MessageTemplate(String message) {
+            this.message = message;
+            if (message.indexOf('%') >= 0) {
+                allocateSegments();
+                parseFormat();
+            } else if (message.indexOf("{}") >= 0) {
+                allocateSegments();
+                parsePlaceholders();
+            } else {
+                constant = true;
+            }
+        }
+
+        boolean isConstant() {
+            return constant;
+        }
+
+        private void allocateSegments() {
+            kinds = new int[8];
+            starts = new int[8];
+            ends = new int[8];
+        }
+
+        private void add(int kind, int start, int end) {
+            if (kind == LITERAL && start == end) {
+                return;
+            }
+            if (size == kinds.length) {
+                kinds = grow(kinds);
+                starts = grow(starts);
+                ends = grow(ends);
+            }
+            kinds[size] = kind;
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+        }
+
+        private static int[] grow(int[] array) {
+            int[] newArray = new int[array.length * 2];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            return newArray;
+        }
+
+        private void parsePlaceholders() {
+            placeholders = true;
+            int length = message.length();
+            int literalStart = 0;
+            int i = 0;
+            while (i < length - 1) {
+                char c = message.charAt(i);
+                if (c == '\\' && message.startsWith("{}", i + 1)) {
+                    // Escaped placeholder: keep "{}" as text
+                    add(LITERAL, literalStart, i);
+                    literalStart = i + 1;
+                    i += 3;
+                } else if (c == '{' && message.charAt(i + 1) == '}') {
+                    add(LITERAL, literalStart, i);
+                    add(PLACEHOLDER, i, i + 2);
+                    argCount++;
+                    i += 2;
+                    literalStart = i;
+                } else {
+                    i++;
+                }
+            }
+            add(LITERAL, literalStart, length);
+        }
+
+        /**
+         * Parses the message according to the syntax <code>%[argument_index$][flags][width][.precision]conversion</code> of
+         * <code>java.util.Formatter</code>.
+         */
+        private void parseFormat() {
+            int length = message.length();
+            int literalStart = 0;
+            int i = message.indexOf('%');
+            while (i >= 0) {
+                add(LITERAL, literalStart, i);
+                int start = i++;
+
+                // [argument_index$] or [width]
+                int digitsStart = i;
+                while (i < length && isDigit(message.charAt(i))) {
+                    i++;
+                }
+                if (i < length && (message.charAt(i) == '$' || message.charAt(i) == '<')) {
+                    // Explicit or relative indexing: let the Formatter handle the whole message
+                    fallback = true;
+                    return;
+                }
+                boolean simple = i == digitsStart;
+
+                // [flags]
+                while (i < length && "-#+ 0,(".indexOf(message.charAt(i)) >= 0) {
+                    simple = false;
+                    i++;
+                }
+                // [width]
+                while (i < length && isDigit(message.charAt(i))) {
+                    simple = false;
+                    i++;
+                }
+                // [.precision]
+                if (i < length && message.charAt(i) == '.') {
+                    simple = false;
+                    i++;
+                    while (i < length && isDigit(message.charAt(i))) {
+                        i++;
+                    }
+                }
+                if (i >= length) {
+                    fallback = true;
+                    return;
+                }
+
+                char conversion = message.charAt(i++);
+                if (conversion == 't' || conversion == 'T') {
+                    if (i >= length) {
+                        fallback = true;
+                        return;
+                    }
+                    i++;
+                    add(COMPLEX, start, i);
+                    argCount++;
+                } else if (conversion == '%') {
+                    if (!simple) {
+                        fallback = true;
+                        return;
+                    }
+                    add(PERCENT, start, i);
+                } else if (conversion == 'n') {
+                    if (!simple) {
+                        fallback = true;
+                        return;
+                    }
+                    add(NEWLINE, start, i);
+                } else if ("bBhHsScCdoxXeEfgGaA".indexOf(conversion) >= 0) {
+                    if (simple && conversion == 's') {
+                        add(STRING, start, i);
+                    } else if (simple && conversion == 'd') {
+                        add(DECIMAL, start, i);
+                    } else {
+                        add(COMPLEX, start, i);
+                    }
+                    argCount++;
+                } else {
+                    // Unknown conversion: the Formatter will report it
+                    fallback = true;
+                    return;
+                }
+
+                literalStart = i;
+                i = message.indexOf('%', i);
+            }
+            add(LITERAL, literalStart, length);
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        /**
+         * Renders this template with the parameters of the context into its builder.
+         */
+        void render(Context ctx) {
+            if (constant) {
+                ctx.builder.append(message);
+                return;
+            }
+            int paramCount = ctx.count;
+            if (fallback || (paramCount < argCount && !placeholders)) {
+                // Let the Formatter render the message, or report the missing parameters
+                ctx.formatter().format(Locale.getDefault(), message, ctx.toArray());
+                return;
+            }
+
+            StringBuilder buf = ctx.builder;
+            int arg = 0;
+            for (int i = 0; i < size; i++) {
+                switch (kinds[i]) {
+                    case LITERAL:
+                        buf.append(message, starts[i], ends[i]);
+                        break;
+                    case PERCENT:
+                        buf.append('%');
+                        break;
+                    case NEWLINE:
+                        buf.append(LINE_SEPARATOR);
+                        break;
+                    case STRING:
+                        appendString(ctx, i, ctx.arg(arg++));
+                        break;
+                    case DECIMAL:
+                        appendDecimal(ctx, i, ctx.arg(arg++));
+                        break;
+                    case PLACEHOLDER:
+                        if (arg < paramCount) {
+                            appendValue(buf, ctx.arg(arg++));
+                        } else {
+                            buf.append("{}");
+                        }
+                        break;
+                    default:
+                        appendComplex(ctx, i, ctx.arg(arg++));
+                        break;
+                }
+            }
+        }
+
+        private void appendString(Context ctx, int segment, Object value) {
+            if (value instanceof Formattable) {
+                appendComplex(ctx, segment, value);
+            } else {
+                appendValue(ctx.builder, value);
+            }
+        }
+
+        /**
+         * Appends <code>String.valueOf(value)</code>, without creating the intermediate <code>String</code> for the boxed primitives.
+         */
+        private static void appendValue(StringBuilder buf, Object value) {
+            if (value instanceof String) {
+                buf.append((String) value);
+            } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+                buf.append(((Number) value).longValue());
+            } else if (value instanceof Boolean) {
+                buf.append(((Boolean) value).booleanValue());
+            } else if (value instanceof Character) {
+                buf.append(((Character) value).charValue());
+            } else {
+                buf.append(String.valueOf(value));
+            }
+        }
+
+        private void appendDecimal(Context ctx, int segment, Object value) {
+            if ((value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+                    && hasAsciiDigits(Locale.getDefault())) {
+                ctx.builder.append(((Number) value).longValue());
+            } else {
+                appendComplex(ctx, segment, value);
+            }
+        }
+
+        private void appendComplex(Context ctx, int segment, Object value) {
+            ctx.formatter().format(Locale.getDefault(), message.substring(starts[segment], ends[segment]), value);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package org.nds.logging;
+
+/**
+ * <p>
+ * Produces the message of a {@link Logger} call only if its level is enabled, so a disabled call doesn't pay for building it.
+ * </p>
+ * <p>
+ * This interface has a single method: on a Java 8 or later JVM, a lambda expression or a method reference can be passed directly, such as
+ * <code>logger.debug(() -&gt; "State: " + state.dump())</code>, and a <code>java.util.function.Supplier</code> as <code>supplier::get</code>. On
+ * Android, an anonymous class is passed instead.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+public interface MessageSupplier {
+
+    /**
+     * Returns the message, rendered with <code>String.valueOf()</code>.
+     */
+    Object get();
+}
@@ -0,0 +1,24 @@
+package org.nds.logging;
+
+/**
+ * <p>
+ * Writes the message of a {@link Logger} call only if its level is enabled, into the per-thread buffer the messages are formatted in: unlike a
+ * {@link MessageSupplier}, it doesn't allocate an intermediate <code>String</code> for each part of the message.
+ * </p>
+ * <p>
+ * As {@link MessageSupplier}, this interface has a single method and can be implemented by a lambda expression on a Java 8 or later JVM, such as
+ * <code>logger.debug(buffer -&gt; state.dumpTo(buffer))</code>.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+public interface MessageWriter {
+
+    /**
+     * Appends the message to the given buffer, which is empty.
+     *
+     * @param buffer
+     *            the buffer, only valid until this method returns
+     */
+    void write(StringBuilder buffer);
+}
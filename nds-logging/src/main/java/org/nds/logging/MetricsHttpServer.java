@@ -0,0 +1,110 @@
+package org.nds.logging;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * <p>
+ * A minimal HTTP server answering any <code>GET</code> request with the counters of the loggers in the Prometheus text format, to be scraped by a
+ * local agent. It only listens on the loopback interface, and serves the requests one at a time on a daemon thread.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+final class MetricsHttpServer implements Runnable {
+
+    /** The maximum time to wait for a request, in milliseconds */
+    private static final int READ_TIMEOUT = 5000;
+
+    private final ServerSocket serverSocket;
+
+    private final LoggerFactory factory;
+
+    /**
+     * @param port
+     *            the port to listen on
+     * @param factory
+     *            the factory of the loggers whose counters are served
+     * @throws IOException
+     *             if the port can't be bound
+     */
+    MetricsHttpServer(int port, LoggerFactory factory) throws IOException {
+        this.serverSocket = new ServerSocket(port, 16, InetAddress.getByName("127.0.0.1"));
+        this.factory = factory;
+    }
+
+    void start() {
+        Thread thread = new Thread(this, "nds-logging-metrics");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void run() {
+        for (;;) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                System.err.println("MetricsHttpServer: stopped - " + e);
+                return;
+            }
+            try {
+                serve(socket);
+            } catch (SocketTimeoutException e) {
+                ; // Ignore: the client sent no request
+            } catch (IOException e) {
+                System.err.println("MetricsHttpServer: unable to answer a request - " + e);
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    ; // Ignore
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        socket.setSoTimeout(READ_TIMEOUT);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+        String requestLine = in.readLine();
+        if (requestLine == null) {
+            return;
+        }
+        // Skip the headers
+        String header;
+        do {
+            header = in.readLine();
+        } while (header != null && header.length() > 0);
+
+        String status;
+        String body;
+        if (requestLine.startsWith("GET ")) {
+            StringWriter text = new StringWriter(4096);
+            MetricsReporter.write(factory.getLoggers(), LoggerFactory.getAsyncDispatcher(), text);
+            status = "200 OK";
+            body = text.toString();
+        } else {
+            status = "405 Method Not Allowed";
+            body = "";
+        }
+
+        byte[] content = body.getBytes("UTF-8");
+        StringBuilder response = new StringBuilder(128);
+        response.append("HTTP/1.0 ").append(status).append("\r\n");
+        response.append("Content-Type: text/plain; version=0.0.4; charset=utf-8\r\n");
+        response.append("Content-Length: ").append(content.length).append("\r\n");
+        response.append("Connection: close\r\n\r\n");
+        OutputStream out = socket.getOutputStream();
+        out.write(response.toString().getBytes("US-ASCII"));
+        out.write(content);
+        out.flush();
+    }
+}
@@ -0,0 +1,126 @@
+package org.nds.logging;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import org.apache.commons.logging.impl.AsyncLogDispatcher;
+import org.apache.commons.logging.impl.SimpleAndroidLog;
+
+/**
+ * <p>
+ * Publishes the counters of the loggers as the read-only attributes of the MBean <code>org.nds.logging:type=Metrics</code>. An attribute is
+ * named <code>&lt;logger&gt;/&lt;level&gt;/&lt;counter&gt;</code>, the counter being <code>events</code>, <code>suppressed</code>,
+ * <code>renderedChars</code>, <code>dropped</code> (by the rate limit or the full asynchronous buffer) or <code>sampledOut</code>; the attribute
+ * <code>asyncDropped</code> counts all the events dropped by the asynchronous dispatcher. The attributes follow the loggers created since the registration.
+ * </p>
+ * <p>
+ * This class is only loaded when the metrics are published with JMX, which is not available on Android.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+final class MetricsMBean implements DynamicMBean {
+
+    /** The name of the MBean */
+    static final String OBJECT_NAME = "org.nds.logging:type=Metrics";
+
+    private static final String[] COUNTER_NAMES = { "events", "suppressed", "renderedChars", "dropped", "sampledOut" };
+
+    private static final String ASYNC_DROPPED = "asyncDropped";
+
+    private final LoggerFactory factory;
+
+    private MetricsMBean(LoggerFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Registers the MBean in the platform MBean server.
+     */
+    static void register(LoggerFactory factory) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(factory), new ObjectName(OBJECT_NAME));
+    }
+
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        if (ASYNC_DROPPED.equals(attribute)) {
+            AsyncLogDispatcher dispatcher = LoggerFactory.getAsyncDispatcher();
+            return Long.valueOf(dispatcher == null ? 0 : dispatcher.getDroppedCount());
+        }
+        int counterSeparator = attribute.lastIndexOf('/');
+        int levelSeparator = counterSeparator <= 0 ? -1 : attribute.lastIndexOf('/', counterSeparator - 1);
+        if (levelSeparator > 0) {
+            String name = attribute.substring(0, levelSeparator);
+            int level = indexOf(MetricsReporter.LEVEL_NAMES, attribute.substring(levelSeparator + 1, counterSeparator));
+            int counter = indexOf(COUNTER_NAMES, attribute.substring(counterSeparator + 1));
+            for (Logger logger : factory.getLoggers()) {
+                if (level >= 0 && counter >= 0 && logger.getName().equals(name) && logger.getMetrics() != null) {
+                    return Long.valueOf(logger.getMetrics().get(counter, level + SimpleAndroidLog.LOG_LEVEL_TRACE));
+                }
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    private static int indexOf(String[] names, String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (int i = 0; i < attributes.length; i++) {
+            try {
+                list.add(new Attribute(attributes[i], getAttribute(attributes[i])));
+            } catch (AttributeNotFoundException e) {
+                ; // Ignore: the missing attributes are omitted
+            }
+        }
+        return list;
+    }
+
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+        attributes.add(new MBeanAttributeInfo(ASYNC_DROPPED, "long", "Events dropped because the asynchronous buffer was full", true, false, false));
+        for (Logger logger : factory.getLoggers()) {
+            if (logger.getMetrics() == null) {
+                continue;
+            }
+            for (int level = 0; level < MetricsReporter.LEVEL_NAMES.length; level++) {
+                for (int counter = 0; counter < COUNTER_NAMES.length; counter++) {
+                    String name = logger.getName() + '/' + MetricsReporter.LEVEL_NAMES[level] + '/' + COUNTER_NAMES[counter];
+                    attributes.add(new MBeanAttributeInfo(name, "long", null, true, false, false));
+                }
+            }
+        }
+        return new MBeanInfo(getClass().getName(), "Counters of the NDS loggers", attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
+                null, new MBeanOperationInfo[0], null);
+    }
+
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("The attributes are read-only: " + attribute.getName());
+    }
+
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+}
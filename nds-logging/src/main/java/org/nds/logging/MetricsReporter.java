@@ -0,0 +1,103 @@
+package org.nds.logging;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.logging.impl.AsyncLogDispatcher;
+import org.apache.commons.logging.impl.SimpleAndroidLog;
+
+/**
+ * <p>
+ * Renders the counters of the loggers in the Prometheus text format (version 0.0.4): one sample per logger and level, labeled with the logger name
+ * and the level name. The loggers whose metrics are disabled are skipped, and so are the levels without any event.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+final class MetricsReporter {
+
+    /** The names of the levels, from LOG_LEVEL_TRACE to LOG_LEVEL_FATAL */
+    static final String[] LEVEL_NAMES = { "trace", "debug", "info", "warn", "error", "fatal" };
+
+    private MetricsReporter() {
+    }
+
+    /**
+     * Writes the counters of the given loggers, and the number of events dropped by the asynchronous dispatcher if any.
+     */
+    static void write(Collection<Logger> loggers, AsyncLogDispatcher dispatcher, Writer out) throws IOException {
+        List<Logger> measured = new ArrayList<Logger>(loggers.size());
+        for (Logger logger : loggers) {
+            if (logger.getMetrics() != null) {
+                measured.add(logger);
+            }
+        }
+
+        writeCounter(out, measured, "nds_logging_events_total", "Events logged.", LoggerMetrics.EMITTED);
+        writeCounter(out, measured, "nds_logging_suppressed_total", "Events suppressed because their level is disabled.", LoggerMetrics.SUPPRESSED);
+        writeCounter(out, measured, "nds_logging_rendered_chars_total", "Characters of the rendered messages.", LoggerMetrics.RENDERED_CHARS);
+        writeCounter(out, measured, "nds_logging_dropped_total", "Events dropped by the rate limit or because the asynchronous buffer was full.",
+                LoggerMetrics.DROPPED);
+        writeCounter(out, measured, "nds_logging_sampled_out_events_total", "Events of the keys dropped by Logger.sampled().",
+                LoggerMetrics.SAMPLED_OUT);
+
+        writeHeader(out, "nds_logging_sampled_out_total", "Keys dropped by Logger.sampled().");
+        for (Logger logger : measured) {
+            long value = logger.getSampledOutCount();
+            if (value != 0) {
+                out.write("nds_logging_sampled_out_total{logger=\"");
+                writeLabelValue(out, logger.getName());
+                out.write("\"} " + value + "\n");
+            }
+        }
+
+        if (dispatcher != null) {
+            writeHeader(out, "nds_logging_async_dropped_total", "Events dropped because the asynchronous buffer was full.");
+            out.write("nds_logging_async_dropped_total " + dispatcher.getDroppedCount() + "\n");
+        }
+    }
+
+    private static void writeCounter(Writer out, List<Logger> loggers, String metric, String help, int counter) throws IOException {
+        writeHeader(out, metric, help);
+        for (Logger logger : loggers) {
+            LoggerMetrics metrics = logger.getMetrics();
+            for (int level = SimpleAndroidLog.LOG_LEVEL_TRACE; level <= SimpleAndroidLog.LOG_LEVEL_FATAL; level++) {
+                long value = metrics.get(counter, level);
+                if (value != 0) {
+                    out.write(metric);
+                    out.write("{logger=\"");
+                    writeLabelValue(out, logger.getName());
+                    out.write("\",level=\"");
+                    out.write(LEVEL_NAMES[level - SimpleAndroidLog.LOG_LEVEL_TRACE]);
+                    out.write("\"} " + value + "\n");
+                }
+            }
+        }
+    }
+
+    private static void writeHeader(Writer out, String metric, String help) throws IOException {
+        out.write("# HELP " + metric + " " + help + "\n");
+        out.write("# TYPE " + metric + " counter\n");
+    }
+
+    /**
+     * Escapes the backslashes, double quotes and line feeds of a label value.
+     */
+    private static void writeLabelValue(Writer out, String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\') {
+                out.write("\\\\");
+            } else if (c == '"') {
+                out.write("\\\"");
+            } else if (c == '\n') {
+                out.write("\\n");
+            } else {
+                out.write(c);
+            }
+        }
+    }
+}
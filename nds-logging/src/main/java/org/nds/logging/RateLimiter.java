@@ -0,0 +1,187 @@
+package org.nds.logging;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * Limits the rate of the messages of a {@link Logger}, with a token bucket for each call site: each pair of message template and level.
+ * </p>
+ * <p>
+ * A bucket holds up to <code>burst</code> tokens and is refilled at <code>permitsPerSecond</code>; a message is logged only if it can take a token.
+ * The bucket is implemented as the theoretical arrival time of the next message (GCRA), held in a single <code>AtomicLong</code> updated with a
+ * compare-and-set, so the check never locks.
+ * </p>
+ * <p>
+ * The messages without any conversion or placeholder are often built by concatenation (<code>"retry " + n</code>), so they don't identify a call
+ * site: they share {@link #SHARED_BUCKETS} buckets per level, chosen by the hash of the message in which each sequence of digits counts as a single
+ * digit. The successive messages of such a call site then take their tokens from the same bucket, without creating a bucket for each message. The
+ * number of templates having their own bucket is bounded: once {@link #MAX_CALL_SITES} templates have been seen, the new ones share the same buckets
+ * by the hash of the template. The messages dropped from a shared bucket, which may have been throttled by another call site, are also counted
+ * apart.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+final class RateLimiter {
+
+    /** The maximum number of templates having their own bucket */
+    static final int MAX_CALL_SITES = 1024;
+
+    /** The number of buckets of each level shared by the messages without their own bucket, a power of 2 */
+    static final int SHARED_BUCKETS = 64;
+
+    /** The number of levels, from LOG_LEVEL_ALL to LOG_LEVEL_OFF */
+    private static final int LEVELS = 8;
+
+    /** The time between two tokens, in nanoseconds */
+    private final long interval;
+
+    /** How far the theoretical arrival time may be ahead of the current time: the burst minus the current token */
+    private final long tolerance;
+
+    /** The buckets of each level, keyed by template */
+    private final ConcurrentHashMap<String, AtomicLong>[] buckets;
+
+    /** The number of buckets, all levels included */
+    private final AtomicInteger callSites = new AtomicInteger();
+
+    /** The shared buckets of each level, level after level */
+    private final AtomicLongArray shared = new AtomicLongArray(LEVELS * SHARED_BUCKETS);
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** The messages dropped from a shared bucket, also counted in {@link #dropped} */
+    private final AtomicLong sharedDropped = new AtomicLong();
+
+    /**
+     * @param permitsPerSecond
+     *            the number of messages allowed per second and call site
+     * @param burst
+     *            the number of messages that can be logged at once by a call site that has been quiet
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    RateLimiter(double permitsPerSecond, int burst) {
+        this.interval = Math.max(1, (long) (1000000000.0 / permitsPerSecond));
+        this.tolerance = interval * (Math.max(1, burst) - 1);
+        this.buckets = new ConcurrentHashMap[LEVELS];
+        long now = System.nanoTime();
+        for (int i = 0; i < LEVELS; i++) {
+            buckets[i] = new ConcurrentHashMap<String, AtomicLong>();
+        }
+        for (int i = 0; i < shared.length(); i++) {
+            shared.set(i, now);
+        }
+    }
+
+    /**
+     * Takes a token from the bucket of the call site of a message.
+     *
+     * @return <code>false</code> if the message must be dropped
+     */
+    boolean tryAcquire(int level, String template) {
+        int index = level & (LEVELS - 1);
+        String key = template == null ? "null" : template;
+        if (MessageFormatter.isConstant(key)) {
+            return tryAcquireShared(index, normalizedHash(key));
+        }
+        return tryAcquireOwn(index, key);
+    }
+
+    /**
+     * Takes a token from the bucket of a call site identified by a key, such as the class of a message supplier, rather than by its message.
+     *
+     * @return <code>false</code> if the message must be dropped
+     */
+    boolean tryAcquireKey(int level, String key) {
+        return tryAcquireOwn(level & (LEVELS - 1), key);
+    }
+
+    private boolean tryAcquireOwn(int index, String key) {
+        AtomicLong bucket = buckets[index].get(key);
+        if (bucket == null) {
+            if (callSites.get() >= MAX_CALL_SITES) {
+                return tryAcquireShared(index, key.hashCode());
+            }
+            bucket = new AtomicLong(System.nanoTime());
+            AtomicLong existing = buckets[index].putIfAbsent(key, bucket);
+            if (existing != null) {
+                bucket = existing;
+            } else {
+                callSites.incrementAndGet();
+            }
+        }
+        long now = System.nanoTime();
+        for (;;) {
+            long arrival = bucket.get();
+            long next = arrival - now > 0 ? arrival : now;
+            if (next - now > tolerance) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            if (bucket.compareAndSet(arrival, next + interval)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean tryAcquireShared(int index, int hash) {
+        // Spreads the bits of the hash, so the messages that only differ by their last characters use different buckets
+        hash ^= (hash >>> 16);
+        hash *= 0x85EBCA6B;
+        hash ^= (hash >>> 13);
+        int slot = index * SHARED_BUCKETS + (hash & (SHARED_BUCKETS - 1));
+        long now = System.nanoTime();
+        for (;;) {
+            long arrival = shared.get(slot);
+            long next = arrival - now > 0 ? arrival : now;
+            if (next - now > tolerance) {
+                dropped.incrementAndGet();
+                sharedDropped.incrementAndGet();
+                return false;
+            }
+            if (shared.compareAndSet(slot, arrival, next + interval)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the hash of the message, each sequence of digits counting as a single '0'.
+     */
+    private static int normalizedHash(String message) {
+        int hash = 0;
+        boolean digits = false;
+        for (int i = 0, length = message.length(); i < length; i++) {
+            char c = message.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (digits) {
+                    continue;
+                }
+                digits = true;
+                c = '0';
+            } else {
+                digits = false;
+            }
+            hash = 31 * hash + c;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the number of messages dropped by this limiter.
+     */
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the number of messages dropped from a bucket shared by several messages: the messages without any conversion or placeholder, and the
+     * templates seen once the limit of call sites has been reached.
+     */
+    long getSharedDroppedCount() {
+        return sharedDropped.get();
+    }
+}
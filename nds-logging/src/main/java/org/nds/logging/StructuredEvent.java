@@ -0,0 +1,163 @@
+package org.nds.logging;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import org.apache.commons.logging.impl.DiagnosticContext;
+import org.apache.commons.logging.impl.SimpleAndroidLog;
+
+/**
+ * <p>
+ * The builder of an enabled structured event, encoding its fields into a {@link JsonEncoder} as they are added.
+ * </p>
+ * <p>
+ * Each thread reuses the same event, unless it is still being built: an event is started while the value of another one is rendered, or an event
+ * has not been logged, for example because an exception has been thrown before <code>log()</code>. A new event is then allocated, and reused by
+ * the next events of the thread instead of the busy one.
+ * </p>
+ *
+ * @author Nicolas Dos Santos
+ */
+final class StructuredEvent extends EventBuilder {
+
+    private static final ThreadLocal<StructuredEvent> events = new ThreadLocal<StructuredEvent>() {
+        @Override
+        protected StructuredEvent initialValue() {
+            return new StructuredEvent();
+        }
+    };
+
+    private final JsonEncoder encoder = new JsonEncoder();
+
+    private Logger logger;
+
+    private int level;
+
+    /** Is the event written as a JSON line, with its date, level, logger and thread? */
+    private boolean jsonLine;
+
+    private boolean busy;
+
+    private StructuredEvent() {
+    }
+
+    /**
+     * Starts an event of the given logger.
+     *
+     * @param jsonLine
+     *            <code>true</code> if the event is written as a JSON line: the date, level, logger, thread and diagnostic context are then written
+     *            before the message
+     */
+    static StructuredEvent begin(Logger logger, int level, String message, boolean jsonLine) {
+        StructuredEvent event = events.get();
+        if (event.busy) {
+            event = new StructuredEvent();
+            events.set(event);
+        }
+        event.busy = true;
+        event.logger = logger;
+        event.level = level;
+        event.jsonLine = jsonLine;
+
+        JsonEncoder encoder = event.encoder;
+        encoder.reset();
+        encoder.beginObject();
+        if (jsonLine) {
+            encoder.name("ts");
+            encoder.value(System.currentTimeMillis());
+            encoder.name("level");
+            encoder.value(MetricsReporter.LEVEL_NAMES[level - SimpleAndroidLog.LOG_LEVEL_TRACE]);
+            encoder.name("logger");
+            encoder.value(logger.getName());
+            encoder.name("thread");
+            encoder.value(Thread.currentThread().getName());
+            DiagnosticContext context = DiagnosticContext.current();
+            if (context.size() > 0) {
+                encoder.name("mdc");
+                encoder.beginObject();
+                for (int i = 0; i < context.size(); i++) {
+                    encoder.name(context.getKey(i));
+                    encoder.value(context.getValue(i));
+                }
+                encoder.endObject();
+            }
+        }
+        encoder.name("msg");
+        encoder.value(message);
+        return event;
+    }
+
+    @Override
+    public EventBuilder kv(String key, Object value) {
+        encoder.name(key);
+        encoder.value(value);
+        return this;
+    }
+
+    @Override
+    public EventBuilder kv(String key, String value) {
+        encoder.name(key);
+        encoder.value(value);
+        return this;
+    }
+
+    @Override
+    public EventBuilder kv(String key, long value) {
+        encoder.name(key);
+        encoder.value(value);
+        return this;
+    }
+
+    @Override
+    public EventBuilder kv(String key, double value) {
+        encoder.name(key);
+        encoder.value(value);
+        return this;
+    }
+
+    @Override
+    public EventBuilder kv(String key, boolean value) {
+        encoder.name(key);
+        encoder.value(value);
+        return this;
+    }
+
+    @Override
+    public EventBuilder kv(String key, char value) {
+        encoder.name(key);
+        encoder.value(value);
+        return this;
+    }
+
+    @Override
+    public void log() {
+        log(null);
+    }
+
+    @Override
+    public void log(Throwable t) {
+        if (!busy) {
+            // Already logged
+            return;
+        }
+        try {
+            if (jsonLine && t != null) {
+                encoder.name("exception");
+                encoder.value(renderThrowable(t));
+            }
+            encoder.endObject();
+            logger.logStructured(level, encoder, t);
+        } finally {
+            logger = null;
+            busy = false;
+        }
+    }
+
+    private static String renderThrowable(Throwable t) {
+        StringWriter sw = new StringWriter(1024);
+        PrintWriter pw = new PrintWriter(sw);
+        t.printStackTrace(pw);
+        pw.close();
+        return sw.toString();
+    }
+}
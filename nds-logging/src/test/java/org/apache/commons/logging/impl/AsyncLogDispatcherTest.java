@@ -0,0 +1,293 @@
+package org.apache.commons.logging.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.junit.Test;
+
+public class AsyncLogDispatcherTest {
+
+    @Test
+    public void testProducerOrder() throws InterruptedException {
+        final int producers = 4;
+        final int events = 20000;
+        final AsyncLogDispatcher dispatcher = new AsyncLogDispatcher(64);
+        final RecordingLog log = new RecordingLog();
+        dispatcher.start();
+
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads[p] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < events; i++) {
+                        dispatcher.publish(log, SimpleAndroidLog.LOG_LEVEL_INFO, new int[] { producer, i }, null);
+                    }
+                }
+            };
+            threads[p].start();
+        }
+        for (int p = 0; p < producers; p++) {
+            threads[p].join();
+        }
+        dispatcher.stop(10000);
+
+        assertEquals(producers * events, log.messages.size());
+        assertEquals(producers * events, dispatcher.getProcessedCount());
+        assertEquals(0, dispatcher.getDroppedCount());
+        int[] next = new int[producers];
+        for (Object message : log.messages) {
+            int[] event = (int[]) message;
+            assertEquals("event of producer " + event[0], next[event[0]]++, event[1]);
+        }
+    }
+
+    @Test
+    public void testStopWhilePublishing() throws InterruptedException {
+        final int producers = 4;
+        final int events = 20000;
+        final AsyncLogDispatcher dispatcher = new AsyncLogDispatcher(64);
+        final RecordingLog log = new RecordingLog();
+        final CountDownLatch started = new CountDownLatch(producers);
+        dispatcher.start();
+
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads[p] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < events; i++) {
+                        if (i == 100) {
+                            started.countDown();
+                        }
+                        dispatcher.publish(log, SimpleAndroidLog.LOG_LEVEL_INFO, new int[] { producer, i }, null);
+                    }
+                }
+            };
+            threads[p].start();
+        }
+        started.await();
+        dispatcher.stop(10000);
+        for (int p = 0; p < producers; p++) {
+            threads[p].join();
+        }
+
+        // No event is lost, and the events written directly once stopped follow the queued ones
+        assertEquals(producers * events, log.messages.size());
+        int[] next = new int[producers];
+        for (Object message : log.messages) {
+            int[] event = (int[]) message;
+            assertEquals("event of producer " + event[0], next[event[0]]++, event[1]);
+        }
+        assertEquals(0, dispatcher.getQueueDepth());
+    }
+
+    @Test
+    public void testFullBufferDiscard() throws InterruptedException {
+        AsyncLogDispatcher dispatcher = new AsyncLogDispatcher(4, true);
+        RecordingLog log = new RecordingLog();
+        log.block();
+        dispatcher.start();
+
+        assertTrue(dispatcher.publish(log, SimpleAndroidLog.LOG_LEVEL_INFO, "0", null));
+        log.awaitBlocked();
+        // The event being written keeps its slot until it has been written
+        for (int i = 1; i < 4; i++) {
+            assertTrue(dispatcher.publish(log, SimpleAndroidLog.LOG_LEVEL_INFO, String.valueOf(i), null));
+        }
+        assertFalse(dispatcher.publish(log, SimpleAndroidLog.LOG_LEVEL_INFO, "4", null));
+        assertEquals(1, dispatcher.getDroppedCount());
+        assertEquals(4, dispatcher.getQueueDepth());
+
+        log.unblock();
+        dispatcher.stop(10000);
+        assertEquals("[0, 1, 2, 3]", log.messages.toString());
+        assertEquals(4, dispatcher.getProcessedCount());
+    }
+
+    @Test
+    public void testFullBufferWait() throws InterruptedException {
+        final AsyncLogDispatcher dispatcher = new AsyncLogDispatcher(4);
+        final RecordingLog log = new RecordingLog();
+        log.block();
+        dispatcher.start();
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(dispatcher.publish(log, SimpleAndroidLog.LOG_LEVEL_INFO, String.valueOf(i), null));
+            if (i == 0) {
+                log.awaitBlocked();
+            }
+        }
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                dispatcher.publish(log, SimpleAndroidLog.LOG_LEVEL_INFO, "4", null);
+            }
+        };
+        producer.start();
+        producer.join(200);
+        assertTrue("the producer waits for a free slot", producer.isAlive());
+        assertEquals(4, dispatcher.getPublishedCount());
+
+        log.unblock();
+        producer.join(10000);
+        assertFalse(producer.isAlive());
+        dispatcher.stop(10000);
+        assertEquals("[0, 1, 2, 3, 4]", log.messages.toString());
+        assertEquals(0, dispatcher.getDroppedCount());
+    }
+
+    @Test
+    public void testStopDrains() {
+        AsyncLogDispatcher dispatcher = new AsyncLogDispatcher(1024);
+        RecordingLog log = new RecordingLog();
+        log.block();
+        dispatcher.start();
+
+        for (int i = 0; i < 1000; i++) {
+            dispatcher.publish(log, i % 2 == 0 ? SimpleAndroidLog.LOG_LEVEL_DEBUG : SimpleAndroidLog.LOG_LEVEL_ERROR, Integer.valueOf(i), null);
+        }
+        log.unblock();
+        dispatcher.stop(10000);
+
+        assertEquals(1000, log.messages.size());
+        assertEquals(0, dispatcher.getQueueDepth());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Integer.valueOf(i), log.messages.get(i));
+            assertEquals(i % 2 == 0 ? SimpleAndroidLog.LOG_LEVEL_DEBUG : SimpleAndroidLog.LOG_LEVEL_ERROR, log.levels.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void testNotStarted() {
+        AsyncLogDispatcher dispatcher = new AsyncLogDispatcher(4);
+        RecordingLog log = new RecordingLog();
+        Throwable t = new Throwable();
+
+        assertTrue(dispatcher.publish(log, SimpleAndroidLog.LOG_LEVEL_WARN, "now", t));
+        assertEquals("[now]", log.messages.toString());
+        assertTrue(log.throwables.get(0) == t);
+        assertEquals(0, dispatcher.getPublishedCount());
+    }
+
+    /**
+     * Records the events, optionally blocking the consumer thread on the first one.
+     */
+    private static final class RecordingLog implements Log {
+
+        final List<Object> messages = new ArrayList<Object>();
+
+        final List<Integer> levels = new ArrayList<Integer>();
+
+        final List<Throwable> throwables = new ArrayList<Throwable>();
+
+        private final CountDownLatch blocked = new CountDownLatch(1);
+
+        private CountDownLatch gate = new CountDownLatch(0);
+
+        void block() {
+            gate = new CountDownLatch(1);
+        }
+
+        void unblock() {
+            gate.countDown();
+        }
+
+        void awaitBlocked() throws InterruptedException {
+            assertTrue("the consumer writes the first event", blocked.await(10, TimeUnit.SECONDS));
+        }
+
+        private synchronized void record(int level, Object message, Throwable t) {
+            blocked.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            messages.add(message);
+            levels.add(Integer.valueOf(level));
+            throwables.add(t);
+        }
+
+        public boolean isTraceEnabled() {
+            return true;
+        }
+
+        public boolean isDebugEnabled() {
+            return true;
+        }
+
+        public boolean isInfoEnabled() {
+            return true;
+        }
+
+        public boolean isWarnEnabled() {
+            return true;
+        }
+
+        public boolean isErrorEnabled() {
+            return true;
+        }
+
+        public boolean isFatalEnabled() {
+            return true;
+        }
+
+        public void trace(Object message) {
+            record(SimpleAndroidLog.LOG_LEVEL_TRACE, message, null);
+        }
+
+        public void trace(Object message, Throwable t) {
+            record(SimpleAndroidLog.LOG_LEVEL_TRACE, message, t);
+        }
+
+        public void debug(Object message) {
+            record(SimpleAndroidLog.LOG_LEVEL_DEBUG, message, null);
+        }
+
+        public void debug(Object message, Throwable t) {
+            record(SimpleAndroidLog.LOG_LEVEL_DEBUG, message, t);
+        }
+
+        public void info(Object message) {
+            record(SimpleAndroidLog.LOG_LEVEL_INFO, message, null);
+        }
+
+        public void info(Object message, Throwable t) {
+            record(SimpleAndroidLog.LOG_LEVEL_INFO, message, t);
+        }
+
+        public void warn(Object message) {
+            record(SimpleAndroidLog.LOG_LEVEL_WARN, message, null);
+        }
+
+        public void warn(Object message, Throwable t) {
+            record(SimpleAndroidLog.LOG_LEVEL_WARN, message, t);
+        }
+
+        public void error(Object message) {
+            record(SimpleAndroidLog.LOG_LEVEL_ERROR, message, null);
+        }
+
+        public void error(Object message, Throwable t) {
+            record(SimpleAndroidLog.LOG_LEVEL_ERROR, message, t);
+        }
+
+        public void fatal(Object message) {
+            record(SimpleAndroidLog.LOG_LEVEL_FATAL, message, null);
+        }
+
+        public void fatal(Object message, Throwable t) {
+            record(SimpleAndroidLog.LOG_LEVEL_FATAL, message, t);
+        }
+    }
+}
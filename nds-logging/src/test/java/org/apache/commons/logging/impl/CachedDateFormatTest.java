@@ -0,0 +1,55 @@
+package org.apache.commons.logging.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.junit.Test;
+
+public class CachedDateFormatTest {
+
+    /** Around the epoch, in the same second and across seconds, and far from it */
+    private static final long[] TIMESTAMPS = { 0, 1, 9, 10, 99, 100, 999, 1000, 1001, 1234567890005L, 1234567890050L, 1234567890500L,
+            1234567891000L, -1, -9, -10, -100, -999, -1000, -1001, -1234567890123L, -1234567890999L };
+
+    @Test
+    public void testMillisDigits() {
+        assertFormat("yyyy-MM-dd HH:mm:ss.S");
+        assertFormat("yyyy-MM-dd HH:mm:ss.SS");
+        assertFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        assertFormat("yyyy-MM-dd HH:mm:ss.SSSS");
+        assertFormat("SSS yyyy-MM-dd HH:mm:ss");
+        assertFormat("ss:SSS");
+    }
+
+    @Test
+    public void testQuotedMillis() {
+        assertFormat("HH:mm:ss 'S'");
+        assertFormat("HH:mm:ss 'S' SSS");
+        assertFormat("HH:mm:ss.SSS 'SS'''");
+        assertFormat("'o''clock' ss'S'SS");
+    }
+
+    @Test
+    public void testTwoMillisFields() {
+        assertFormat("HH:mm:ss.SSS (SS)");
+        assertFormat("S'x'S");
+    }
+
+    @Test
+    public void testNoMillis() {
+        assertFormat("yyyy-MM-dd HH:mm:ss");
+        assertFormat("EEE, d MMM yyyy HH:mm:ss Z");
+    }
+
+    private static void assertFormat(String pattern) {
+        CachedDateFormat format = new CachedDateFormat(pattern);
+        SimpleDateFormat expected = new SimpleDateFormat(pattern);
+        for (int i = 0; i < TIMESTAMPS.length; i++) {
+            StringBuilder buf = new StringBuilder("> ");
+            format.format(buf, TIMESTAMPS[i]);
+            assertEquals(pattern + " " + TIMESTAMPS[i], "> " + expected.format(new Date(TIMESTAMPS[i])), buf.toString());
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.apache.commons.logging.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DurableFileSinkTest {
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private File file;
+
+    private DurableFileSink sink;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("durable", ".log");
+    }
+
+    @After
+    public void deleteFile() {
+        if (sink != null) {
+            sink.close();
+        }
+        file.delete();
+    }
+
+    @Test
+    public void testDurableEvent() throws IOException {
+        sink = new DurableFileSink(file, SimpleAndroidLog.LOG_LEVEL_ERROR, 0);
+        sink.write(SimpleAndroidLog.LOG_LEVEL_INFO, "tag", "not durable");
+        sink.write(SimpleAndroidLog.LOG_LEVEL_ERROR, "tag", "durable \u00e9");
+
+        // The events before the durable one are written with its commit
+        assertEquals("not durable" + LINE_SEPARATOR + "durable \u00e9" + LINE_SEPARATOR, read(file));
+        assertEquals(1, sink.getCommitCount());
+    }
+
+    @Test
+    public void testFlushAndClose() throws IOException {
+        sink = new DurableFileSink(file, SimpleAndroidLog.LOG_LEVEL_FATAL, DurableFileSink.DEFAULT_COMMIT_LATENCY_MILLIS);
+        sink.write(SimpleAndroidLog.LOG_LEVEL_ERROR, "tag", "first");
+        sink.flush();
+        assertEquals("first" + LINE_SEPARATOR, read(file));
+
+        sink.write(SimpleAndroidLog.LOG_LEVEL_ERROR, "tag", "second");
+        sink.close();
+        sink.write(SimpleAndroidLog.LOG_LEVEL_FATAL, "tag", "ignored");
+        assertEquals("first" + LINE_SEPARATOR + "second" + LINE_SEPARATOR, read(file));
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception {
+        final int threads = 8;
+        sink = new DurableFileSink(file, SimpleAndroidLog.LOG_LEVEL_ERROR, 200);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger written = new AtomicInteger();
+        Thread[] writers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final String event = "event " + i;
+            writers[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    sink.write(SimpleAndroidLog.LOG_LEVEL_ERROR, "tag", event);
+                    written.incrementAndGet();
+                }
+            };
+            writers[i].start();
+        }
+        start.countDown();
+        for (int i = 0; i < threads; i++) {
+            writers[i].join(10000);
+        }
+
+        assertEquals(threads, written.get());
+        String content = read(file);
+        for (int i = 0; i < threads; i++) {
+            assertTrue(content.indexOf("event " + i + LINE_SEPARATOR) >= 0);
+        }
+        assertEquals(threads, sink.getCommittedEvents());
+        // The durable events logged during the commit latency share its commit
+        assertTrue("commits: " + sink.getCommitCount(), sink.getCommitCount() < threads);
+        assertTrue(sink.getEventsPerCommit() > 1);
+    }
+
+    @Test
+    public void testFailedCommit() throws IOException {
+        File full = new File("/dev/full");
+        Assume.assumeTrue(full.exists() && full.canWrite());
+        sink = new DurableFileSink(full, SimpleAndroidLog.LOG_LEVEL_ERROR, 0);
+        sink.write(SimpleAndroidLog.LOG_LEVEL_INFO, "tag", "not durable");
+        // Logging doesn't throw: the failure is counted
+        sink.write(SimpleAndroidLog.LOG_LEVEL_ERROR, "tag", "durable");
+        assertEquals(0, sink.getCommitCount());
+        assertTrue(sink.getFailedCommitCount() >= 1);
+        assertEquals(2, sink.getLostEventCount());
+    }
+
+    private static String read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
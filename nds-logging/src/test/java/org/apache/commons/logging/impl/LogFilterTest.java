@@ -0,0 +1,151 @@
+package org.apache.commons.logging.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Marker;
+import org.junit.After;
+import org.junit.Test;
+
+public class LogFilterTest {
+
+    @After
+    public void clearContext() {
+        DiagnosticContext.clear();
+    }
+
+    @Test
+    public void testNoRule() {
+        LogFilter filter = compile();
+        assertFalse(filter.isDenied("com.example.Foo", SimpleAndroidLog.LOG_LEVEL_TRACE, 0, "message"));
+    }
+
+    @Test
+    public void testLevel() {
+        LogFilter filter = compile("deny level<=debug");
+        assertTrue(filter.isDenied("a", SimpleAndroidLog.LOG_LEVEL_TRACE, 0, null));
+        assertTrue(filter.isDenied("a", SimpleAndroidLog.LOG_LEVEL_DEBUG, 0, null));
+        assertFalse(filter.isDenied("a", SimpleAndroidLog.LOG_LEVEL_INFO, 0, null));
+
+        filter = compile("deny level>=info; level<=warn");
+        assertFalse(filter.isDenied("a", SimpleAndroidLog.LOG_LEVEL_DEBUG, 0, null));
+        assertTrue(filter.isDenied("a", SimpleAndroidLog.LOG_LEVEL_INFO, 0, null));
+        assertTrue(filter.isDenied("a", SimpleAndroidLog.LOG_LEVEL_WARN, 0, null));
+        assertFalse(filter.isDenied("a", SimpleAndroidLog.LOG_LEVEL_ERROR, 0, null));
+
+        filter = compile("deny level=INFO");
+        assertFalse(filter.isDenied("a", SimpleAndroidLog.LOG_LEVEL_DEBUG, 0, null));
+        assertTrue(filter.isDenied("a", SimpleAndroidLog.LOG_LEVEL_INFO, 0, null));
+    }
+
+    @Test
+    public void testLogger() {
+        LogFilter filter = compile("deny logger=com.example.net");
+        assertTrue(filter.isDenied("com.example.net", SimpleAndroidLog.LOG_LEVEL_INFO, 0, null));
+        assertTrue(filter.isDenied("com.example.net.Client", SimpleAndroidLog.LOG_LEVEL_INFO, 0, null));
+        assertFalse(filter.isDenied("com.example", SimpleAndroidLog.LOG_LEVEL_INFO, 0, null));
+        assertFalse(filter.isDenied("com.example.network.Client", SimpleAndroidLog.LOG_LEVEL_INFO, 0, null));
+        assertFalse(filter.isDenied("org.example.net", SimpleAndroidLog.LOG_LEVEL_INFO, 0, null));
+    }
+
+    @Test
+    public void testFirstMatchDecides() {
+        LogFilter filter = compile("accept logger=com.example.net; level>=warn", "deny logger=com.example", "accept level=error",
+                "deny level<=error");
+        // Accepted by the first rule, whatever the second
+        assertFalse(filter.isDenied("com.example.net.Client", SimpleAndroidLog.LOG_LEVEL_WARN, 0, null));
+        // Denied by the second rule, whatever the third
+        assertTrue(filter.isDenied("com.example.net.Client", SimpleAndroidLog.LOG_LEVEL_INFO, 0, null));
+        assertTrue(filter.isDenied("com.example.Main", SimpleAndroidLog.LOG_LEVEL_ERROR, 0, null));
+        // Accepted by the third rule, whatever the fourth
+        assertFalse(filter.isDenied("org.other.Main", SimpleAndroidLog.LOG_LEVEL_ERROR, 0, null));
+        // Denied by the fourth rule
+        assertTrue(filter.isDenied("org.other.Main", SimpleAndroidLog.LOG_LEVEL_WARN, 0, null));
+        // Matching no rule
+        assertFalse(filter.isDenied("org.other.Main", SimpleAndroidLog.LOG_LEVEL_FATAL, 0, null));
+    }
+
+    @Test
+    public void testMarker() {
+        Marker noisy = Marker.get("LOGFILTER_NOISY");
+        Marker audit = Marker.get("LOGFILTER_AUDIT");
+        LogFilter filter = compile("accept marker=LOGFILTER_AUDIT", "deny marker=LOGFILTER_NOISY");
+        assertTrue(filter.isDenied("a", SimpleAndroidLog.LOG_LEVEL_INFO, noisy.getMask(), null));
+        assertFalse(filter.isDenied("a", SimpleAndroidLog.LOG_LEVEL_INFO, noisy.getMask() | audit.getMask(), null));
+        assertFalse(filter.isDenied("a", SimpleAndroidLog.LOG_LEVEL_INFO, audit.getMask(), null));
+        assertFalse(filter.isDenied("a", SimpleAndroidLog.LOG_LEVEL_INFO, 0, null));
+    }
+
+    @Test
+    public void testTemplate() {
+        LogFilter filter = compile("deny template=  Heartbeat from {}  ");
+        assertTrue(filter.isDenied("a", SimpleAndroidLog.LOG_LEVEL_INFO, 0, "Heartbeat from {}"));
+        assertFalse(filter.isDenied("a", SimpleAndroidLog.LOG_LEVEL_INFO, 0, "Heartbeat from peer"));
+        // A message produced by the application has no template
+        assertFalse(filter.isDenied("a", SimpleAndroidLog.LOG_LEVEL_INFO, 0, null));
+    }
+
+    @Test
+    public void testDiagnosticContext() {
+        LogFilter filter = compile("accept mdc.user=admin", "deny level<=info; mdc.tenant=test");
+        assertFalse(filter.isDenied("a", SimpleAndroidLog.LOG_LEVEL_INFO, 0, null));
+        DiagnosticContext.put("tenant", "test");
+        assertTrue(filter.isDenied("a", SimpleAndroidLog.LOG_LEVEL_INFO, 0, null));
+        assertFalse(filter.isDenied("a", SimpleAndroidLog.LOG_LEVEL_WARN, 0, null));
+        DiagnosticContext.put("user", "admin");
+        assertFalse(filter.isDenied("a", SimpleAndroidLog.LOG_LEVEL_INFO, 0, null));
+        DiagnosticContext.put("user", "guest");
+        assertTrue(filter.isDenied("a", SimpleAndroidLog.LOG_LEVEL_INFO, 0, null));
+    }
+
+    @Test
+    public void testMaxRules() {
+        String[] rules = new String[LogFilter.MAX_RULES];
+        for (int i = 0; i < rules.length - 1; i++) {
+            rules[i] = "accept logger=logger" + i;
+        }
+        rules[rules.length - 1] = "deny level=info";
+        LogFilter filter = compile(rules);
+        assertFalse(filter.isDenied("logger62", SimpleAndroidLog.LOG_LEVEL_INFO, 0, null));
+        assertTrue(filter.isDenied("other", SimpleAndroidLog.LOG_LEVEL_INFO, 0, null));
+        assertFalse(filter.isDenied("other", SimpleAndroidLog.LOG_LEVEL_WARN, 0, null));
+
+        String[] tooMany = new String[LogFilter.MAX_RULES + 1];
+        for (int i = 0; i < tooMany.length; i++) {
+            tooMany[i] = "deny";
+        }
+        assertInvalid(tooMany);
+    }
+
+    @Test
+    public void testInvalidRules() {
+        assertInvalid("drop level=info");
+        assertInvalid("deny level=verbose");
+        assertInvalid("deny logger");
+        assertInvalid("deny logger<=com.example");
+        assertInvalid("deny logger=a; logger=b");
+        assertInvalid("deny mdc.=value");
+        assertInvalid("deny color=red");
+    }
+
+    private static LogFilter compile(String... definitions) {
+        List<LogFilter.Rule> rules = new ArrayList<LogFilter.Rule>();
+        for (int i = 0; i < definitions.length; i++) {
+            rules.add(LogFilter.Rule.parse(definitions[i]));
+        }
+        return new LogFilter(rules);
+    }
+
+    private static void assertInvalid(String... definitions) {
+        try {
+            compile(definitions);
+            fail("Invalid rules accepted: " + definitions[0]);
+        } catch (IllegalArgumentException e) {
+            ; // Expected
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.apache.commons.logging.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedFileSinkTest {
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    private File directory;
+
+    private File file;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("mapped", "");
+        directory.delete();
+        directory.mkdir();
+        file = new File(directory, "app");
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        for (int i = 0; files != null && i < files.length; i++) {
+            files[i].delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testRolling() throws IOException {
+        final List<File> released = new ArrayList<File>();
+        MappedFileSink sink = new MappedFileSink(file, SEGMENT_SIZE) {
+            @Override
+            protected void segmentReleased(File segment) {
+                synchronized (released) {
+                    released.add(segment);
+                }
+            }
+        };
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            String event = "event " + i + " \u00e9\u20ac\ud83d\ude00 padding the event to roll the segments quickly";
+            sink.write(SimpleAndroidLog.LOG_LEVEL_INFO, "tag", event);
+            expected.append(event).append(LINE_SEPARATOR);
+        }
+        sink.close();
+
+        File[] segments = MappedFileSink.listSegments(file);
+        assertTrue("segments: " + segments.length, segments.length > 5);
+        assertEquals(segments.length, released.size());
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < segments.length; i++) {
+            assertEquals(i + 1, MappedFileSink.getIndex(file, segments[i]));
+            assertTrue(segments[i].length() <= SEGMENT_SIZE);
+            String text = read(segments[i]);
+            // Truncated to the written length, an event is never split across two segments
+            assertTrue(text.endsWith(LINE_SEPARATOR));
+            content.append(text);
+        }
+        assertEquals(expected.toString(), content.toString());
+    }
+
+    @Test
+    public void testEventLongerThanSegment() throws IOException {
+        MappedFileSink sink = new MappedFileSink(file, SEGMENT_SIZE);
+        StringBuilder event = new StringBuilder();
+        while (event.length() < SEGMENT_SIZE * 3) {
+            event.append("long event ");
+        }
+        sink.write(SimpleAndroidLog.LOG_LEVEL_INFO, "tag", "short");
+        sink.write(SimpleAndroidLog.LOG_LEVEL_INFO, "tag", event);
+        sink.close();
+
+        assertEquals("short" + LINE_SEPARATOR + event + LINE_SEPARATOR, readAll(file));
+    }
+
+    @Test
+    public void testContinueAfterExistingSegments() throws IOException {
+        MappedFileSink sink = new MappedFileSink(file, SEGMENT_SIZE);
+        sink.write(SimpleAndroidLog.LOG_LEVEL_INFO, "tag", "first run");
+        sink.close();
+        sink = new MappedFileSink(file, SEGMENT_SIZE);
+        sink.write(SimpleAndroidLog.LOG_LEVEL_INFO, "tag", "second run");
+        sink.close();
+        // Closed once written
+        sink.write(SimpleAndroidLog.LOG_LEVEL_INFO, "tag", "ignored");
+
+        File[] segments = MappedFileSink.listSegments(file);
+        assertEquals(2, segments.length);
+        assertEquals(2, MappedFileSink.getIndex(file, segments[1]));
+        assertEquals("second run" + LINE_SEPARATOR, read(segments[1]));
+        assertEquals("first run" + LINE_SEPARATOR + "second run" + LINE_SEPARATOR, readAll(file));
+    }
+
+    @Test
+    public void testRetryAfterFailure() throws Exception {
+        // The first two attempts to create the second segment fail
+        final AtomicInteger failures = new AtomicInteger(2);
+        final File missing = new File(directory, "missing");
+        MappedFileSink sink = new MappedFileSink(file, SEGMENT_SIZE) {
+            @Override
+            File segmentFile(int index) {
+                if (index == 2 && failures.getAndDecrement() > 0) {
+                    return new File(missing, "segment.log");
+                }
+                return super.segmentFile(index);
+            }
+        };
+        List<String> events = new ArrayList<String>();
+        for (int i = 0; i < 200; i++) {
+            String event = "event " + i + " padding the event to fill the first segment";
+            sink.write(SimpleAndroidLog.LOG_LEVEL_INFO, "tag", event);
+            events.add(event);
+        }
+        // Retried after 100 ms, then after 200 ms
+        long deadline = System.currentTimeMillis() + 10000;
+        while (failures.get() >= 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        Thread.sleep(500);
+        sink.write(SimpleAndroidLog.LOG_LEVEL_INFO, "tag", "written again");
+        sink.close();
+
+        File[] segments = MappedFileSink.listSegments(file);
+        assertEquals(2, segments.length);
+        assertFalse(missing.exists());
+        String first = read(segments[0]);
+        assertTrue(first.startsWith(events.get(0) + LINE_SEPARATOR));
+        assertFalse(first.indexOf(events.get(events.size() - 1)) >= 0);
+        assertEquals("written again" + LINE_SEPARATOR, read(segments[1]));
+    }
+
+    private static String readAll(File file) throws IOException {
+        File[] segments = MappedFileSink.listSegments(file);
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < segments.length; i++) {
+            content.append(read(segments[i]));
+        }
+        return content.toString();
+    }
+
+    private static String read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.apache.commons.logging.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class RepeatFilterTest {
+
+    private static final int INFO = SimpleAndroidLog.LOG_LEVEL_INFO;
+
+    private static final long WINDOW = 1000;
+
+    @Test
+    public void testWindowClose() {
+        RepeatFilter filter = new RepeatFilter(RepeatFilter.DEFAULT_SIZE);
+        assertTrue(filter.accept(INFO, "storm", null, 0, WINDOW));
+        assertFalse(filter.accept(INFO, "storm", null, 10, WINDOW));
+        assertFalse(filter.accept(INFO, "storm", null, 999, WINDOW));
+        assertNull(filter.drainSummaries());
+
+        // The first occurrence after the window is logged, after the summary of the closed window
+        assertTrue(filter.accept(INFO, "storm", null, 1000, WINDOW));
+        assertSummaries(filter, "Last message repeated 2 times: storm");
+        assertFalse(filter.accept(INFO, "storm", null, 1500, WINDOW));
+    }
+
+    @Test
+    public void testDistinctMessages() {
+        RepeatFilter filter = new RepeatFilter(RepeatFilter.DEFAULT_SIZE);
+        Throwable t = new IllegalStateException("boom");
+        assertTrue(filter.accept(INFO, "message", null, 0, WINDOW));
+        assertTrue(filter.accept(SimpleAndroidLog.LOG_LEVEL_WARN, "message", null, 0, WINDOW));
+        assertTrue(filter.accept(INFO, "message", t, 0, WINDOW));
+        assertTrue(filter.accept(INFO, "other message", null, 0, WINDOW));
+        assertFalse(filter.accept(INFO, "message", new IllegalStateException("boom"), 0, WINDOW));
+        assertFalse(filter.accept(SimpleAndroidLog.LOG_LEVEL_WARN, "message", null, 0, WINDOW));
+    }
+
+    @Test
+    public void testEvictionSummary() {
+        // A single slot: each new message replaces the previous one
+        RepeatFilter filter = new RepeatFilter(1);
+        assertTrue(filter.accept(INFO, "first", null, 0, WINDOW));
+        assertFalse(filter.accept(INFO, "first", null, 1, WINDOW));
+        assertFalse(filter.accept(INFO, "first", null, 2, WINDOW));
+        assertFalse(filter.accept(INFO, "first", null, 3, WINDOW));
+        assertTrue(filter.accept(SimpleAndroidLog.LOG_LEVEL_ERROR, "second", null, 4, WINDOW));
+        List<RepeatFilter.Summary> summaries = filter.drainSummaries();
+        assertEquals(1, summaries.size());
+        assertEquals(INFO, summaries.get(0).level);
+        assertEquals("Last message repeated 3 times: first", summaries.get(0).text);
+
+        // Replaced without repeats: no summary
+        assertTrue(filter.accept(INFO, "third", null, 5, WINDOW));
+        assertNull(filter.drainSummaries());
+    }
+
+    @Test
+    public void testTimerFlush() {
+        RepeatFilter filter = new RepeatFilter(RepeatFilter.DEFAULT_SIZE);
+        assertTrue(filter.accept(INFO, "quiet", null, 0, WINDOW));
+        assertFalse(filter.accept(INFO, "quiet", null, 100, WINDOW));
+        assertTrue(filter.schedule());
+        assertFalse("already handed over to the timer", filter.schedule());
+        assertTrue(filter.accept(INFO, "later", null, 600, WINDOW));
+        assertFalse(filter.accept(INFO, "later", null, 700, WINDOW));
+
+        // The first window is closed, the second one is still counting
+        assertTrue(filter.closeWindows(1000, WINDOW));
+        assertSummaries(filter, "Last message repeated 1 times: quiet");
+        assertFalse(filter.schedule());
+
+        assertFalse(filter.closeWindows(1600, WINDOW));
+        assertSummaries(filter, "Last message repeated 1 times: later");
+        assertFalse(filter.closeWindows(1700, WINDOW));
+        assertNull(filter.drainSummaries());
+
+        // A new window is opened by the timer: the repeats are still suppressed, and the filter can be handed over again
+        assertFalse(filter.accept(INFO, "later", null, 1700, WINDOW));
+        assertTrue(filter.schedule());
+    }
+
+    @Test
+    public void testConcurrentRepeats() throws InterruptedException {
+        final RepeatFilter filter = new RepeatFilter(2);
+        final int threads = 4;
+        final int events = 50000;
+        final AtomicInteger logged = new AtomicInteger();
+        Thread[] writers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            writers[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < events; j++) {
+                        // The window closes every 1000 events, and the messages replace each other in the slots
+                        if (filter.accept(INFO, "message " + (j % 3), null, j / 1000, 1)) {
+                            logged.incrementAndGet();
+                        }
+                        if (j % 100 == 0) {
+                            filter.closeWindows(j / 1000, 1);
+                        }
+                    }
+                }
+            };
+            writers[i].start();
+        }
+        for (int i = 0; i < threads; i++) {
+            writers[i].join();
+        }
+        filter.closeWindows(Long.MAX_VALUE, 1);
+
+        // Every event is either logged or summarized
+        long summarized = 0;
+        List<RepeatFilter.Summary> summaries = filter.drainSummaries();
+        for (int i = 0; summaries != null && i < summaries.size(); i++) {
+            String text = summaries.get(i).text;
+            summarized += Long.parseLong(text.substring("Last message repeated ".length(), text.indexOf(" times")));
+        }
+        assertEquals(threads * events, logged.get() + summarized);
+    }
+
+    private static void assertSummaries(RepeatFilter filter, String text) {
+        List<RepeatFilter.Summary> summaries = filter.drainSummaries();
+        assertEquals(1, summaries.size());
+        assertEquals(text, summaries.get(0).text);
+    }
+}
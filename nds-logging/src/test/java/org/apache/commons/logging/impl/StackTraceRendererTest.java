@@ -0,0 +1,92 @@
+package org.apache.commons.logging.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class StackTraceRendererTest {
+
+    @Test
+    public void testNoCause() {
+        assertRendered(new StackTraceRenderer(0, StackTraceRenderer.DEFAULT_CACHE_SIZE), new IllegalArgumentException("no cause"));
+        assertRendered(new StackTraceRenderer(0, StackTraceRenderer.DEFAULT_CACHE_SIZE), new IllegalArgumentException());
+    }
+
+    @Test
+    public void testNestedCauses() {
+        Exception e = chain(3, "root");
+        assertTrue(printStackTrace(e).indexOf(" more") > 0);
+        assertRendered(new StackTraceRenderer(0, StackTraceRenderer.DEFAULT_CACHE_SIZE), e);
+        assertRendered(new StackTraceRenderer(0, 0), e);
+    }
+
+    @Test
+    public void testCircularCause() {
+        Exception first = new Exception("first");
+        Exception second = new Exception("second", first);
+        first.initCause(second);
+        // The format of the circular references changed with Java 7 then Java 9
+        Assume.assumeTrue(printStackTrace(first).indexOf("Caused by: [CIRCULAR REFERENCE: ") > 0);
+        assertRendered(new StackTraceRenderer(0, StackTraceRenderer.DEFAULT_CACHE_SIZE), first);
+
+        Exception third = new Exception("third");
+        Exception fourth = new Exception("fourth", third);
+        third.initCause(fourth);
+        assertRendered(new StackTraceRenderer(0, StackTraceRenderer.DEFAULT_CACHE_SIZE), new RuntimeException("top", third));
+    }
+
+    @Test
+    public void testCachedFramesWithAnotherMessage() {
+        StackTraceRenderer renderer = new StackTraceRenderer(0, StackTraceRenderer.DEFAULT_CACHE_SIZE);
+        String[] messages = { "first", "second", null };
+        for (int i = 0; i < messages.length; i++) {
+            // The same frames for each message
+            Exception e = chain(2, messages[i]);
+            String rendered = assertRendered(renderer, e);
+            assertTrue(rendered.indexOf("java.lang.IllegalStateException" + (messages[i] == null ? "" : ": " + messages[i])) > 0);
+        }
+    }
+
+    @Test
+    public void testMaxDepth() {
+        Exception e = chain(1, "root");
+        StringBuilder buf = new StringBuilder();
+        new StackTraceRenderer(1, StackTraceRenderer.DEFAULT_CACHE_SIZE).render(e, buf);
+        String[] lines = buf.toString().split(System.getProperty("line.separator"));
+        assertEquals(e.toString(), lines[0]);
+        assertEquals("\tat " + e.getStackTrace()[0], lines[1]);
+        assertEquals("\t... " + (e.getStackTrace().length - 1) + " frames omitted", lines[2]);
+        assertEquals("Caused by: " + e.getCause(), lines[3]);
+    }
+
+    /**
+     * Returns an exception caused by <code>depth</code> nested exceptions, each one thrown one frame deeper than the exception it causes.
+     */
+    private static Exception chain(int depth, String message) {
+        if (depth == 0) {
+            return new IllegalStateException(message);
+        }
+        Exception cause = chain(depth - 1, message);
+        return new RuntimeException("level " + depth, cause);
+    }
+
+    private static String assertRendered(StackTraceRenderer renderer, Throwable t) {
+        StringBuilder buf = new StringBuilder();
+        renderer.render(t, buf);
+        assertEquals(printStackTrace(t), buf.toString());
+        return buf.toString();
+    }
+
+    private static String printStackTrace(Throwable t) {
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+        t.printStackTrace(writer);
+        writer.flush();
+        return out.toString();
+    }
+}
@@ -0,0 +1,128 @@
+package org.nds.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.Date;
+
+import org.apache.commons.logging.impl.SimpleAndroidLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BinaryLogWriterTest {
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("binary", ".ndsl");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Date date = new Date(1234567890123L);
+        Object notRaw = new Object() {
+            @Override
+            public String toString() {
+                return "rendered when logged";
+            }
+        };
+        BinaryLogWriter writer = new BinaryLogWriter(file);
+        writer.write("com.example.Service", SimpleAndroidLog.LOG_LEVEL_INFO, null, "user {} logged in from {}", null, 2, Integer.valueOf(42), "host",
+                null);
+        writer.write("com.example.Service", SimpleAndroidLog.LOG_LEVEL_DEBUG, null, "%s took %.2f ms", null, new Object[] { "skipped", "query",
+                Double.valueOf(3.14159) }, 1, 2);
+        writer.write("com.example.Types", SimpleAndroidLog.LOG_LEVEL_WARN, null, "{} {} {} {} {} {} {} {} {} {}", null, new Object[] { null,
+                Long.valueOf(Long.MIN_VALUE), Float.valueOf(-1.5f), Boolean.TRUE, Boolean.FALSE, Character.valueOf('\u00e9'),
+                Short.valueOf((short) -3), Byte.valueOf((byte) 7), date, notRaw }, 0, 10);
+        writer.write("com.example.Service", SimpleAndroidLog.LOG_LEVEL_INFO, null, "user {} logged in from {}", null, 2, Integer.valueOf(-1),
+                "\u4e2d\u6587", null);
+        writer.write("Constant", SimpleAndroidLog.LOG_LEVEL_TRACE, null, "constant message", null, 0, null, null, null);
+        writer.close();
+
+        assertEquals(line("[INFO] Service", "user 42 logged in from host") + line("[DEBUG] Service", "query took 3.14 ms")
+                + line("[WARN] Types", "null " + Long.MIN_VALUE + " -1.5 true false \u00e9 -3 7 " + date + " rendered when logged")
+                + line("[INFO] Service", "user -1 logged in from \u4e2d\u6587") + line("[TRACE] Constant", "constant message"), decode(file));
+    }
+
+    @Test
+    public void testMarkerAndThrowable() throws IOException {
+        Throwable t = new IllegalStateException("boom");
+        BinaryLogWriter writer = new BinaryLogWriter(file);
+        writer.write("com.example.Audit", SimpleAndroidLog.LOG_LEVEL_ERROR, "AUDIT", "access {} denied", t, 1, "file", null, null);
+        writer.write("com.example.Audit", SimpleAndroidLog.LOG_LEVEL_INFO, "AUDIT", "access {} granted", null, 1, "file", null, null);
+        writer.write("com.example.Audit", SimpleAndroidLog.LOG_LEVEL_INFO, null, "access {} granted", null, 1, "other", null, null);
+        writer.close();
+
+        String[] lines = decode(file).split(LINE_SEPARATOR);
+        assertEquals("@ [ERROR] Audit - {AUDIT} access file denied <java.lang.IllegalStateException: boom>java.lang.IllegalStateException: boom",
+                lines[0]);
+        assertTrue(lines[1].indexOf("at " + BinaryLogWriterTest.class.getName()) >= 0);
+        assertEquals("@ [INFO] Audit - {AUDIT} access file granted", lines[lines.length - 2]);
+        assertEquals("@ [INFO] Audit - access other granted", lines[lines.length - 1]);
+    }
+
+    @Test
+    public void testTemplateLimits() throws IOException {
+        StringBuilder longTemplate = new StringBuilder("{}");
+        while (longTemplate.length() <= MessageFormatter.MAX_CACHED_MESSAGE_LENGTH) {
+            longTemplate.append(" long");
+        }
+        int count = BinaryLogWriter.MAX_TEMPLATES + 10;
+        StringBuilder expected = new StringBuilder();
+        BinaryLogWriter writer = new BinaryLogWriter(file);
+        writer.write("Limits", SimpleAndroidLog.LOG_LEVEL_INFO, null, longTemplate.toString(), null, 1, "x", null, null);
+        expected.append(line("[INFO] Limits", MessageFormatter.format(longTemplate.toString(), 1, "x", null, null)));
+        for (int i = 0; i < count; i++) {
+            writer.write("Limits", SimpleAndroidLog.LOG_LEVEL_INFO, null, "template " + i + " {}", null, 1, Integer.valueOf(i), null, null);
+            expected.append(line("[INFO] Limits", "template " + i + " " + i));
+        }
+        // A template defined before the limit is still referenced
+        writer.write("Limits", SimpleAndroidLog.LOG_LEVEL_INFO, null, "template 0 {}", null, 1, "again", null, null);
+        expected.append(line("[INFO] Limits", "template 0 again"));
+        writer.close();
+
+        assertEquals(expected.toString(), decode(file));
+    }
+
+    @Test
+    public void testAppendedWriters() throws IOException {
+        BinaryLogWriter writer = new BinaryLogWriter(file);
+        writer.write("First", SimpleAndroidLog.LOG_LEVEL_INFO, "A", "first {}", null, 1, "run", null, null);
+        writer.close();
+        // The ids of the second writer start again after its header
+        writer = new BinaryLogWriter(file);
+        writer.write("Second", SimpleAndroidLog.LOG_LEVEL_INFO, "B", "second {}", null, 1, "run", null, null);
+        writer.close();
+
+        assertEquals(line("[INFO] First", "{A} first run") + line("[INFO] Second", "{B} second run"), decode(file));
+    }
+
+    private static String line(String levelAndName, String message) {
+        return "@ " + levelAndName + " - " + message + LINE_SEPARATOR;
+    }
+
+    private static String decode(File file) throws IOException {
+        StringWriter out = new StringWriter();
+        InputStream in = new FileInputStream(file);
+        try {
+            new BinaryLogDecoder("'@'").decode(in, out);
+        } finally {
+            in.close();
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,171 @@
+package org.nds.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.Formattable;
+import java.util.FormattableFlags;
+import java.util.Formatter;
+import java.util.MissingFormatArgumentException;
+import java.util.UnknownFormatConversionException;
+
+import org.junit.Test;
+
+public class MessageFormatterTest {
+
+    @Test
+    public void testStringConversion() {
+        assertFormat("%s", "value");
+        assertFormat("value: %s.", "value");
+        assertFormat("%s %s %s", "a", null, Boolean.TRUE);
+        assertFormat("%s", Character.valueOf('c'));
+        assertFormat("%s", Double.valueOf(1.5));
+        assertFormat("%s", new StringBuilder("builder"));
+        assertFormat("[%10s] [%-10s] [%.2s] [%S]", "a", "b", "cdef", "upper");
+    }
+
+    @Test
+    public void testDecimalConversion() {
+        assertFormat("%d", Integer.valueOf(42));
+        assertFormat("%d %d %d %d", Integer.valueOf(-7), Long.valueOf(Long.MIN_VALUE), Short.valueOf((short) 3), Byte.valueOf((byte) -1));
+        assertFormat("%d", new BigInteger("123456789012345678901234567890"));
+        assertFormat("[%5d] [%-5d] [%05d] [%,d] [%+d]", Integer.valueOf(1), Integer.valueOf(2), Integer.valueOf(3), Integer.valueOf(1234567),
+                Integer.valueOf(4));
+    }
+
+    @Test
+    public void testOtherConversions() {
+        assertFormat("%.2f %e %x %X %o %c %b %h", Double.valueOf(3.14159), Double.valueOf(12345.678), Integer.valueOf(255), Integer.valueOf(255),
+                Integer.valueOf(8), Character.valueOf('z'), null, "hash");
+        assertFormat("%08.3f", new BigDecimal("-1.5"));
+        assertFormat("%tY", new Date(0));
+        assertFormat("100%% %n%s", "done");
+    }
+
+    @Test
+    public void testIndexedArguments() {
+        assertFormat("%1$s %1$s %2$d", "twice", Integer.valueOf(2));
+        assertFormat("%2$s %1$s", "second", "first");
+        assertFormat("%s %<s %s", "a", "b");
+    }
+
+    @Test
+    public void testFormattable() {
+        Object value = new Formattable() {
+            public void formatTo(Formatter formatter, int flags, int width, int precision) {
+                formatter.format("formattable(%s,%d,%d)", Boolean.valueOf((flags & FormattableFlags.LEFT_JUSTIFY) != 0), Integer.valueOf(width),
+                        Integer.valueOf(precision));
+            }
+        };
+        assertFormat("%s", value);
+        assertFormat("<%-12.3s>", value);
+    }
+
+    @Test
+    public void testArgumentsOffset() {
+        Object[] params = { "skipped", "a", Integer.valueOf(1), "ignored" };
+        assertEquals("a 1", MessageFormatter.format("%s %d", params, 1, 2));
+        assertEquals("a 1", MessageFormatter.format("%s %d", 2, "a", Integer.valueOf(1), null));
+    }
+
+    @Test(expected = MissingFormatArgumentException.class)
+    public void testMissingArgument() {
+        MessageFormatter.format("%s and %s", new Object[] { "a" }, 0, 1);
+    }
+
+    @Test(expected = MissingFormatArgumentException.class)
+    public void testMissingArgumentWithoutArray() {
+        MessageFormatter.format("%s and %s", 1, "a", null, null);
+    }
+
+    @Test(expected = UnknownFormatConversionException.class)
+    public void testUnknownConversion() {
+        MessageFormatter.format("%q", 1, "a", null, null);
+    }
+
+    @Test
+    public void testPlaceholders() {
+        assertEquals("a 1 b 2", MessageFormatter.format("a {} b {}", 2, Integer.valueOf(1), Integer.valueOf(2), null));
+        assertEquals("x=null, y=1.5", MessageFormatter.format("x={}, y={}", new Object[] { null, Double.valueOf(1.5) }, 0, 2));
+        assertEquals("{}{}", MessageFormatter.format("{}{}", 2, "{}", "{}", null));
+        // The missing parameters leave their placeholders, the extra parameters are ignored
+        assertEquals("a 1 b {}", MessageFormatter.format("a {} b {}", 1, Integer.valueOf(1), null, null));
+        assertEquals("only 1", MessageFormatter.format("only {}", 3, Integer.valueOf(1), Integer.valueOf(2), Integer.valueOf(3)));
+    }
+
+    @Test
+    public void testEscapedPlaceholders() {
+        assertEquals("{} is x", MessageFormatter.format("\\{} is {}", 1, "x", null, null));
+        assertEquals("x is {}", MessageFormatter.format("{} is \\{}", 1, "x", null, null));
+        assertEquals("\\ x", MessageFormatter.format("\\ {}", 1, "x", null, null));
+    }
+
+    @Test
+    public void testPercentDisablesPlaceholders() {
+        assertFormat("%s {}", "a");
+        assertEquals(String.format("100%% {}"), MessageFormatter.format("100%% {}", 1, "a", null, null));
+    }
+
+    @Test
+    public void testConstantMessage() {
+        String message = new String("no conversion");
+        assertTrue(message == MessageFormatter.format(message, null, 0, 0));
+        assertTrue(message == MessageFormatter.format(message, 0, null, null, null));
+        assertTrue(MessageFormatter.isConstant(message));
+        assertFalse(MessageFormatter.isConstant("a {}"));
+        assertFalse(MessageFormatter.isConstant("%d"));
+    }
+
+    @Test
+    public void testPrefix() {
+        assertEquals("[AUDIT] user 42", MessageFormatter.format("[AUDIT] ", "user {}", 1, Integer.valueOf(42), null, null));
+        assertEquals("[AUDIT] user 42", MessageFormatter.format("[AUDIT] ", "user %d", new Object[] { Integer.valueOf(42) }, 0, 1));
+        assertEquals("[AUDIT] constant", MessageFormatter.format("[AUDIT] ", "constant", 0, null, null, null));
+        assertEquals("[AUDIT] 3.14", MessageFormatter.format("[AUDIT] ", "%.2f", 1, Double.valueOf(3.14159), null, null));
+    }
+
+    @Test
+    public void testTemplateCache() {
+        assertTrue(MessageFormatter.getTemplate("cached %s") == MessageFormatter.getTemplate("cached %s"));
+        // Neither the constant nor the long messages are cached
+        assertFalse(MessageFormatter.getTemplate("constant") == MessageFormatter.getTemplate("constant"));
+        StringBuilder longMessage = new StringBuilder("%s");
+        while (longMessage.length() <= MessageFormatter.MAX_CACHED_MESSAGE_LENGTH) {
+            longMessage.append(" long");
+        }
+        String message = longMessage.toString();
+        assertFalse(MessageFormatter.getTemplate(message) == MessageFormatter.getTemplate(message));
+        assertFormat(message, "x");
+    }
+
+    @Test
+    public void testParameterLogging() {
+        // A parameter formatting a message from its toString() doesn't overwrite the message being rendered
+        Object nested = new Object() {
+            @Override
+            public String toString() {
+                return MessageFormatter.format("nested %s", 1, "value", null, null);
+            }
+        };
+        assertFormat("outer %s %s", nested, "end");
+        assertEquals("outer nested value end", MessageFormatter.format("outer {} {}", 2, nested, "end", null));
+    }
+
+    /**
+     * Checks that both overloads render the message as <code>String.format</code>.
+     */
+    private static void assertFormat(String message, Object... params) {
+        String expected = String.format(message, params);
+        assertEquals(message, expected, MessageFormatter.format(message, params, 0, params.length));
+        if (params.length <= 3) {
+            Object arg0 = params.length > 0 ? params[0] : null;
+            Object arg1 = params.length > 1 ? params[1] : null;
+            Object arg2 = params.length > 2 ? params[2] : null;
+            assertEquals(message, expected, MessageFormatter.format(message, params.length, arg0, arg1, arg2));
+        }
+    }
+}